@@ -46,7 +46,6 @@ import com.svincent.util.Cloptus.*;
  *
  * - add a PropertyOpt (name/value pair)
  * - make Collection/array @OptTargets work
- * - make enum parsing case-insensitive
  * - finish scouring the documentation
  * - test, test, test
  *
@@ -58,9 +57,7 @@ import com.svincent.util.Cloptus.*;
  *
  * TODO (nice to have):
  *
- * - remove dependence on Date.parse()
  * - make @OptTarget compatible with convenience setters
- * - support SI units (k, M, etc) for numeric options
  * - add additional Opt<A> subtypes for fun stuff
  * - improve date parsing to support a broader range of dates.
  */
@@ -68,9 +65,24 @@ package com.svincent.util;
 
 import java.io.*;
 import java.lang.annotation.*;
+import java.lang.invoke.*;
 import java.lang.reflect.*;
+import java.math.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.time.*;
+import java.time.format.*;
+import java.time.temporal.*;
 import java.util.*;
+import java.util.concurrent.*;
+import javax.annotation.processing.*;
+import javax.lang.model.*;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.*;
+import javax.tools.*;
 
 /**
  * <p><b>Start Here:</b> A complete, robust, and pleasant command line
@@ -97,7 +109,12 @@ import java.util.*;
  *     -A [arg]          (short, single character, option name)
  *     -B [arg]          
  *     -AB [arg] [arg]   (list of short options merged together)
- *     [arg]             (positional arguments) </pre>
+ *     [arg]             (positional arguments)
+ *     @argfile          (read more arguments from a file) </pre>
+ *
+ * <p>Long names are matched case-insensitively, and may be
+ * abbreviated to any unique prefix (<tt>--verb</tt> for
+ * <tt>--verbose</tt>).
  *
  * <p><b>Limitations:</b> Cloptus does <b>not</b> support syntaxes
  * wherein the argument is concatenated with the option name
@@ -349,8 +366,8 @@ public static void main (String... args)
       new DateOpt (opts, "mydate");
 
     // --- An enum opt: cute one, will only allow values from the
-    // --- specified Enum.  Should fix to allow case-insensitive
-    // --- matching of enum names.  Currently case sensitive.
+    // --- specified Enum.  Matches names case-insensitively, and
+    // --- allows unique abbreviations.
     EnumOpt<color> colorOpt =
       new EnumOpt<color> (opts, "mycolor", color.class)
       .description ("color flag");
@@ -526,6 +543,10 @@ public static void main (String... args)
      *
      * </ul>
      *
+     * <p>Arrays use the default option type of their component type.
+     * Defaults for other types can be added (and these replaced) with
+     * {@link Cloptus.Opt#registerDefaultOptType}.
+     *
      * <p>For fields, the argument type is the type of the field.  For
      * methods (which must have only one parameter), the argument type
      * is the type of the first parameter.
@@ -611,2544 +632,7725 @@ public static void main (String... args)
     public String description () default "";
   }
 
-  // -------------------------------------------------------------------------
-  // ---- OptSet -------------------------------------------------------------
-  // -------------------------------------------------------------------------
-
   /**
-   * <p>A set of options, built using a builder API, and then used for
-   * parsing.
-   *
-   * <p><tt>OptSet</tt> is the container in which instances of {@link
-   * Opt} live, and is responsible for parsing String[] arguments into
-   * {@link ParsedArgs}
-   *
-   * <p><b>Note: </b> if you want the easiest possible way of parsing
-   * options, see the {@link OptTarget} annotation.  Using OptSets and
-   * Opts directly is much more powerful, but 99% of programs don't
-   * need that kind of power.
-   *
-   * <p>Using an OptSet is very straightforward.  Probably the easiest
-   * way of demonstrating that is to show a complete use case.
-   *
-   * <pre class="code"> ...
-   * // --- Create an instance of an OptSet.
-   * OptSet opts = new OptSet ();
-   *
-   * // --- Create and add one or more options, customizing as necessary.
-   * StringOpt mystringOpt = new StringOpt (opts, "mystring");
-   *
-   * // --- Run the option parser: this is where the work gets done.
-   * ParsedArgs parsedArgs = opts.run (args);
-   *
-   * // --- If 'run' prints help text or an error, it returns <tt>null</tt>
-   * if (parsedArgs == null) return;
+   * <p>The options defined by the @{@link OptTarget} annotations of a
+   * type, worked out once per type.
    *
-   * // --- Then, just use the options.
-   * String mystring = mystringOpt.get (parsedArgs);
-   * ...</pre>
+   * <p>Building a template does all the reflection: finding the
+   * annotated members, and choosing and finding the constructor of
+   * each member's Opt type.  Defining the options in an OptSet then
+   * just stamps them out from the template.
    *
-   * <p>There are many options you can set on {@link Opt} and its
-   * subtypes, and many ways of extracting the values.  Your best bet
-   * is to look at {@link Opt}'s documentation for more details.
+   * <p>If the type has a parser generated by {@link
+   * OptTargetProcessor}, the template uses that instead, and does no
+   * reflection at all.
    *
-   * @see Opt
+   * <p>Templates are cached with a {@link ClassValue}, so the cache
+   * entry for a type lives and dies with the type itself: caching a
+   * class's template does not keep its class loader alive.  A
+   * template (and its parser) made before the latest {@linkplain
+   * Opt#registerDefaultOptType registration} of a default option type
+   * is stale, and is made again on next use.
    **/
-  public static class OptSet {
-
-    HelpOpt helpOpt;
-
-    String command = null;
-
-    String description = null;
-    
-    Map<String,Opt<?>> optsByName = new LinkedHashMap<String,Opt<?>> ();
-
-    boolean compiled = false;
+  static final class OptTemplate {
 
-    Map<String,Opt<?>> optsByLongName = new LinkedHashMap<String,Opt<?>> ();
-    Map<Character,Opt<?>> optsByShortName =
-      new LinkedHashMap<Character,Opt<?>> ();
-    Opt<?> positionalOpt = null;
-
-    // ---- Construction ----------------------------------------------------
+    private static final ClassValue<OptTemplate> Templates =
+      new ClassValue<OptTemplate> () {
+        protected OptTemplate computeValue (Class<?> type)
+        { return new OptTemplate (type); }
+      };
 
     /**
-     * <p>Constructs a new instance of an OptSet.
+     * <p>Returns the (cached) template for the given type.
      *
-     * <p>This is the principle interface you use: add options to this
-     * set using <code>new FooOpt (opts, "name")</code>.
-     **/
-    public OptSet ()
-    {
-      addDefaultOptions ();
-    }
-
-    /**
-     * <p>Called by the constructor.
+     * @throws OptCompileException if the type's annotations are bad.
      **/
-    protected void addDefaultOptions ()
+    static OptTemplate forType (Class<?> type)
     {
-      helpOpt = (HelpOpt)
-        new HelpOpt (this, "help")
-        .shortName ('h').shortName ('?')
-        .description ("Print an informative help message.");
+      OptTemplate r = Templates.get (type);
+      while (r.version != Opt.registryVersion)
+        {
+          Templates.remove (type);
+          r = Templates.get (type);
+        }
+      return r;
     }
 
     /**
-     * <p>Called by the constructor of Opt
+     * <p>The default option type registry version this template was
+     * made at.
      **/
-    protected void addOpt (Opt<?> opt)
-    { optsByName.put (opt.getName (), opt); }
+    final int version;
 
-    // ---- Builder API -----------------------------------------------------
+    final Class<?> type;
+    final MemberTemplate[] members;
 
     /**
-     * <p>Specifies the command name for usage.
-     *
-     * <p>Optional.  If left unspecified, Cloptus tries to guess the
-     * command using the stack trace.
+     * <p>The type's generated parser, or null if it has none.
      **/
-    public OptSet command (String v) { command = v; return this; }
+    final OptTargetParser<?> generated;
 
     /**
-     * <p>Specifies the program's description, for help text.
+     * <p>A frozen OptSet defining just this template's options, made
+     * on first use.
      **/
-    public OptSet description (String v) { description = v; return this; }
-
-    // ----------------------------------------------------------------------
+    private volatile OptSet parser = null;
 
-    /**
-     * <p>Reflectively examines annotations in the given type, and
-     * defines options for each of them.
-     **/
-    public OptSet defineOptsForType (Class<?> type)
+    private OptTemplate (Class<?> _type)
     {
+      // --- read the version first: a registration racing with us
+      // --- then leaves a stale template, never a wrong current one.
+      version = Opt.registryVersion;
+      type = _type;
+
+      // --- use the generated parser if there is one.
+      generated = OptTargetParser.forType (type);
+      if (generated != null)
+        {
+          members = null;
+          return;
+        }
+
+      List<MemberTemplate> r = new ArrayList<MemberTemplate> ();
+
       // --- examine public fields.
       for (Field f : type.getFields ())
         {
           OptTarget optTarget = f.getAnnotation (OptTarget.class);
-          if (optTarget != null) Opt.make (this, optTarget, f);
+          if (optTarget != null) r.add (new MemberTemplate (optTarget, f));
         }
 
       // --- examine public methods.
       for (Method m : type.getMethods ())
         {
           OptTarget optTarget = m.getAnnotation (OptTarget.class);
-          if (optTarget != null) Opt.make (this, optTarget, m);
+          if (optTarget != null) r.add (new MemberTemplate (optTarget, m));
         }
 
-      return this;
+      members = r.toArray (new MemberTemplate[r.size ()]);
     }
 
-
-    // ----------------------------------------------------------------------
-
     /**
-     * <p>Returns a collection of all the options specified.
+     * <p>Defines this template's options in the given OptSet.
      **/
-    public Collection<Opt<?>> getOpts () { return optsByName.values (); }
+    void defineOpts (OptSet opts)
+    {
+      if (generated != null)
+        generated.defineOpts (opts);
+      else
+        for (MemberTemplate m : members) m.make (opts);
+    }
 
     /**
-     * <p>Fetches an option by canonical name.
+     * <p>Returns a frozen OptSet defining just this template's
+     * options.  Frozen OptSets are immutable, so the same one is
+     * shared by all callers.
      **/
-    public <T extends Opt<?>> T getByName (String longName, Class<T> optType)
-    { return optType.cast (optsByName.get (longName.toLowerCase ())); }
+    OptSet getParser ()
+    {
+      if (generated != null) return generated.getParser ();
+
+      OptSet r = parser;
+      if (r == null)
+        {
+          // --- racing threads may each build one: harmless.
+          r = new OptSet ();
+          defineOpts (r);
+          r.freeze ();
+          parser = r;
+        }
+      return r;
+    }
+  }
+
+  /**
+   * <p>The option defined by a single @{@link OptTarget} member.
+   **/
+  static final class MemberTemplate {
+    final OptTarget optTarget;
+    final Member member;
+    final Class<?> argType;
+    final String optName;
+    final OptFactory factory;
+    final MemberBinder binder;
 
     /**
-     * <p>Fetches an option by long name, returning the specified type.
+     * <p>Works out the option to define for the given member.
+     *
+     * @throws OptCompileException if it can't be done.
      **/
-    public <T extends Opt<?>> T getByLongName (String longName,Class<T>optType)
-    { return optType.cast (getByLongName (longName)); }
+    MemberTemplate (OptTarget _optTarget, Member _member)
+    {
+      optTarget = _optTarget;
+      member = _member;
+
+      // --- figure out the argument type.
+      argType = Opt.getMemberType (member);
+
+      // --- work out the type of option to create.
+      Class<?> optType = optTarget.optType ();
+      if (optType == NotSpecifiedOpt.class) optType = null;
+      if (optType == null) optType = Opt.getDefaultOptType (argType);
+      if (!Opt.class.isAssignableFrom (optType))
+        throw new ClassCastException
+          ("Got non-Opt subtype for optType in @OptTarget "+optTarget);
+
+      // --- figure out the option name.
+      if (optTarget.name ().length > 0)
+        optName = optTarget.name ()[0];
+      else
+        optName = Opt.getDefaultOptName (member);
+
+      factory = OptFactory.forType (optType);
+      binder = MemberBinder.forMember (member, optType);
+    }
 
     /**
-     * <p>Fetches an option by long name, don't care what type.
+     * <p>Defines the option in the given OptSet.
      **/
-    public Opt<?> getByLongName (String longName)
-    { return optsByLongName.get (longName.toLowerCase ()); }
+    Opt<?> make (OptSet opts)
+    {
+      // --- make the option.
+      Opt<?> r = factory.make (opts, optName, argType);
+
+      if (argType.isArray ()) r.list (true);
+
+      r.setTarget (member, binder);
+      r.initFromOptTarget (optTarget);
+      return r;
+    }
+  }
+
+  /**
+   * <p>Makes Opts of a given type, through its (OptSet, String,
+   * Class&lt;A&gt;) constructor, or else its (OptSet, String) one.
+   *
+   * <p>The constructor is found once per option type, by scanning the
+   * type's public constructors, and compiled into a {@link
+   * MethodHandle}.  Factories are cached with a {@link ClassValue}.
+   **/
+  static final class OptFactory {
+
+    private static final ClassValue<OptFactory> Factories =
+      new ClassValue<OptFactory> () {
+        protected OptFactory computeValue (Class<?> optType)
+        { return new OptFactory (optType); }
+      };
 
     /**
-     * <p>Fetches an option by short name, returning the specified type.
+     * <p>Returns the (cached) factory for the given option type.
+     *
+     * @throws OptCompileException if the type is not a concrete Opt
+     * with a suitable constructor.
      **/
-    public <T extends Opt<?>> T getByShortName (char shortName,Class<T>optType)
-    { return optType.cast (getByShortName (shortName)); }
+    static OptFactory forType (Class<?> optType) { return Factories.get (optType); }
+
+    final Class<?> optType;
+    final Constructor<?> constructor;
+    final boolean withArgType;
+    final String signature;
 
     /**
-     * <p>Fetches an option by short name, don't care what type.
+     * <p>(OptSet, String, Class) -&gt; Opt, or null if the
+     * constructor can only be called reflectively.
      **/
-    public Opt<?> getByShortName (char shortName)
-    { return optsByShortName.get (shortName); }
+    final MethodHandle handle;
+
+    private OptFactory (Class<?> _optType)
+    {
+      optType = _optType;
+      if (!Opt.class.isAssignableFrom (optType))
+        throw new OptCompileException
+          ("Option type "+optType+" is not a subtype of Opt");
+      if (java.lang.reflect.Modifier.isAbstract (optType.getModifiers ()))
+        throw new OptCompileException
+          ("Option type "+optType+" is abstract");
+
+      // --- look for (opts, name, argType), then (opts, name).
+      Constructor<?> withClass = null, withoutClass = null;
+      for (Constructor<?> c : optType.getConstructors ())
+        {
+          Class<?>[] params = c.getParameterTypes ();
+          if (params.length < 2 || params[0] != OptSet.class
+              || params[1] != String.class)
+            continue;
+          if (params.length == 3 && params[2] == Class.class) withClass = c;
+          else if (params.length == 2) withoutClass = c;
+        }
+      if (withClass == null && withoutClass == null)
+        throw new OptCompileException ("No reasonable constructor found "+
+                                       "for Opt subtype "+optType);
+
+      constructor = (withClass != null) ? withClass : withoutClass;
+      withArgType = (withClass != null);
+      signature = withArgType
+        ? "(OptSet, String, Class<A>)" : "(OptSet, String)";
+
+      MethodHandle h;
+      try {
+        h = MethodHandles.publicLookup ().unreflectConstructor (constructor);
+        if (!withArgType) h = MethodHandles.dropArguments (h, 2, Class.class);
+        h = h.asType (MethodType.methodType
+                      (Opt.class, OptSet.class, String.class, Class.class));
+      } catch (IllegalAccessException ex) {
+        h = null;
+      }
+      handle = h;
+    }
 
     /**
-     * <p>Fetches the (single) positional opt, returning the specified type.
+     * <p>Makes an Opt.
+     *
+     * @throws OptCompileException if the constructor fails.
      **/
-    public <T extends Opt<?>> T getPositionalOpt (Class<T> optType)
-    { return optType.cast (getPositionalOpt ()); }
+    Opt<?> make (OptSet opts, String optName, Class<?> argType)
+    {
+      if (handle == null) return makeReflectively (opts, optName, argType);
+      try {
+        return (Opt<?>)handle.invokeExact (opts, optName, argType);
+      } catch (ExceptionInInitializerError ex) {
+        throw new OptCompileException
+          ("Error executing constructor "+signature, ex);
+      } catch (Error ex) {
+        throw ex;
+      } catch (Throwable ex) {
+        throw new OptCompileException
+          ("Error executing constructor "+signature, ex);
+      }
+    }
+
+    private Opt<?> makeReflectively (OptSet opts, String optName,
+                                     Class<?> argType)
+    {
+      try {
+        Object r = withArgType
+          ? constructor.newInstance (opts, optName, argType)
+          : constructor.newInstance (opts, optName);
+        return (Opt<?>)r;
+      } catch (IllegalAccessException ex) {
+        throw new OptCompileException
+          ("Cannot access constructor "+signature, ex);
+      } catch (InstantiationException ex) {
+        throw new OptCompileException
+          ("Option type "+optType+" is abstract", ex);
+      } catch (InvocationTargetException ex) {
+        throw new OptCompileException
+          ("Error executing constructor "+signature, ex);
+      } catch (ExceptionInInitializerError ex) {
+        throw new OptCompileException
+          ("Error executing constructor "+signature, ex);
+      }
+    }
+  }
+
+  /**
+   * <p>Writes an option's value into an @{@link OptTarget} member.
+   *
+   * <p>A binder is compiled once per member, into a {@link
+   * MethodHandle} that sets the field or calls the setter.  Members of
+   * type <tt>int</tt>, <tt>double</tt> and <tt>boolean</tt> (and
+   * arrays of them) whose options are IntegerOpts, DoubleOpts and
+   * BooleanOpts get binders that never box: they read the option's
+   * primitive values, and pass them straight to the handle.  If a
+   * handle cannot be made, the binder falls back to reflection.
+   **/
+  abstract static class MemberBinder {
+    final Member member;
 
     /**
-     * <p>Fetches the (single) positional opt, don't care what type.
+     * <p>The type of the objects this binder writes into.
      **/
-    public Opt<?> getPositionalOpt ()
-    { return positionalOpt; }
+    final Class<?> targetType;
+
+    MemberBinder (Member _member)
+    { this (_member, _member.getDeclaringClass ()); }
+
+    MemberBinder (Member _member, Class<?> _targetType)
+    { member = _member; targetType = _targetType; }
 
     /**
-     * <p>Fetches the help option (associated with --help)
+     * <p>Writes the value of the given option into the member of the
+     * given object.  Does nothing if the option has no value (it was
+     * not specified, and has no default).
      **/
-    public HelpOpt getHelpOpt () { return helpOpt; }
+    abstract void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs);
 
     /**
-     * <p>Fetch the command for the usage string.
-     *
-     * <p>If unspecified, searches the current thread's stack trace to
-     * try to find the associated Class.
+     * <p>Compiles a binder for the given member, fed by options of
+     * the given type.
      **/
-    public String getCommand ()
+    static MemberBinder forMember (Member m, Class<?> optType)
     {
-      // --- if somebody overrides it, of course, take that one.
-      if (command != null) return command;
-
-      // XXX can we get the command that invoked us from Java?
+      Class<?> type = Opt.getMemberType (m);
 
-      // XXX ensure that the stack trace element has method 'main'.
+      MethodHandle setter;
+      try {
+        setter = (m instanceof Field)
+          ? MethodHandles.publicLookup ().unreflectSetter ((Field)m)
+          : MethodHandles.publicLookup ().unreflect ((Method)m);
+      } catch (IllegalAccessException ex) {
+        return new ReflectiveBinder (m);
+      }
 
-      // --- fetch it from the stack trace.
-      StackTraceElement[] stackTrace = new Throwable ().getStackTrace ();
-      return "java " + stackTrace[stackTrace.length-1].getClassName ();
+      // --- normalize to (Object target, type value) -> void
+      if (java.lang.reflect.Modifier.isStatic (m.getModifiers ()))
+        setter = MethodHandles.dropArguments (setter, 0, Object.class);
+      setter = setter.asType
+        (MethodType.methodType (void.class, Object.class, type));
+
+      if (type == int.class && IntegerOpt.class.isAssignableFrom (optType))
+        return new IntBinder (m, setter);
+      if (type == double.class && DoubleOpt.class.isAssignableFrom (optType))
+        return new DoubleBinder (m, setter);
+      if (type == boolean.class && BooleanOpt.class.isAssignableFrom (optType))
+        return new BooleanBinder (m, setter);
+      if (type == int[].class && IntegerOpt.class.isAssignableFrom (optType))
+        return new IntArrayBinder (m, setter);
+      if (type == double[].class && DoubleOpt.class.isAssignableFrom (optType))
+        return new DoubleArrayBinder (m, setter);
+      if (type == boolean[].class
+          && BooleanOpt.class.isAssignableFrom (optType))
+        return new BooleanArrayBinder (m, setter);
+
+      return new ObjectBinder (m, setter.asType
+        (MethodType.methodType (void.class, Object.class, Object.class)));
     }
 
     /**
-     * <p>Fetch the specified program description.
+     * <p>Returns true if the given option has a value to write.
      **/
-    public String getDescription () { return description; }
-
-    // ----------------------------------------------------------------------
+    static boolean hasValue (Opt<?> opt, ParsedArgs parsedArgs)
+    { return opt.defaultValue != null || parsedArgs.getCount (opt) > 0; }
 
     /**
-     * <p>Defines and runs an instance of OptSet given an annotated
-     * object.
-     *
-     * <ul>
-     *   <li>Defines options based on @{@link Cloptus.OptTarget}
-     *   annotations on members of the type of <tt>targetObject</tt>
-     *
-     *   <li>parses the given command line arguments, and
-     *
-     *   <li>populates <tt>targetObject</tt> with the result of the parse.
-     * </ul>
-     *
-     * <p>Convenience method to run if you're using @OptTarget
-     * annotations.
-     *
-     * @see #defineOptsForType(Class)
-     * @see #run(PrintWriter,String[])
-     * @see Cloptus.ParsedArgs#populateMembers(Object)
+     * <p>Translates a failure to write the given value.
      **/
-    public static ParsedArgs populateMembers (Object targetObject,
-                                              String... args)
+    OptUseException failed (Object value, Throwable ex)
     {
-      OptSet opts = new OptSet ();
-
-      opts.defineOptsForType (targetObject.getClass ());
+      if (ex instanceof Error) throw (Error)ex;
+      if (ex instanceof OptUseException) return (OptUseException)ex;
+
+      String valueText = (value == null) ? "null"
+        : value+" ("+value.getClass ()+")";
+      if (member instanceof Field)
+        return new OptUseException
+          ("Bad argument type for field: expected "
+           +((Field)member).getType ()+", got "+valueText, ex);
+      return new OptUseException
+        ("Error calling "+member+" with argument "+valueText, ex);
+    }
+  }
 
-      ParsedArgs parsedArgs = opts.run (args);
-      if (parsedArgs == null) return null;
+  /**
+   * <p>Binds any type of value, boxed.
+   **/
+  static final class ObjectBinder extends MemberBinder {
+    final MethodHandle setter;
 
-      parsedArgs.populateMembers (targetObject);
+    final boolean isArray;
 
-      return parsedArgs;
+    ObjectBinder (Member m, MethodHandle _setter)
+    {
+      super (m);
+      setter = _setter;
+      isArray = Opt.getMemberType (m).isArray ();
     }
 
+    void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs)
+    {
+      Object value = isArray ? opt.getArray (parsedArgs) : opt.get (parsedArgs);
 
-    /**
-     * <p>Parses the given command line arguments, and returns a new
-     * ParsedArgs object containing the results of the parse.
-     *
-     * <p>Convenience method: runs the option parser using System.err as
-     * the help/error stream.
-     *
-     * @see #run(PrintWriter,String[])
-     **/
-    public ParsedArgs run (String... args) { return run (System.err, args); }
+      // --- not specified: don't try to set it.
+      if (value == null) return;
 
-    /**
-     * <p>Parses the given command line arguments, writing errors and
-     * help output to the given OutputStream.
-     * 
-     * <p>Convenience method for using PrintStreams.  {@link
-     * System#out} is not a PrintWriter, and so calling {@link
-     * #run(PrintWriter,String[])} directly is inconvenient.
-     *
-     * @see #run(PrintWriter,String[])
-     **/
-    public ParsedArgs run (OutputStream out, String... args)
-    { return run (new PrintWriter (out, true), args); }
+      try {
+        setter.invokeExact (targetObj, value);
+      } catch (Throwable ex) {
+        throw failed (value, ex);
+      }
+    }
+  }
 
-    /**
-     * <p>Runs this option parser.
-     *
-     * <p>This high-level interface is intended to be run from the main()
-     * method of a program.
-     *
-     * <p>It:
-     * <ul>
-     *   <li>parses the args
-     *
-     *   <li>if there are any errors, prints an informative message,
-     *   usage, and reuturns null.
-     *
-     *   <li>if the user requested help, prints the full, detailed, usage,
-     *   and returns null.
-     *
-     *   <li>otherwise, returns the ParsedArgs.
-     * </ul>
-     *
-     * @see #run(String[])
-     * @see #run(OutputStream,String[])
-     * @see #parse(String[])
-     * @see Cloptus.OptParseException
-     * @see #printHelp(PrintWriter)
-     * @see Cloptus.ParsedArgs#isHelpRequested()
-     **/
-    public ParsedArgs run (PrintWriter out, String... args)
+  static final class IntBinder extends MemberBinder {
+    final MethodHandle setter;
+
+    IntBinder (Member m, MethodHandle _setter) { super (m); setter = _setter; }
+
+    void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs)
     {
-      ParsedArgs r;
+      if (!hasValue (opt, parsedArgs)) return;
+      int value = (int)((IntegerOpt)opt).getBits (parsedArgs, 0);
       try {
-        r = parse (args);
-      } catch (OptParseException ex) {
-        out.println ("ERROR: "+ex.getMessage ());
-        out.println ();
-        printHelp (out);
-
-        return null;
+        setter.invokeExact (targetObj, value);
+      } catch (Throwable ex) {
+        throw failed (value, ex);
       }
+    }
+  }
 
-      if (r.isHelpRequested ())
-        {
-          printHelp (out);
-          return null;
-        }
+  static final class DoubleBinder extends MemberBinder {
+    final MethodHandle setter;
 
-      return r;
-    }
+    DoubleBinder (Member m, MethodHandle _setter)
+    { super (m); setter = _setter; }
 
-    /**
-     * <p>Parse the arguments.
-     *
-     * <p>XXX document me
-     *
-     * @throws OptParseException if there are any errors during
-     * parsing.
-     **/
-    public ParsedArgs parse (String... args)
+    void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs)
     {
-      // --- compile the options.
-      compile ();
+      if (!hasValue (opt, parsedArgs)) return;
+      double value =
+        Double.longBitsToDouble (((DoubleOpt)opt).getBits (parsedArgs, 0));
+      try {
+        setter.invokeExact (targetObj, value);
+      } catch (Throwable ex) {
+        throw failed (value, ex);
+      }
+    }
+  }
 
-      // --- make the option reader.
-      OptReader in = new OptReader (args);
+  static final class BooleanBinder extends MemberBinder {
+    final MethodHandle setter;
 
-      // --- build the return value.
-      ParsedArgs r = new ParsedArgs (this, args);
+    BooleanBinder (Member m, MethodHandle _setter)
+    { super (m); setter = _setter; }
 
-      // --- parse using the option grammar
-      parseOptExprs (in, r);
+    void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs)
+    {
+      // --- Booleans are never allocated: no boxing to avoid.
+      Boolean value = ((BooleanOpt)opt).get (parsedArgs);
+      if (value == null) return;
+      try {
+        setter.invokeExact (targetObj, value.booleanValue ());
+      } catch (Throwable ex) {
+        throw failed (value, ex);
+      }
+    }
+  }
 
-      // --- check to ensure that all the global required/list/etc
-      // --- things are correct.
-      r.validate ();
+  static final class IntArrayBinder extends MemberBinder {
+    final MethodHandle setter;
 
-      // --- woo hoo!  all done!
-      return r;
+    IntArrayBinder (Member m, MethodHandle _setter)
+    { super (m); setter = _setter; }
+
+    void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs)
+    {
+      int[] value = ((IntegerOpt)opt).getIntArray (parsedArgs);
+      try {
+        setter.invokeExact (targetObj, value);
+      } catch (Throwable ex) {
+        throw failed (value, ex);
+      }
     }
+  }
 
-    // ----------------------------------------------------------------------
+  static final class DoubleArrayBinder extends MemberBinder {
+    final MethodHandle setter;
 
-    /**
-     * <p>Compiles the option specifiers contained in this OptSet object.
-     *
-     * <p>XXX document me
-     *
-     * @throws ArgCompilationException if there are any errors in the
-     * specification.
-     **/
-    public void compile ()
-    {
-      if (compiled) return;
+    DoubleArrayBinder (Member m, MethodHandle _setter)
+    { super (m); setter = _setter; }
 
-      // --- build the registry.
-      for (Opt<?> a : optsByName.values ())
-        {
-          for (String longName : a.getLongNames ())
-            {
-              if (optsByLongName.get (longName) != null)
-                throw new OptCompileException
-                  ("Multiple opts with same name '"+longName+"': "
-                   +positionalOpt+" and "+a);
-              optsByLongName.put (longName.toLowerCase (), a);
-            }
+    void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs)
+    {
+      double[] value = ((DoubleOpt)opt).getDoubleArray (parsedArgs);
+      try {
+        setter.invokeExact (targetObj, value);
+      } catch (Throwable ex) {
+        throw failed (value, ex);
+      }
+    }
+  }
 
-          for (char shortName : a.getShortNames())
-            {
-              if (optsByShortName.get (shortName) != null)
-                throw new OptCompileException
-                  ("Multiple opts with same short name '"+shortName+"': "
-                   +positionalOpt+" and "+a);
-              optsByShortName.put (shortName, a);
-            }
+  static final class BooleanArrayBinder extends MemberBinder {
+    final MethodHandle setter;
 
-          if (a.isPositional ())
-            {
-              if (positionalOpt != null)
-                throw new OptCompileException
-                  ("Multiple no-named opts: "+positionalOpt+" and "+a);
-              positionalOpt = a;
-            }
-        }
+    BooleanArrayBinder (Member m, MethodHandle _setter)
+    { super (m); setter = _setter; }
 
-      compiled = true;
+    void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs)
+    {
+      boolean[] value = ((BooleanOpt)opt).getBooleanArray (parsedArgs);
+      try {
+        setter.invokeExact (targetObj, value);
+      } catch (Throwable ex) {
+        throw failed (value, ex);
+      }
     }
+  }
 
-    // ---- Grammar ---------------------------------------------------------
+  /**
+   * <p>Binds with plain reflection: used for members that no method
+   * handle can be made for.
+   **/
+  static final class ReflectiveBinder extends MemberBinder {
 
-    /**
-     * <pre>( [optExpr] )* ("--" | EOS)</pre>
-     **/
-    protected void parseOptExprs (OptReader in, ParsedArgs r)
-    {
-      if (DebugParse) System.err.println ("paseOptExprs...");
-      // --- read next opt until EOS
-      while (in.peek () != null)
-        {
-          // --- end of tokens on '--'
-          if (in.peek ().equals ("--")) break;
+    final boolean isArray;
 
-          // --- read option expression.
-          r.addOpts (parseOptExpr (in));
-        }
-    }
+    ReflectiveBinder (Member m)
+    { super (m); isArray = Opt.getMemberType (m).isArray (); }
 
-    /**
-     * <pre>( [longOpt] | [shortOpts] | [positionalOpt] | [argfile] )</pre>
-     **/
-    protected List<ParsedArg> parseOptExpr (OptReader in)
+    void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs)
     {
-      String optName = in.peek ();
-
-      if (DebugParse) System.err.println ("paseOptExpr ["+optName+"]");
+      Object value = isArray ? opt.getArray (parsedArgs) : opt.get (parsedArgs);
 
-      if (optName.startsWith ("@"))
-        return parseArgFile (in);
+      // --- not specified: don't try to set it.
+      if (value == null) return;
 
-      // --- long-named opt
-      else if (optName.startsWith ("--"))
-        return parseLongOpt (in);
+      try {
+        if (member instanceof Field)
+          ((Field)member).set (targetObj, value);
+        else
+          ((Method)member).invoke (targetObj, value);
+      } catch (IllegalArgumentException ex) {
+        throw failed (value, ex);
+      } catch (IllegalAccessException ex) {
+        throw new OptUseException ("Cannot access "+member, ex);
+      } catch (InvocationTargetException ex) {
+        throw failed (value, ex.getCause ());
+      }
+    }
+  }
 
-      // --- short-named opt list
-      else if (optName.startsWith ("-") && optName.length () > 1)
-        return parseShortOpts (in);
+  /**
+   * <p>Binds members through a generated {@link OptTargetParser}.
+   **/
+  static final class GeneratedBinder extends MemberBinder {
+    final OptTargetParser<?> parser;
+    final int index;
+    final String memberName;
 
-      // --- positional opt
-      else
-        return parsePositionalOpt (in);
+    GeneratedBinder (OptTargetParser<?> _parser, int _index,
+                     String _memberName)
+    {
+      super (null, _parser.type);
+      parser = _parser;
+      index = _index;
+      memberName = _memberName;
     }
 
-    protected List<ParsedArg> parseArgFile (OptReader in)
+    void bind (Object targetObj, Opt<?> opt, ParsedArgs parsedArgs)
     {
-      String argFileSpec = in.read ();
+      try {
+        parser.populateMember (targetObj, index, opt, parsedArgs);
+      } catch (OptUseException ex) {
+        throw ex;
+      } catch (RuntimeException ex) {
+        throw new OptUseException
+          ("Error setting "+memberName+" of "+targetType.getName (), ex);
+      }
+    }
+  }
 
-      // --- strip '@'
-      argFileSpec = argFileSpec.substring (1);
+  /**
+   * <p>The base class of the parsers generated by {@link
+   * OptTargetProcessor}.
+   *
+   * <p>A generated parser does for one type what Cloptus otherwise
+   * does with reflection: it defines the options for the type's
+   * @{@link OptTarget} members, and writes their values into the
+   * members, all in plain compiled code.  When a type has a generated
+   * parser, {@link OptSet#defineOptsForType(Class)} and {@link
+   * OptSet#populateMembers(Object,String[])} use it automatically.
+   *
+   * <p>The parser generated for <tt>com.foo.Bar</tt> is called
+   * <tt>com.foo.Bar_CloptusParser</tt>.  Finding it costs one class
+   * lookup per type; programs that cannot use reflection at all (for
+   * example, under closed-world AOT compilation) can use the parser
+   * directly instead:
+   *
+   * <pre class="code">
+   * if (new Bar_CloptusParser ().populateMembers (bar, args) == null) return;</pre>
+   **/
+  public abstract static class OptTargetParser<T> {
 
-      // --- now it's a filename.  Read it, and stick it into the stream...
-      System.out.println
-        ("XXX: should be reading and inserting file: "+argFileSpec);
+    /**
+     * <p>Appended to the binary name of a type to get the name of its
+     * generated parser.
+     **/
+    public static final String Suffix = "_CloptusParser";
 
-      return new ArrayList<ParsedArg> ();
-    }
+    final Class<T> type;
 
     /**
-     * <pre>( "--NAME" [arg] | "--NAME="[arg] )</pre>
+     * <p>A frozen OptSet defining just this type's options, made on
+     * first use.
      **/
-    protected List<ParsedArg> parseLongOpt (OptReader in)
-    {
-      // --- consume opt name.
-      String rawOptName = in.read ();
-
-      if (DebugParse) System.err.println ("parseLongOpt ["+rawOptName+"]");
+    private volatile OptSet parser = null;
 
-      String optName = rawOptName;
+    protected OptTargetParser (Class<T> _type) { type = _type; }
 
-      // --- cope with '=' syntax.
-      // XXX test
-      int eqIdx = rawOptName.indexOf ('=');
-      if (eqIdx != -1)
-        {
-          optName = rawOptName.substring (0, eqIdx);
-          String newArg = rawOptName.substring (eqIdx+1);
-          in.prependArg (newArg);
-        }
+    /**
+     * <p>Returns the type whose members this parser populates.
+     **/
+    public Class<T> getType () { return type; }
 
-      // --- lookup as long name.
-      Opt<?> opt = getByLongName (optName.substring (2));
-      if (opt == null)
-        throw new OptParseException
-          ("Don't understand option '"+optName+"'");
+    /**
+     * <p>Defines the options for the type's @{@link OptTarget}
+     * members in the given OptSet.
+     **/
+    public abstract void defineOpts (OptSet opts);
 
-      // --- allow it to parse its own arguments.
-      List<ParsedArg> r = new ArrayList<ParsedArg> ();
-      r.add (new ParsedArg (opt, optName, opt.parseArg (in), false));
-      return r;
-    }
+    /**
+     * <p>Writes the value of the given option into member number
+     * <tt>index</tt> of the given object.  Does nothing if the option
+     * has no value.
+     **/
+    protected abstract void populate (T target, int index, Opt<?> opt,
+                                      ParsedArgs parsedArgs);
 
     /**
-     * <pre>"-ABCD" ([arg])*</pre>
+     * <p>Makes the given option the option for member number
+     * <tt>index</tt>.  Called by {@link #defineOpts}.
      **/
-    protected List<ParsedArg> parseShortOpts (OptReader in)
+    protected final <O extends Opt<?>> O bind (O opt, int index,
+                                               String memberName)
     {
-      // --- (possibly multiple) short-named opts
-
-      // --- consume opt name.
-      String optList = in.read ();
+      opt.setTarget (null, new GeneratedBinder (this, index, memberName));
+      return opt;
+    }
 
-      if (DebugParse) System.err.println ("parseShortOpts ["+optList+"]");
+    /**
+     * <p>Returns true if the given option has a value to write: it
+     * was specified, or has a default.
+     **/
+    protected static boolean isSet (Opt<?> opt, ParsedArgs parsedArgs)
+    { return MemberBinder.hasValue (opt, parsedArgs); }
 
-      List<ParsedArg> r = new ArrayList<ParsedArg> ();
+    final void populateMember (Object targetObj, int index, Opt<?> opt,
+                               ParsedArgs parsedArgs)
+    { populate (type.cast (targetObj), index, opt, parsedArgs); }
 
-      // --- iterate through the characters.
-      for (char shortName : optList.substring (1).toCharArray ())
+    /**
+     * <p>Returns a frozen OptSet defining just this type's options.
+     * Frozen OptSets are immutable, so the same one is shared by all
+     * callers.
+     **/
+    public OptSet getParser ()
+    {
+      OptSet r = parser;
+      if (r == null)
         {
-          if (DebugParse) System.err.println ("parseShortOpt ["+shortName+"]");
-
-          // --- lookup as short name.
-          Opt<?> opt = getByShortName (shortName);
-          if (opt == null)
-            throw new OptParseException
-              ("Don't understand option '-"+shortName
-               +"' in option list '"+optList+"'");
-
-          // --- allow it to parse its own arguments.
-          r.add (new ParsedArg (opt, String.valueOf (shortName),
-                                opt.parseArg (in), false));
+          // --- racing threads may each build one: harmless.
+          r = new OptSet ();
+          defineOpts (r);
+          r.freeze ();
+          parser = r;
         }
-
       return r;
     }
 
     /**
-     * <pre>[arg]</pre>
+     * <p>Parses the given arguments, and populates the members of
+     * <tt>target</tt> with the result, exactly like {@link
+     * OptSet#populateMembers(Object,String[])}.
      **/
-    protected List<ParsedArg> parsePositionalOpt (OptReader in)
+    public ParsedArgs populateMembers (T target, String... args)
     {
-      String possibleArg = in.peek ();
-
-      if (DebugParse)
-        System.err.println ("parsePositionalOpt ["+possibleArg+"]");
+      ParsedArgs parsedArgs = getParser ().run (args);
+      if (parsedArgs == null) return null;
 
-      Opt<?> opt = getPositionalOpt ();
-      if (opt == null)
-        throw new OptParseException
-          ("Don't understand option '"+possibleArg
-           +"': no positional arguments allowed.");
+      parsedArgs.populateMembers (target);
 
-      // --- allow it to parse its own arguments.
-      List<ParsedArg> r = new ArrayList<ParsedArg> ();
-      r.add (new ParsedArg (opt, null, opt.parseArg (in), false));
-      return r;
+      return parsedArgs;
     }
 
-    // -----------------------------------------------------------------------
-
     /**
-     * <p>Prints a usage string to the given PrintWriter.
+     * <p>Returns the generated parser for the given type, or null if
+     * there is none.
      **/
-    public void printUsage (PrintWriter out)
+    static OptTargetParser<?> forType (Class<?> type)
     {
-      out.print (getCommand ());
-      for (Opt<?> o : getOpts ())
-        if (o.isRequired ())
-          {
-            out.print (" ");
-            o.printUsage (out);
-          }
-    }
-
-    /**
-     * <p>Prints the help screen to the given PrintWriter.
-     **/
-    public void printHelp (PrintWriter out)
-    {
-      out.print ("Usage: ");
-      printUsage (out);
-      out.println ();
+      Class<?> parserType;
+      try {
+        parserType = Class.forName (type.getName () + Suffix, true,
+                                    type.getClassLoader ());
+      } catch (ClassNotFoundException ex) {
+        return null;
+      }
 
-      if (getDescription () != null)
-        WordWrap.wordwrap (out, getDescription ());
+      // --- a class that happens to have the same name is not ours.
+      if (!OptTargetParser.class.isAssignableFrom (parserType)) return null;
 
-      out.println ();
+      OptTargetParser<?> r;
+      try {
+        r = (OptTargetParser<?>)parserType.getConstructor ().newInstance ();
+      } catch (ReflectiveOperationException ex) {
+        throw new OptCompileException
+          ("Cannot make generated parser "+parserType.getName (), ex);
+      }
+      return (r.type == type) ? r : null;
+    }
+  }
 
-      printOptionHelp (out);
+  // -------------------------------------------------------------------------
+  // ---- OptTargetProcessor -------------------------------------------------
+  // -------------------------------------------------------------------------
+
+  /**
+   * <p>An annotation processor that generates an {@link
+   * OptTargetParser} for each class that declares @{@link OptTarget}
+   * members, so that defining and populating its options needs no
+   * reflection at run time.
+   *
+   * <p>To use it, name it as a processor when compiling code that uses
+   * @OptTarget:
+   *
+   * <pre class="code">
+   * javac -processor 'com.svincent.util.Cloptus$OptTargetProcessor' ...</pre>
+   *
+   * <p>For a class <tt>com.foo.Bar</tt>, the processor generates
+   * <tt>com.foo.Bar_CloptusParser</tt>.  It defines exactly the
+   * options {@link OptSet#defineOptsForType(Class)} would define
+   * reflectively, in the same order, and sets the members with
+   * ordinary assignments and calls.
+   *
+   * <p>The processor warns about classes it cannot generate a parser
+   * for (private classes, members with no default option type, option
+   * types with no suitable constructor, ...), and skips them: they
+   * are handled reflectively at run time, as before.
+   **/
+  @SupportedAnnotationTypes ("com.svincent.util.Cloptus.OptTarget")
+  public static class OptTargetProcessor extends AbstractProcessor {
+
+    public SourceVersion getSupportedSourceVersion ()
+    { return SourceVersion.latestSupported (); }
+
+    public boolean process (Set<? extends TypeElement> annotations,
+                            RoundEnvironment roundEnv)
+    {
+      // --- find the classes that declare @OptTarget members.
+      Set<TypeElement> types = new LinkedHashSet<TypeElement> ();
+      for (Element e : roundEnv.getElementsAnnotatedWith (OptTarget.class))
+        types.add ((TypeElement)e.getEnclosingElement ());
+
+      Messager messager = processingEnv.getMessager ();
+      for (TypeElement type : types)
+        {
+          try {
+            new ParserWriter (processingEnv, type).write ();
+          } catch (UnsupportedTargetException ex) {
+            messager.printMessage
+              (Diagnostic.Kind.WARNING,
+               "No Cloptus parser generated for "+type+": "
+               +ex.getMessage ()+".  Its options will be defined "
+               +"reflectively.", ex.element);
+          } catch (IOException ex) {
+            messager.printMessage
+              (Diagnostic.Kind.ERROR,
+               "Cannot write Cloptus parser for "+type+": "+ex, type);
+          }
+        }
+      return true;
     }
 
     /**
-     * <p>Prints detailed help for all the specified options.
+     * <p>Raised for @{@link OptTarget} classes and members that
+     * cannot be handled by generated code.
      **/
-    public void printOptionHelp (PrintWriter out)
-    {
-      for (Opt<?> opt : getOpts ()) opt.printOptionHelp (out);
+    static class UnsupportedTargetException extends Exception {
+      private static final long serialVersionUID = 1L;
+
+      final transient Element element;
+
+      UnsupportedTargetException (String message, Element _element)
+      { super (message); element = _element; }
+    }
+
+    /**
+     * <p>Writes the parser for a single class.
+     **/
+    static class ParserWriter {
+      final Elements elements;
+      final Types types;
+      final Filer filer;
+      final TypeElement type;
+      final PackageElement pkg;
+      final String typeName;
+
+      final StringBuilder defineCode = new StringBuilder ();
+      final StringBuilder populateCode = new StringBuilder ();
+      int memberCount = 0;
+
+      ParserWriter (ProcessingEnvironment env, TypeElement _type)
+      {
+        elements = env.getElementUtils ();
+        types = env.getTypeUtils ();
+        filer = env.getFiler ();
+        type = _type;
+        pkg = elements.getPackageOf (type);
+        typeName = type.getQualifiedName ().toString ();
+      }
+
+      /**
+       * <p>Generates the parser source, and writes it to the Filer.
+       **/
+      void write () throws UnsupportedTargetException, IOException
+      {
+        NestingKind nesting = type.getNestingKind ();
+        if (nesting != NestingKind.TOP_LEVEL && nesting != NestingKind.MEMBER)
+          throw new UnsupportedTargetException
+            ("local and anonymous classes cannot be named", type);
+        if (!isAccessible (type))
+          throw new UnsupportedTargetException
+            ("the class is private", type);
+
+        // --- same order as OptTemplate: public fields, then public
+        // --- methods.
+        List<? extends Element> all = elements.getAllMembers (type);
+        for (VariableElement f : ElementFilter.fieldsIn (all))
+          if (isTarget (f)) addMember (f, f.asType ());
+        for (ExecutableElement m : ElementFilter.methodsIn (all))
+          if (isTarget (m))
+            {
+              if (m.getParameters ().size () != 1)
+                throw new UnsupportedTargetException
+                  ("@OptTarget methods must have 1 parameter", m);
+              addMember (m, m.getParameters ().get (0).asType ());
+            }
+
+        String binaryName = elements.getBinaryName (type).toString ();
+        String parserName = binaryName + OptTargetParser.Suffix;
+        String simpleName = pkg.isUnnamed ()
+          ? parserName : parserName.substring (pkg.toString ().length () + 1);
+
+        StringBuilder out = new StringBuilder ();
+        out.append ("// Generated by Cloptus.OptTargetProcessor from the ")
+          .append ("@OptTarget members of\n// ").append (typeName)
+          .append (".  Do not edit.\n");
+        if (!pkg.isUnnamed ())
+          out.append ("package ").append (pkg).append (";\n");
+        out.append ("\n@SuppressWarnings ({\"unchecked\", \"rawtypes\"})\n")
+          .append ("public final class ").append (simpleName).append ("\n")
+          .append ("  extends com.svincent.util.Cloptus.OptTargetParser<")
+          .append (typeName).append ("> {\n\n")
+          .append ("  public ").append (simpleName).append (" ()\n")
+          .append ("  { super (").append (typeName).append (".class); }\n\n")
+          .append ("  public void defineOpts ")
+          .append ("(com.svincent.util.Cloptus.OptSet opts)\n  {\n")
+          .append ("    com.svincent.util.Cloptus.Opt<?> o;\n")
+          .append (defineCode)
+          .append ("  }\n\n")
+          .append ("  protected void populate (").append (typeName)
+          .append (" target, int index,\n")
+          .append ("                           ")
+          .append ("com.svincent.util.Cloptus.Opt<?> opt,\n")
+          .append ("                           ")
+          .append ("com.svincent.util.Cloptus.ParsedArgs parsedArgs)\n")
+          .append ("  {\n    switch (index)\n      {\n")
+          .append (populateCode)
+          .append ("      }\n  }\n}\n");
+
+        JavaFileObject file = filer.createSourceFile (parserName, type);
+        Writer w = file.openWriter ();
+        try {
+          w.write (out.toString ());
+        } finally {
+          w.close ();
+        }
+      }
+
+      boolean isTarget (Element e)
+      {
+        return e.getAnnotation (OptTarget.class) != null
+          && e.getModifiers ().contains
+               (javax.lang.model.element.Modifier.PUBLIC);
+      }
+
+      /**
+       * <p>Generates the code for a single member: the same work as
+       * {@link MemberTemplate} and {@link MemberBinder#forMember}.
+       **/
+      void addMember (Element member, TypeMirror memberType)
+        throws UnsupportedTargetException
+      {
+        OptTarget optTarget = member.getAnnotation (OptTarget.class);
+        TypeMirror argType = types.erasure (memberType);
+        if (argType.getKind () == TypeKind.ERROR)
+          throw new UnsupportedTargetException
+            ("cannot resolve "+argType, member);
+
+        TypeElement optType = getOptType (member, optTarget, argType);
+        boolean withArgType = hasArgTypeConstructor (member, optType);
+
+        String memberName = member.getSimpleName ().toString ();
+        String optName = (optTarget.name ().length > 0)
+          ? optTarget.name ()[0] : getDefaultOptName (member);
+        int index = memberCount++;
+
+        // --- defineOpts: the same calls as MemberTemplate.make.
+        StringBuilder d = defineCode;
+        d.append ("    o = new ").append (optType.getQualifiedName ())
+          .append (" (opts, ").append (literal (optName));
+        if (withArgType) d.append (", ").append (argType).append (".class");
+        d.append (");\n");
+        if (argType.getKind () == TypeKind.ARRAY)
+          d.append ("    o.list (true);\n");
+        d.append ("    bind (o, ").append (index).append (", ")
+          .append (literal (memberName)).append (");\n");
+        for (String name : optTarget.name ())
+          d.append ("    o.name (").append (literal (name)).append (");\n");
+        for (char shortName : optTarget.shortName ())
+          d.append ("    o.shortName (").append (literal (shortName))
+            .append (");\n");
+        if (optTarget.positional ()) d.append ("    o.positional (true);\n");
+        if (optTarget.required ()) d.append ("    o.required (true);\n");
+        if (!"".equals (optTarget.metavar ()))
+          d.append ("    o.metavar (").append (literal (optTarget.metavar ()))
+            .append (");\n");
+        if (!"".equals (optTarget.description ()))
+          d.append ("    o.description (")
+            .append (literal (optTarget.description ())).append (");\n");
+
+        // --- populate: the same choices as MemberBinder.forMember.
+        String target = member.getModifiers ().contains
+          (javax.lang.model.element.Modifier.STATIC) ? typeName : "target";
+        String set = target+"."+memberName
+          + ((member.getKind () == ElementKind.FIELD) ? " = " : " (");
+        String end = (member.getKind () == ElementKind.FIELD) ? ";" : ");";
+
+        StringBuilder p = populateCode;
+        p.append ("      case ").append (index).append (":\n");
+        TypeKind kind = argType.getKind ();
+        TypeMirror component = (kind == TypeKind.ARRAY)
+          ? ((ArrayType)argType).getComponentType () : null;
+        TypeKind componentKind =
+          (component == null) ? TypeKind.NONE : component.getKind ();
+
+        if (kind == TypeKind.INT && isOptType (optType, IntegerOpt.class))
+          p.append ("        if (isSet (opt, parsedArgs))\n          ")
+            .append (set).append ("((com.svincent.util.Cloptus.IntegerOpt)")
+            .append ("opt).getInt (parsedArgs)").append (end).append ("\n");
+        else if (kind == TypeKind.DOUBLE
+                 && isOptType (optType, DoubleOpt.class))
+          p.append ("        if (isSet (opt, parsedArgs))\n          ")
+            .append (set).append ("((com.svincent.util.Cloptus.DoubleOpt)")
+            .append ("opt).getDouble (parsedArgs)").append (end)
+            .append ("\n");
+        else if (kind == TypeKind.BOOLEAN
+                 && isOptType (optType, BooleanOpt.class))
+          p.append ("        {\n          Boolean v = ")
+            .append ("((com.svincent.util.Cloptus.BooleanOpt)opt)")
+            .append (".get (parsedArgs);\n")
+            .append ("          if (v != null) ").append (set)
+            .append ("v.booleanValue ()").append (end).append ("\n")
+            .append ("        }\n");
+        else if (componentKind == TypeKind.INT
+                 && isOptType (optType, IntegerOpt.class))
+          p.append ("        ").append (set)
+            .append ("((com.svincent.util.Cloptus.IntegerOpt)opt)")
+            .append (".getIntArray (parsedArgs)").append (end).append ("\n");
+        else if (componentKind == TypeKind.DOUBLE
+                 && isOptType (optType, DoubleOpt.class))
+          p.append ("        ").append (set)
+            .append ("((com.svincent.util.Cloptus.DoubleOpt)opt)")
+            .append (".getDoubleArray (parsedArgs)").append (end)
+            .append ("\n");
+        else if (componentKind == TypeKind.BOOLEAN
+                 && isOptType (optType, BooleanOpt.class))
+          p.append ("        ").append (set)
+            .append ("((com.svincent.util.Cloptus.BooleanOpt)opt)")
+            .append (".getBooleanArray (parsedArgs)").append (end)
+            .append ("\n");
+        else
+          {
+            // --- boxed: cast to the member type (boxing primitives).
+            String castType = argType.getKind ().isPrimitive ()
+              ? types.boxedClass ((PrimitiveType)argType)
+                  .getQualifiedName ().toString ()
+              : argType.toString ();
+            p.append ("        {\n          Object v = ")
+              .append ((kind == TypeKind.ARRAY)
+                       ? "opt.getArray (parsedArgs);\n"
+                       : "opt.get (parsedArgs);\n")
+              .append ("          if (v != null) ").append (set)
+              .append ("(").append (castType).append (")v").append (end)
+              .append ("\n        }\n");
+          }
+        p.append ("        break;\n");
+      }
+
+      /**
+       * <p>Works out the type of option to create, like {@link
+       * MemberTemplate}.
+       **/
+      TypeElement getOptType (Element member, OptTarget optTarget,
+                              TypeMirror argType)
+        throws UnsupportedTargetException
+      {
+        // --- Class-valued annotation members can't be read here: the
+        // --- class may not exist yet.
+        TypeMirror explicit = null;
+        try {
+          optTarget.optType ();
+        } catch (MirroredTypeException ex) {
+          explicit = ex.getTypeMirror ();
+        }
+
+        TypeElement r;
+        if (explicit != null
+            && !types.erasure (explicit).toString ().equals
+                  (NotSpecifiedOpt.class.getCanonicalName ()))
+          {
+            r = (TypeElement)types.asElement (explicit);
+            if (!isOptType (r, Opt.class))
+              throw new UnsupportedTargetException
+                ("optType "+explicit+" is not an Opt", member);
+          }
+        else
+          r = elements.getTypeElement
+            (getDefaultOptType (member, argType).getCanonicalName ());
+
+        if (!isAccessible (r))
+          throw new UnsupportedTargetException
+            ("option type "+r+" is not accessible from "+pkg, member);
+        if (r.getModifiers ().contains
+              (javax.lang.model.element.Modifier.ABSTRACT))
+          throw new UnsupportedTargetException
+            ("option type "+r+" is abstract", member);
+        return r;
+      }
+
+      /**
+       * <p>Works out the default option type for the given member
+       * type, like {@link Opt#getDefaultOptType}.
+       **/
+      Class<?> getDefaultOptType (Element member, TypeMirror argType)
+        throws UnsupportedTargetException
+      {
+        TypeMirror t = argType;
+        while (t.getKind () == TypeKind.ARRAY)
+          t = ((ArrayType)t).getComponentType ();
+
+        TypeMirror enumType =
+          types.erasure (elements.getTypeElement ("java.lang.Enum").asType ());
+
+        // --- map to a Class we can ask Opt about.  User classes can't
+        // --- be loaded, but apart from enums, none of them have
+        // --- default option types.
+        Class<?> c = null;
+        switch (t.getKind ())
+          {
+          case INT: c = int.class; break;
+          case DOUBLE: c = double.class; break;
+          case BOOLEAN: c = boolean.class; break;
+          case DECLARED:
+            if (types.isSubtype (t, enumType)) return EnumOpt.class;
+            String name = t.toString ();
+            if (name.startsWith ("java."))
+              {
+                try {
+                  c = Class.forName (name);
+                } catch (ClassNotFoundException ex) {
+                  // --- fallthrough
+                }
+              }
+            break;
+          default:
+            break;
+          }
+
+        if (c != null)
+          {
+            try {
+              return Opt.getDefaultOptType (c);
+            } catch (OptCompileException ex) {
+              // --- fallthrough
+            }
+          }
+        throw new UnsupportedTargetException
+          ("no default option type for "+argType, member);
+      }
+
+      /**
+       * <p>Returns true if the given option type has a public (OptSet,
+       * String, Class) constructor, false if it has a public (OptSet,
+       * String) one: the same preference as {@link OptFactory}.
+       **/
+      boolean hasArgTypeConstructor (Element member, TypeElement optType)
+        throws UnsupportedTargetException
+      {
+        boolean twoArg = false;
+        for (ExecutableElement c :
+               ElementFilter.constructorsIn (optType.getEnclosedElements ()))
+          {
+            if (!c.getModifiers ().contains
+                  (javax.lang.model.element.Modifier.PUBLIC))
+              continue;
+            List<? extends VariableElement> params = c.getParameters ();
+            if (params.size () < 2 || params.size () > 3) continue;
+            if (!isType (params.get (0), OptSet.class)
+                || !isType (params.get (1), String.class))
+              continue;
+            if (params.size () == 2) twoArg = true;
+            else if (isType (params.get (2), Class.class)) return true;
+          }
+        if (twoArg) return false;
+        throw new UnsupportedTargetException
+          ("no (OptSet, String, Class<A>) or (OptSet, String) "
+           +"constructor in "+optType, member);
+      }
+
+      boolean isType (VariableElement param, Class<?> c)
+      {
+        return types.erasure (param.asType ()).toString ().equals
+          (c.getCanonicalName ());
+      }
+
+      boolean isOptType (TypeElement optType, Class<?> c)
+      {
+        TypeElement e = elements.getTypeElement (c.getCanonicalName ());
+        return types.isSubtype (types.erasure (optType.asType ()),
+                                types.erasure (e.asType ()));
+      }
+
+      /**
+       * <p>Returns true if the given class can be named from the
+       * package of the generated parser.
+       **/
+      boolean isAccessible (TypeElement e)
+      {
+        boolean samePackage = elements.getPackageOf (e).equals (pkg);
+        for (Element c = e; c instanceof TypeElement;
+             c = c.getEnclosingElement ())
+          {
+            Set<javax.lang.model.element.Modifier> mods = c.getModifiers ();
+            if (mods.contains (javax.lang.model.element.Modifier.PRIVATE))
+              return false;
+            if (!samePackage
+                && !mods.contains (javax.lang.model.element.Modifier.PUBLIC))
+              return false;
+          }
+        return true;
+      }
+
+      /**
+       * <p>Same as {@link Opt#getDefaultOptName}.
+       **/
+      static String getDefaultOptName (Element member)
+      {
+        String memberName = member.getSimpleName ().toString ();
+        if (member.getKind () == ElementKind.METHOD
+            && memberName.startsWith ("set") && memberName.length () > 3)
+          return
+            Character.toLowerCase (memberName.charAt (3))
+            + memberName.substring (4);
+        return memberName;
+      }
+
+      static String literal (String s)
+      {
+        StringBuilder r = new StringBuilder ("\"");
+        for (int i = 0; i < s.length (); i++) escape (s.charAt (i), '"', r);
+        return r.append ('"').toString ();
+      }
+
+      static String literal (char c)
+      {
+        StringBuilder r = new StringBuilder ("'");
+        escape (c, '\'', r);
+        return r.append ('\'').toString ();
+      }
+
+      private static void escape (char c, char quote, StringBuilder r)
+      {
+        switch (c)
+          {
+          case '\\': r.append ("\\\\"); return;
+          case '\n': r.append ("\\n"); return;
+          case '\r': r.append ("\\r"); return;
+          case '\t': r.append ("\\t"); return;
+          case '\b': r.append ("\\b"); return;
+          case '\f': r.append ("\\f"); return;
+          default: break;
+          }
+        if (c == quote)
+          r.append ('\\').append (c);
+        else if (c < 0x20 || c > 0x7e)
+          r.append (String.format ("\\u%04x", (int)c));
+        else
+          r.append (c);
+      }
     }
   }
 
   // -------------------------------------------------------------------------
-  // ---- Opt ----------------------------------------------------------------
+  // ---- OptSet -------------------------------------------------------------
   // -------------------------------------------------------------------------
 
   /**
-   * <p>Option base class.  See various subtypes for real options.
+   * <p>A set of options, built using a builder API, and then used for
+   * parsing.
    *
-   * <p>Defines the interface for parsing option arguments.
+   * <p><tt>OptSet</tt> is the container in which instances of {@link
+   * Opt} live, and is responsible for parsing String[] arguments into
+   * {@link ParsedArgs}
    *
    * <p><b>Note: </b> if you want the easiest possible way of parsing
    * options, see the {@link OptTarget} annotation.  Using OptSets and
    * Opts directly is much more powerful, but 99% of programs don't
    * need that kind of power.
    *
-   * <p>See {@link OptSet} for more information on what to do with
-   * Opts once you've created them.
-   *
-   * <h3>Constructing an Opt</h3>
-   *
-   * <p>The constructor for Opt takes an instance of {@link OptSet}, and
-   * the constructor adds the Opt to the OptSet.  This allows for the
-   * incredibly succinct code pattern:
-   *
-   * <pre class="code">
-   * StringOpt mystring = new StringOpt (opts, "mystring");
-   * </pre>
-   *
-   * <h3>Customizing an Opt</h3>
-   *
-   * <p>Opt defines a builder API and state for:
-   * <ul>
-   *   <li>the Opt's {@link #defaultValue(Object)}
-   *
-   *   <li>various types of names ({@link #name(String)}, {@link
-   *   #shortName(char)}, {@link #positional(boolean)})
-   *
-   *   <li>whether the option is {@link #required(boolean)}, or is a
-   *   {@link #list(boolean)}.
-   *
-   *   <li>usage information: the {@link #metavar(String)} for the
-   *   argument, and the {@link #description(String)}.
-   * </ul>
-   *
-   * <p>An example of using some more sophisticated options:
-   *
-   * <pre class="code">
-   * // --- defines a required option '--mystring STRING' that can also
-   * //   - be specified as -s STRING, and has help text.
-   * StringOpt mystring = new StringOpt (opts, "mystring")
-   *    .shortName ('s').required (true)
-   *    .description ("A handy string");
-   * </pre>
-   *
-   * <h3>Fetching results</h3>
+   * <p>Using an OptSet is very straightforward.  Probably the easiest
+   * way of demonstrating that is to show a complete use case.
    *
-   * <p>Opt defines generic methods to fetch the object or objects
-   * specified by the user as the argument of the option.
+   * <pre class="code"> ...
+   * // --- Create an instance of an OptSet.
+   * OptSet opts = new OptSet ();
    *
-   * <p>If the option is a singleton (i.e. - not a list), then {@link
-   * #get(Cloptus.ParsedArgs)} is used.
+   * // --- Create and add one or more options, customizing as necessary.
+   * StringOpt mystringOpt = new StringOpt (opts, "mystring");
    *
-   * <p>If the option is a <em>list</em> Opt, then {@link
-   * #getList(Cloptus.ParsedArgs)} or {@link
-   * #getArray(Cloptus.ParsedArgs)} is used.
+   * // --- Run the option parser: this is where the work gets done.
+   * ParsedArgs parsedArgs = opts.run (args);
    *
-   * <pre class="code">
-   * System.out.println ("Got --mystring == "+mystring.get (parsedArgs));
-   * </pre>
+   * // --- If 'run' prints help text or an error, it returns <tt>null</tt>
+   * if (parsedArgs == null) return;
    *
-   * <p>Because these methods are generic, you will get the correct
-   * type at compile time: <tt>StringOpt.get</tt> is typed as String,
-   * for example.
+   * // --- Then, just use the options.
+   * String mystring = mystringOpt.get (parsedArgs);
+   * ...</pre>
    *
-   * <p>Most of the subtypes of Opt define convenience getters for
-   * particular values.  {@link Cloptus.FileOpt}, for example, defines
-   * {@link Cloptus.FileOpt#getStringContent(Cloptus.ParsedArgs)} that
-   * returns the contents of the file as a String, among many others.
-   * See particular subtypes for details.
+   * <p>There are many options you can set on {@link Opt} and its
+   * subtypes, and many ways of extracting the values.  Your best bet
+   * is to look at {@link Opt}'s documentation for more details.
    *
-   * @see OptSet
+   * @see Opt
    **/
-  public static abstract class Opt<A> {
-
-    /*
-      Notes on the genericity of Opt
+  public static class OptSet {
 
-      This class is generic over the argument type of this
-      option. (i.e. - StringOpt should be generic over String, etc).
+    HelpOpt helpOpt;
 
-      This allows methods like get(ParsedArgs) and
-      defaultValue(Object) to be typed correctly.
+    String command = null;
 
-      Also, note that the entire builder API is covariant: it is
-      overridden in every Opt subtype.  This somewhat irritating code
-      pattern allows the type of a series of builder method calls to
-      be typed correctly, allowing this pattern:
+    String description = null;
+    
+    Map<String,Opt<?>> optsByName = new LinkedHashMap<String,Opt<?>> ();
 
-        StringOpt mystring = new StringOpt (opts, "mystring")
-          .positional (true).shortName ('m').description ("blah blah");
+    volatile CompiledOptSet compiled = null;
 
-      Without the covariant overrides, you would need to cast the
-      result before assigning it.
-     */
+    ArgFileCache argFileCache = null;
 
-    final OptSet opts;
-    final String name;
-    final Class<A> argType;
+    ParseCache parseCache = null;
 
-    A defaultValue;
+    boolean lazyConversion = false;
 
-    List<String> longNames = new ArrayList<String> ();
-    List<Character> shortNames = new ArrayList<Character> ();
-    boolean positional = false;
+    int parallelThreshold = DefaultParallelThreshold;
 
-    boolean required = false;
-    boolean list = false;
+    // --- declarative constraints: see exclusive (), requires () and
+    // --- occurrences ().
+    List<Opt<?>[]> exclusiveGroups = new ArrayList<Opt<?>[]> ();
+    List<Opt<?>[]> requirements = new ArrayList<Opt<?>[]> ();
+    Map<Opt<?>,int[]> occurrenceBounds = new LinkedHashMap<Opt<?>,int[]> ();
 
-    String metavar = null;
-    String description = null;
+    /**
+     * <p>The default for {@link #parallelThreshold(int)}.
+     **/
+    public static final int DefaultParallelThreshold = 10000;
 
-    Member target = null;
+    // ---- Construction ----------------------------------------------------
 
     /**
-     * <p>Makes a new option.
-     *
-     * @param _opts - the option list to add this option to (the
-     * constructor calls addOpt as a side effect).
-     *
-     * @param _name - the CANONICAL name for this option.  Used in
-     * various APIs to fetch the option reflectively.  The canonical
-     * name is automatically added as a long name for this option (see
-     * {@link #name(String)})
-     *
-     * @param _argType - a Class containing the argument type for this
-     * option.  i.e. - for a StringOpt, this would be String.class.
-     * Necessary for some of the reflective calls this guy does.
+     * <p>Constructs a new instance of an OptSet.
      *
-     * @throws NullPointerException if any of the arguments are null:
-     * everything in the constructor is required.
+     * <p>This is the principle interface you use: add options to this
+     * set using <code>new FooOpt (opts, "name")</code>.
      **/
-    public Opt (OptSet _opts, String _name, Class<A> _argType)
+    public OptSet ()
     {
-      if (_opts == null)
-        throw new NullPointerException ("_opts cannot be null");
-      if (_name == null)
-        throw new NullPointerException ("_name cannot be null");
-      if (_argType == null)
-        throw new NullPointerException ("_argType cannot be null");
-
-      opts = _opts;
-      name = _name;
-      argType = _argType;
-      longNames.add (_name);
-      opts.addOpt (this);
+      addDefaultOptions ();
     }
 
-    // ---- Builder API -----------------------------------------------------
-
+    /**
+     * <p>Called by the constructor.
+     **/
+    protected void addDefaultOptions ()
+    {
+      helpOpt = (HelpOpt)
+        new HelpOpt (this, "help")
+        .shortName ('h').shortName ('?')
+        .description ("Print an informative help message.");
+    }
+
+    /**
+     * <p>Called by the constructor of Opt
+     **/
+    protected void addOpt (Opt<?> opt)
+    {
+      checkNotFrozen ();
+      optsByName.put (opt.getName (), opt);
+    }
+
+    /**
+     * <p>Throws an OptCompileException if this OptSet has been frozen.
+     *
+     * <p>Called by the builder APIs of this OptSet's Opts.
+     **/
+    void checkNotFrozen ()
+    {
+      if (compiled != null)
+        throw new OptCompileException
+          ("OptSet is frozen: options cannot be added or changed after "
+           +"the first compile(), freeze() or parse()");
+    }
+
+    // ---- Builder API -----------------------------------------------------
+
+    /**
+     * <p>Specifies the command name for usage.
+     *
+     * <p>Optional.  If left unspecified, Cloptus tries to guess the
+     * command using the stack trace.
+     **/
+    public OptSet command (String v) { command = v; return this; }
+
+    /**
+     * <p>Specifies the program's description, for help text.
+     **/
+    public OptSet description (String v) { description = v; return this; }
+
+    /**
+     * <p>Specifies a cache for the tokenized contents of argument files
+     * (<tt>@FILE</tt>), shared between parses.
+     *
+     * <p>Optional.  If left unspecified, argument files are read every
+     * time they are used.  The same cache may be shared by several
+     * OptSets.
+     *
+     * @see ArgFileCache
+     **/
+    public OptSet argFileCache (ArgFileCache v)
+    { checkNotFrozen (); argFileCache = v; return this; }
+
+    /**
+     * <p>Specifies a cache of parse results, keyed by the arguments.
+     *
+     * <p>Optional.  If left unspecified, every parse does the full
+     * work.  With a cache, parsing the same arguments again returns
+     * the same ParsedArgs, without tokenizing, converting or
+     * validating anything.  The same cache may be shared by several
+     * OptSets.
+     *
+     * <p>The values in a cached ParsedArgs are shared by every caller
+     * that parses those arguments.  The built-in Opts' values are
+     * immutable, or (like {@link DateOpt}'s Dates) made afresh on
+     * each fetch; values of other Opts that are mutable must not be
+     * changed.
+     *
+     * @see ParseCache
+     **/
+    public OptSet parseCache (ParseCache v)
+    { checkNotFrozen (); parseCache = v; return this; }
+
+    /**
+     * <p>Specifies whether option arguments are converted lazily.
+     *
+     * <p>By default (false), every argument is converted to its value
+     * (an Integer, a File, ...) as part of the parse, and a bad one
+     * makes the parse fail.  If true, the parse only records the raw
+     * tokens: each Opt's tokens are converted the first time its
+     * value is asked for (by {@link Opt#get}, {@link Opt#getList},
+     * ...), and the values remembered.  A bad argument is then only
+     * reported when its value is asked for, or by {@link
+     * ParsedArgs#validateAll()}.
+     **/
+    public OptSet lazyConversion (boolean v)
+    { checkNotFrozen (); lazyConversion = v; return this; }
+
+    /**
+     * <p>Specifies how many values an option must have before they
+     * are converted in parallel.
+     *
+     * <p>The values of an option specified at least this many times
+     * (typically, a list option fed from an argument file) are split
+     * into chunks and converted on the common {@link ForkJoinPool}.
+     * The values keep their command line order, and if any are bad,
+     * the first bad one is the one reported, just as when converting
+     * serially.  Defaults to {@link #DefaultParallelThreshold};
+     * <tt>Integer.MAX_VALUE</tt> never converts in parallel.
+     **/
+    public OptSet parallelThreshold (int v)
+    {
+      checkNotFrozen ();
+      if (v < 1)
+        throw new OptCompileException ("Bad parallel threshold "+v
+                                       +": expected a positive number");
+      parallelThreshold = v;
+      return this;
+    }
+
+    /**
+     * <p>Specifies a group of mutually exclusive options: at most one
+     * of them may be specified.
+     *
+     * @throws OptCompileException if the options are not from this
+     * OptSet.
+     **/
+    public OptSet exclusive (Opt<?>... group)
+    {
+      checkNotFrozen ();
+      checkOwnOpts (group);
+      if (group.length > 1) exclusiveGroups.add (group.clone ());
+      return this;
+    }
+
+    /**
+     * <p>Specifies that if the given option is specified, so must all
+     * of the given prerequisite options be.
+     *
+     * @throws OptCompileException if the options are not from this
+     * OptSet.
+     **/
+    public OptSet requires (Opt<?> opt, Opt<?>... prerequisites)
+    {
+      checkNotFrozen ();
+      checkOwnOpts (opt);
+      checkOwnOpts (prerequisites);
+      Opt<?>[] requirement = new Opt<?>[prerequisites.length + 1];
+      requirement[0] = opt;
+      System.arraycopy (prerequisites, 0, requirement, 1, prerequisites.length);
+      requirements.add (requirement);
+      return this;
+    }
+
+    /**
+     * <p>Specifies how many times the given option may be specified:
+     * at least <tt>min</tt>, and at most <tt>max</tt>, times.
+     *
+     * <p>These bounds apply on top of {@link Opt#required} and {@link
+     * Opt#list}: a bound of more than one needs a list option.
+     *
+     * @throws OptCompileException if the option is not from this
+     * OptSet, or the bounds make no sense.
+     **/
+    public OptSet occurrences (Opt<?> opt, int min, int max)
+    {
+      checkNotFrozen ();
+      checkOwnOpts (opt);
+      if (min < 0 || max < min)
+        throw new OptCompileException
+          ("Bad occurrence bounds for "+opt+": "+min+".."+max);
+      occurrenceBounds.put (opt, new int[] { min, max });
+      return this;
+    }
+
+    private void checkOwnOpts (Opt<?>... v)
+    {
+      for (Opt<?> opt : v)
+        if (opt.opts != this)
+          throw new OptCompileException
+            ("Option "+opt+" does not belong to this OptSet");
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * <p>Reflectively examines annotations in the given type, and
+     * defines options for each of them.
+     *
+     * <p>The reflection is only done the first time a type is used:
+     * after that, the options are made from a cached template.
+     **/
+    public OptSet defineOptsForType (Class<?> type)
+    {
+      OptTemplate.forType (type).defineOpts (this);
+      return this;
+    }
+
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * <p>Returns a collection of all the options specified.
+     **/
+    public Collection<Opt<?>> getOpts () { return optsByName.values (); }
+
+    /**
+     * <p>Fetches an option by canonical name.
+     **/
+    public <T extends Opt<?>> T getByName (String longName, Class<T> optType)
+    { return optType.cast (optsByName.get (longName.toLowerCase ())); }
+
+    /**
+     * <p>Fetches an option by long name, returning the specified type.
+     **/
+    public <T extends Opt<?>> T getByLongName (String longName,Class<T>optType)
+    { return optType.cast (getByLongName (longName)); }
+
+    /**
+     * <p>Fetches an option by long name, don't care what type.
+     *
+     * <p>Freezes this OptSet if it has not already been frozen.
+     **/
+    public Opt<?> getByLongName (String longName)
+    { return freeze ().getByLongName (longName); }
+
+    /**
+     * <p>Fetches an option by short name, returning the specified type.
+     **/
+    public <T extends Opt<?>> T getByShortName (char shortName,Class<T>optType)
+    { return optType.cast (getByShortName (shortName)); }
+
+    /**
+     * <p>Fetches an option by short name, don't care what type.
+     *
+     * <p>Freezes this OptSet if it has not already been frozen.
+     **/
+    public Opt<?> getByShortName (char shortName)
+    { return freeze ().getByShortName (shortName); }
+
+    /**
+     * <p>Fetches the (single) positional opt, returning the specified type.
+     **/
+    public <T extends Opt<?>> T getPositionalOpt (Class<T> optType)
+    { return optType.cast (getPositionalOpt ()); }
+
+    /**
+     * <p>Fetches the (single) positional opt, don't care what type.
+     *
+     * <p>Freezes this OptSet if it has not already been frozen.
+     **/
+    public Opt<?> getPositionalOpt ()
+    { return freeze ().getPositionalOpt (); }
+
+    /**
+     * <p>Fetches the help option (associated with --help)
+     **/
+    public HelpOpt getHelpOpt () { return helpOpt; }
+
+    /**
+     * <p>Fetch the command for the usage string.
+     *
+     * <p>If unspecified, searches the current thread's stack trace to
+     * try to find the associated Class.
+     **/
+    public String getCommand ()
+    {
+      // --- if somebody overrides it, of course, take that one.
+      if (command != null) return command;
+
+      // XXX can we get the command that invoked us from Java?
+
+      // XXX ensure that the stack trace element has method 'main'.
+
+      // --- fetch it from the stack trace.
+      StackTraceElement[] stackTrace = new Throwable ().getStackTrace ();
+      return "java " + stackTrace[stackTrace.length-1].getClassName ();
+    }
+
+    /**
+     * <p>Fetch the specified program description.
+     **/
+    public String getDescription () { return description; }
+
+    /**
+     * <p>Fetch the argument file cache, or null if there is none.
+     **/
+    public ArgFileCache getArgFileCache () { return argFileCache; }
+
+    /**
+     * <p>Fetch the parse result cache, or null if there is none.
+     **/
+    public ParseCache getParseCache () { return parseCache; }
+
+    /**
+     * <p>Returns true if option arguments are converted lazily.
+     **/
+    public boolean isLazyConversion () { return lazyConversion; }
+
+    /**
+     * <p>Returns the number of values at which an option's values are
+     * converted in parallel.
+     **/
+    public int getParallelThreshold () { return parallelThreshold; }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * <p>Defines and runs an instance of OptSet given an annotated
+     * object.
+     *
+     * <ul>
+     *   <li>Defines options based on @{@link Cloptus.OptTarget}
+     *   annotations on members of the type of <tt>targetObject</tt>
+     *
+     *   <li>parses the given command line arguments, and
+     *
+     *   <li>populates <tt>targetObject</tt> with the result of the parse.
+     * </ul>
+     *
+     * <p>Convenience method to run if you're using @OptTarget
+     * annotations.
+     *
+     * <p>The options for each type are only defined once: every call
+     * for the same type shares one frozen OptSet.
+     *
+     * @see #defineOptsForType(Class)
+     * @see #run(PrintWriter,String[])
+     * @see Cloptus.ParsedArgs#populateMembers(Object)
+     **/
+    public static ParsedArgs populateMembers (Object targetObject,
+                                              String... args)
+    {
+      OptSet opts =
+        OptTemplate.forType (targetObject.getClass ()).getParser ();
+
+      ParsedArgs parsedArgs = opts.run (args);
+      if (parsedArgs == null) return null;
+
+      parsedArgs.populateMembers (targetObject);
+
+      return parsedArgs;
+    }
+
+
+    /**
+     * <p>Parses the given command line arguments, and returns a new
+     * ParsedArgs object containing the results of the parse.
+     *
+     * <p>Convenience method: runs the option parser using System.err as
+     * the help/error stream.
+     *
+     * @see #run(PrintWriter,String[])
+     **/
+    public ParsedArgs run (String... args) { return run (System.err, args); }
+
+    /**
+     * <p>Parses the given command line arguments, writing errors and
+     * help output to the given OutputStream.
+     * 
+     * <p>Convenience method for using PrintStreams.  {@link
+     * System#out} is not a PrintWriter, and so calling {@link
+     * #run(PrintWriter,String[])} directly is inconvenient.
+     *
+     * @see #run(PrintWriter,String[])
+     **/
+    public ParsedArgs run (OutputStream out, String... args)
+    { return run (new PrintWriter (out, true), args); }
+
+    /**
+     * <p>Runs this option parser.
+     *
+     * <p>This high-level interface is intended to be run from the main()
+     * method of a program.
+     *
+     * <p>It:
+     * <ul>
+     *   <li>parses the args
+     *
+     *   <li>if there are any errors, prints an informative message,
+     *   usage, and reuturns null.
+     *
+     *   <li>if the user requested help, prints the full, detailed, usage,
+     *   and returns null.
+     *
+     *   <li>otherwise, returns the ParsedArgs.
+     * </ul>
+     *
+     * @see #run(String[])
+     * @see #run(OutputStream,String[])
+     * @see #parse(String[])
+     * @see Cloptus.OptParseException
+     * @see #printHelp(PrintWriter)
+     * @see Cloptus.ParsedArgs#isHelpRequested()
+     **/
+    public ParsedArgs run (PrintWriter out, String... args)
+    {
+      ParsedArgs r;
+      try {
+        r = parse (args);
+      } catch (OptParseException ex) {
+        out.println ("ERROR: "+ex.getMessage ());
+        out.println ();
+        printHelp (out);
+
+        return null;
+      }
+
+      if (r.isHelpRequested ())
+        {
+          printHelp (out);
+          return null;
+        }
+
+      return r;
+    }
+
+    /**
+     * <p>Parse the arguments.
+     *
+     * <p>Freezes this OptSet (if it has not already been frozen), and
+     * parses using the resulting {@link CompiledOptSet}.
+     *
+     * @throws OptParseException if there are any errors during
+     * parsing.
+     *
+     * @see #freeze()
+     * @see CompiledOptSet#parse(String[])
+     **/
+    public ParsedArgs parse (String... args) { return freeze ().parse (args); }
+
+    /**
+     * <p>Parse the arguments, collecting problems rather than throwing
+     * them.
+     *
+     * @see CompiledOptSet#tryParse(String[])
+     **/
+    public ParseResult tryParse (String... args)
+    { return freeze ().tryParse (args); }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * <p>Compiles the option specifiers contained in this OptSet object.
+     *
+     * <p>Equivalent to {@link #freeze()}, ignoring the result.
+     *
+     * @throws OptCompileException if there are any errors in the
+     * specification.
+     **/
+    public void compile () { freeze (); }
+
+    /**
+     * <p>Compiles and freezes this OptSet, returning the immutable
+     * parser.
+     *
+     * <p>The first call builds a {@link CompiledOptSet}; later calls
+     * return the same instance.  Once frozen, no more options can be
+     * added to this OptSet, and its options can no longer be
+     * changed.
+     *
+     * <p>The result is safely published: it may be shared between any
+     * number of threads, which can all call {@link
+     * CompiledOptSet#parse(String[])} concurrently.
+     *
+     * @throws OptCompileException if there are any errors in the
+     * specification.
+     **/
+    public CompiledOptSet freeze ()
+    {
+      CompiledOptSet r = compiled;
+      if (r != null) return r;
+
+      synchronized (this)
+        {
+          if (compiled == null) compiled = new CompiledOptSet (this);
+          return compiled;
+        }
+    }
+
+    /**
+     * <p>Returns true if this OptSet has been frozen.
+     *
+     * @see #freeze()
+     **/
+    public boolean isFrozen () { return compiled != null; }
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * <p>Prints a usage string to the given PrintWriter.
+     **/
+    public void printUsage (PrintWriter out)
+    {
+      out.print (getCommand ());
+      for (Opt<?> o : getOpts ())
+        if (o.isRequired ())
+          {
+            out.print (" ");
+            o.printUsage (out);
+          }
+    }
+
+    /**
+     * <p>Prints the help screen to the given PrintWriter.
+     **/
+    public void printHelp (PrintWriter out)
+    {
+      out.print ("Usage: ");
+      printUsage (out);
+      out.println ();
+
+      if (getDescription () != null)
+        WordWrap.wordwrap (out, getDescription ());
+
+      out.println ();
+
+      printOptionHelp (out);
+    }
+
+    /**
+     * <p>Prints detailed help for all the specified options.
+     **/
+    public void printOptionHelp (PrintWriter out)
+    {
+      for (Opt<?> opt : getOpts ()) opt.printOptionHelp (out);
+    }
+  }
+
+  // -------------------------------------------------------------------------
+  // ---- CompiledOptSet -----------------------------------------------------
+  // -------------------------------------------------------------------------
+
+  /**
+   * <p>An immutable, compiled, {@link OptSet}: this is the thing that
+   * actually parses arguments.
+   *
+   * <p>Obtained by calling {@link OptSet#freeze()}.  All of the
+   * lookup tables are built once, when the CompiledOptSet is
+   * constructed, and are never modified afterwards.
+   *
+   * <p>Instances are thread-safe: any number of threads can call
+   * {@link #parse(String[])} concurrently, with no locking.  Each
+   * call builds its own {@link ParsedArgs}.
+   *
+   * <pre class="code">
+   * // --- build the options once...
+   * OptSet opts = new OptSet ();
+   * StringOpt userOpt = new StringOpt (opts, "user");
+   * final CompiledOptSet parser = opts.freeze ();
+   *
+   * // --- ...and then parse from as many threads as you like.
+   * ParsedArgs parsedArgs = parser.parse (args);
+   * </pre>
+   *
+   * @see OptSet#freeze()
+   **/
+  public static class CompiledOptSet {
+
+    final OptSet opts;
+
+    /**
+     * <p>All the Opts, in definition order.  Each Opt's {@link
+     * Opt#getOrdinal()} is its position in this array.
+     **/
+    final Opt<?>[] optsByOrdinal;
+    final List<Opt<?>> allOpts;
+
+    final NameTrie<Opt<?>> optsByLongName;
+
+    /**
+     * <p>Short names below {@link #DenseShortNames} are looked up by
+     * indexing directly into this table.
+     **/
+    final Opt<?>[] optsByShortName;
+
+    /**
+     * <p>Any other short names are kept sorted in <tt>otherShortNames</tt>,
+     * with their Opts at the same index in <tt>otherShortOpts</tt>.
+     **/
+    final char[] otherShortNames;
+    final Opt<?>[] otherShortOpts;
+
+    final Opt<?> positionalOpt;
+
+    /**
+     * <p>Every option's names, exactly as they would be typed at the
+     * command line (<tt>--name</tt> and <tt>-X</tt>).  Most tokens
+     * match one of these exactly, and are dispatched with a single
+     * hash lookup: only the others go through the full grammar (case
+     * folding, abbreviations, <tt>--name=value</tt>, merged short
+     * options).
+     **/
+    final Map<String,Opt<?>> optsByToken;
+
+    final ArgFileCache argFileCache;
+    final ParseCache parseCache;
+    final boolean lazyConversion;
+    final int parallelThreshold;
+
+    // --- validation, as bitsets over Opt ordinals (see
+    // --- ParseContext.validate ()): the required Opts, and the Opts
+    // --- that may only be specified once.  Opts with explicit
+    // --- occurrence bounds are in boundedOrdinals, with the bounds at
+    // --- the same index in boundedMins/Maxes.
+    final long[] requiredMask;
+    final long[] singleMask;
+    final int[] boundedOrdinals;
+    final int[] boundedMins;
+    final int[] boundedMaxes;
+
+    // --- the mutually exclusive groups, and the requirements: for
+    // --- each, the dependent Opt's ordinal and a mask of its
+    // --- prerequisites.
+    final long[][] exclusiveMasks;
+    final int[] requiringOrdinals;
+    final long[][] requiredByMasks;
+
+    /**
+     * <p>Size of the direct-indexed short name table: covers ASCII
+     * and Latin-1.
+     **/
+    static final int DenseShortNames = 256;
+
+    /**
+     * <p>Compiles the option specifiers contained in the given OptSet.
+     *
+     * @throws OptCompileException if there are any errors in the
+     * specification.
+     **/
+    CompiledOptSet (OptSet _opts)
+    {
+      opts = _opts;
+
+      NameTrie<Opt<?>> byLongName = new NameTrie<Opt<?>> ();
+      Opt<?>[] byShortName = new Opt<?>[DenseShortNames];
+      SortedMap<Character,Opt<?>> byOtherShortName =
+        new TreeMap<Character,Opt<?>> ();
+      Opt<?> positional = null;
+
+      // --- build the registry.
+      for (Opt<?> a : opts.optsByName.values ())
+        {
+          for (String longName : a.getLongNames ())
+            {
+              Opt<?> existing = byLongName.put (longName, a);
+              if (existing != null)
+                throw new OptCompileException
+                  ("Multiple opts with same name '"+longName+"': "
+                   +existing+" and "+a);
+            }
+
+          for (char shortName : a.getShortNames())
+            {
+              Opt<?> existing = (shortName < DenseShortNames)
+                ? byShortName[shortName] : byOtherShortName.get (shortName);
+              if (existing != null)
+                throw new OptCompileException
+                  ("Multiple opts with same short name '"+shortName+"': "
+                   +existing+" and "+a);
+              if (shortName < DenseShortNames) byShortName[shortName] = a;
+              else byOtherShortName.put (shortName, a);
+            }
+
+          if (a.isPositional ())
+            {
+              if (positional != null)
+                throw new OptCompileException
+                  ("Multiple no-named opts: "+positional+" and "+a);
+              positional = a;
+            }
+        }
+
+      optsByOrdinal = opts.optsByName.values ().toArray (new Opt<?>[0]);
+      for (int i=0; i<optsByOrdinal.length; i++)
+        {
+          optsByOrdinal[i].ordinal = i;
+          optsByOrdinal[i].freezeDefaults ();
+        }
+      allOpts = Collections.unmodifiableList (Arrays.asList (optsByOrdinal));
+      optsByLongName = byLongName;
+      optsByShortName = byShortName;
+      otherShortNames = new char[byOtherShortName.size ()];
+      otherShortOpts = new Opt<?>[byOtherShortName.size ()];
+      int idx = 0;
+      for (Map.Entry<Character,Opt<?>> e : byOtherShortName.entrySet ())
+        {
+          otherShortNames[idx] = e.getKey ();
+          otherShortOpts[idx] = e.getValue ();
+          idx++;
+        }
+      positionalOpt = positional;
+
+      // --- "--" ends the options, so a long name of "" can never be
+      // --- typed.
+      optsByToken = new HashMap<String,Opt<?>> ();
+      for (Opt<?> a : optsByOrdinal)
+        {
+          for (String longName : a.getLongNames ())
+            if (longName.length () > 0) optsByToken.put ("--"+longName, a);
+          for (char shortName : a.getShortNames ())
+            optsByToken.put ("-"+shortName, a);
+        }
+
+      argFileCache = opts.argFileCache;
+      parseCache = opts.parseCache;
+      lazyConversion = opts.lazyConversion;
+      parallelThreshold = opts.parallelThreshold;
+
+      // --- compile the constraints into masks.
+      int words = (optsByOrdinal.length + 63) >>> 6;
+      requiredMask = new long[words];
+      singleMask = new long[words];
+      for (Opt<?> a : optsByOrdinal)
+        {
+          if (a.isRequired ()) setBit (requiredMask, a.ordinal);
+          if (!a.isList ()) setBit (singleMask, a.ordinal);
+        }
+
+      int boundedCount = opts.occurrenceBounds.size ();
+      boundedOrdinals = new int[boundedCount];
+      boundedMins = new int[boundedCount];
+      boundedMaxes = new int[boundedCount];
+      idx = 0;
+      for (Map.Entry<Opt<?>,int[]> e : opts.occurrenceBounds.entrySet ())
+        {
+          Opt<?> a = e.getKey ();
+          if (e.getValue ()[1] > 1 && !a.isList ())
+            throw new OptCompileException
+              ("Option "+a+" may occur up to "+e.getValue ()[1]
+               +" times, but is not a list option");
+          boundedOrdinals[idx] = a.ordinal;
+          boundedMins[idx] = e.getValue ()[0];
+          boundedMaxes[idx] = e.getValue ()[1];
+          idx++;
+        }
+
+      exclusiveMasks = new long[opts.exclusiveGroups.size ()][];
+      for (int i=0; i<exclusiveMasks.length; i++)
+        exclusiveMasks[i] = mask (words, opts.exclusiveGroups.get (i), 0);
+
+      requiringOrdinals = new int[opts.requirements.size ()];
+      requiredByMasks = new long[opts.requirements.size ()][];
+      for (int i=0; i<requiringOrdinals.length; i++)
+        {
+          Opt<?>[] requirement = opts.requirements.get (i);
+          requiringOrdinals[i] = requirement[0].ordinal;
+          requiredByMasks[i] = mask (words, requirement, 1);
+        }
+    }
+
+    static void setBit (long[] bits, int i) { bits[i >>> 6] |= 1L << i; }
+
+    static boolean getBit (long[] bits, int i)
+    { return (bits[i >>> 6] & (1L << i)) != 0; }
+
+    private static long[] mask (int words, Opt<?>[] v, int start)
+    {
+      long[] r = new long[words];
+      for (int i=start; i<v.length; i++) setBit (r, v[i].ordinal);
+      return r;
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * <p>Returns the OptSet this parser was compiled from.
+     **/
+    public OptSet getOptSet () { return opts; }
+
+    /**
+     * <p>Returns all the options in this parser, in definition order.
+     **/
+    public List<Opt<?>> getOpts () { return allOpts; }
+
+    /**
+     * <p>Fetches an option by long name, don't care what type.
+     *
+     * <p>The name is matched case-insensitively, but must be
+     * complete: abbreviations are only accepted at the command line.
+     **/
+    public Opt<?> getByLongName (String longName)
+    { return optsByLongName.get (longName, 0, longName.length ()); }
+
+    /**
+     * <p>Fetches an option by short name, don't care what type.
+     **/
+    public Opt<?> getByShortName (char shortName)
+    {
+      if (shortName < DenseShortNames) return optsByShortName[shortName];
+
+      int idx = Arrays.binarySearch (otherShortNames, shortName);
+      return (idx >= 0) ? otherShortOpts[idx] : null;
+    }
+
+    /**
+     * <p>Fetches the (single) positional opt, don't care what type.
+     **/
+    public Opt<?> getPositionalOpt () { return positionalOpt; }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * <p>Makes a new, empty, ParseContext for use with {@link
+     * #parse(ParseContext,String[])}.
+     **/
+    public ParseContext newParseContext () { return new ParseContext (this); }
+
+    /**
+     * <p>Parse the arguments.
+     *
+     * <p>Thread-safe: may be called concurrently from any number of
+     * threads.  The returned ParsedArgs is an immutable snapshot,
+     * which may itself be shared between threads: see {@link
+     * ParsedArgs}.
+     *
+     * <p>If the OptSet has a {@link OptSet#parseCache ParseCache},
+     * arguments parsed before return the same ParsedArgs as last time.
+     *
+     * @throws OptParseException if there are any errors during
+     * parsing.
+     **/
+    public ParsedArgs parse (String... args)
+    {
+      ParseCache.Key key = null;
+      if (parseCache != null)
+        {
+          key = ParseCache.keyFor (this, args);
+          if (key != null)
+            {
+              ParsedArgs cached = parseCache.get (key);
+              if (cached != null) return cached;
+            }
+        }
+
+      ParseContext ctx = new ParseContext (this, null, args.length, false);
+      parseInto (ctx, args);
+
+      // --- only wrap the results once they are complete: the
+      // --- ParsedArgs' final fields then publish them safely.
+      ParsedArgs parsedArgs = new ParsedArgs (ctx);
+      if (key != null) parseCache.put (key, parsedArgs);
+      return parsedArgs;
+    }
+
+    /**
+     * <p>Parse the arguments, without throwing exceptions.
+     *
+     * <p>Instead of stopping at the first error, the parse carries
+     * on, and collects every problem it finds into the result as a
+     * {@link ParseDiagnostic}: unknown options, bad values, broken
+     * constraints, and so on.  Conversion is always done right away
+     * (see {@link OptSet#lazyConversion}), so that bad values are
+     * found too.
+     *
+     * <p>Thread-safe, like {@link #parse(String[])}.
+     *
+     * @see ParseResult
+     **/
+    public ParseResult tryParse (String... args)
+    {
+      ParseCache.Key key = null;
+      if (parseCache != null)
+        {
+          key = ParseCache.keyFor (this, args);
+          if (key != null)
+            {
+              ParsedArgs cached = parseCache.get (key);
+              if (cached != null) return new ParseResult (cached);
+            }
+        }
+
+      ParseContext ctx = new ParseContext (this, null, args.length, false);
+      ctx.collecting = true;
+      parseInto (ctx, args);
+
+      if (ctx.diagnostics != null) return new ParseResult (ctx.diagnostics);
+      ParsedArgs parsedArgs = new ParsedArgs (ctx);
+      if (key != null) parseCache.put (key, parsedArgs);
+      return new ParseResult (parsedArgs);
+    }
+
+    /**
+     * <p>Parse the arguments, writing the results into the given
+     * (reusable) ParseContext.
+     *
+     * <p>Any previous results in the context are discarded.  The
+     * returned ParsedArgs is owned by the context, and is only valid
+     * until the next parse using that context, as are the lists it
+     * returns.  Once a context has grown to fit a typical command
+     * line, parsing the same options into it again does not allocate:
+     * the values are written into the arrays used last time.
+     *
+     * <p>Thread-safe, as long as each thread uses its own
+     * ParseContext.
+     *
+     * @throws IllegalArgumentException if the context was made for a
+     * different CompiledOptSet.
+     *
+     * @throws OptParseException if there are any errors during
+     * parsing.
+     *
+     * @see ParseContext
+     **/
+    public ParsedArgs parse (ParseContext ctx, String... args)
+    {
+      if (ctx.parser != this)
+        throw new IllegalArgumentException
+          ("ParseContext belongs to a different CompiledOptSet");
+
+      parseInto (ctx, args);
+      return ctx.getParsedArgs ();
+    }
+
+    /**
+     * <p>Parses the arguments into the given context, converting and
+     * validating them.
+     **/
+    private void parseInto (ParseContext ctx, String[] args)
+    {
+      // --- reset the context (and its option reader).
+      ctx.reset (args);
+
+      // --- parse using the option grammar
+      try {
+        parseOptExprs (ctx);
+      } finally {
+        // --- don't leave argument files open if we stopped early.
+        ctx.in.closeArgFiles ();
+      }
+
+      // --- convert the arguments now, unless that is to be put off
+      // --- until they are asked for.
+      if (!lazyConversion || ctx.collecting) ctx.convertAll ();
+
+      // --- check to ensure that all the global required/list/etc
+      // --- things are correct.
+      ctx.validate ();
+
+      // --- woo hoo!  all done!
+    }
+
+    // ---- Grammar ---------------------------------------------------------
+
+    /**
+     * <pre>( [optExpr] )* ("--" | EOS)</pre>
+     **/
+    protected void parseOptExprs (ParseContext ctx)
+    {
+      OptReader in = ctx.in;
+
+      if (DebugParse) System.err.println ("paseOptExprs...");
+      try {
+        // --- read next opt until EOS
+        while (in.peek () != null)
+          {
+            // --- end of tokens on '--'
+            if (in.peek ().equals ("--")) break;
+
+            // --- read option expression.
+            parseOptExpr (ctx);
+          }
+      } catch (RuntimeException ex) {
+        // --- some errors can only be thrown (e.g. by Opts that parse
+        // --- their own arguments, or while reading an argument
+        // --- file), and not always as OptParseExceptions.
+        // --- Collecting, they end the parse.
+        if (!ctx.collecting) throw ex;
+        ctx.report (ParseDiagnostic.failed (ex, in.getPosition ()));
+      }
+    }
+
+    /**
+     * <pre>( [longOpt] | [shortOpts] | [positionalOpt] | [argfile] )</pre>
+     **/
+    protected void parseOptExpr (ParseContext ctx)
+    {
+      String optName = ctx.in.peek ();
+
+      if (DebugParse) System.err.println ("paseOptExpr ["+optName+"]");
+
+      // --- an option name, exactly as defined: no need to pick the
+      // --- token apart.
+      Opt<?> opt = optsByToken.get (optName);
+      if (opt != null)
+        {
+          ctx.in.read ();
+          if (optName.charAt (1) == '-')
+            ctx.parseArg (opt, optName, 0, optName.length ());
+          else
+            ctx.parseArg (opt, optName, 1, 2);
+        }
+
+      else if (optName.startsWith ("@"))
+        parseArgFile (ctx);
+
+      // --- long-named opt
+      else if (optName.startsWith ("--"))
+        parseLongOpt (ctx);
+
+      // --- short-named opt list
+      else if (optName.startsWith ("-") && optName.length () > 1)
+        parseShortOpts (ctx);
+
+      // --- positional opt
+      else
+        parsePositionalOpt (ctx);
+    }
+
+    /**
+     * <pre>"@FILE"</pre>
+     *
+     * <p>Expands to the arguments contained in FILE: see {@link
+     * ArgFileTokenizer} for the syntax.  The arguments are read
+     * incrementally, as the parse consumes them.
+     **/
+    protected void parseArgFile (ParseContext ctx)
+    {
+      String token = ctx.in.read ();
+      int position = ctx.in.getPosition ();
+
+      if (DebugParse) System.err.println ("parseArgFile ["+token+"]");
+
+      // --- strip '@'
+      String argFileSpec = token.substring (1);
+      if (argFileSpec.length () == 0)
+        {
+          ctx.report (ParseDiagnostic.badArgFile (token, position, null));
+          return;
+        }
+
+      // --- now it's a filename: stick it onto the front of the stream.
+      try {
+        ctx.in.pushArgFile (new File (argFileSpec));
+      } catch (OptParseException ex) {
+        if (!ctx.collecting) throw ex;
+        ctx.report (ParseDiagnostic.badArgFile (token, position, ex));
+      }
+    }
+
+    /**
+     * <pre>( "--NAME" [arg] | "--NAME="[arg] )</pre>
+     *
+     * <p>NAME is matched case-insensitively, and may be abbreviated
+     * to any unique prefix of a long name.
+     **/
+    protected void parseLongOpt (ParseContext ctx)
+    {
+      OptReader in = ctx.in;
+
+      // --- consume opt name.
+      String rawOptName = in.read ();
+
+      if (DebugParse) System.err.println ("parseLongOpt ["+rawOptName+"]");
+
+      // --- cope with '=' syntax.
+      int eqIdx = rawOptName.indexOf ('=');
+      int nameEnd = (eqIdx != -1) ? eqIdx : rawOptName.length ();
+
+      // --- lookup as long name (or unique prefix of one), straight
+      // --- out of the token.
+      Object match = optsByLongName.lookup (rawOptName, 2, nameEnd, true);
+      if (match == null || match == NameTrie.Ambiguous)
+        {
+          ctx.report (ParseDiagnostic.unknownOption
+                      (this, rawOptName, 0, nameEnd, in.getPosition (),
+                       match == NameTrie.Ambiguous));
+          return;
+        }
+      Opt<?> opt = (Opt<?>)match;
+
+      // --- an Opt taking a single token takes the value straight out
+      // --- of this one, when it is converted.
+      if (eqIdx != -1 && opt.takesArg ())
+        {
+          ctx.parseInlineArg (opt, rawOptName, nameEnd, eqIdx+1);
+          return;
+        }
+      if (eqIdx != -1) in.prependArg (rawOptName.substring (eqIdx+1));
+
+      // --- allow it to parse its own arguments.
+      ctx.parseArg (opt, rawOptName, 0, nameEnd);
+    }
+
+    /**
+     * <pre>"-ABCD" ([arg])*</pre>
+     **/
+    protected void parseShortOpts (ParseContext ctx)
+    {
+      OptReader in = ctx.in;
+
+      // --- (possibly multiple) short-named opts
+
+      // --- consume opt name.
+      String optList = in.read ();
+
+      if (DebugParse) System.err.println ("parseShortOpts ["+optList+"]");
+
+      // --- iterate through the characters (in place: no copying).
+      for (int i=1; i<optList.length (); i++)
+        {
+          char shortName = optList.charAt (i);
+
+          if (DebugParse) System.err.println ("parseShortOpt ["+shortName+"]");
+
+          // --- lookup as short name.
+          Opt<?> opt = getByShortName (shortName);
+          if (opt == null)
+            {
+              ctx.report (ParseDiagnostic.unknownOption
+                          (this, optList, i, i+1, in.getPosition (), false));
+              continue;
+            }
+
+          // --- allow it to parse its own arguments.
+          ctx.parseArg (opt, optList, i, i+1);
+        }
+    }
+
+    /**
+     * <pre>[arg]</pre>
+     **/
+    protected void parsePositionalOpt (ParseContext ctx)
+    {
+      OptReader in = ctx.in;
+
+      String possibleArg = in.peek ();
+
+      if (DebugParse)
+        System.err.println ("parsePositionalOpt ["+possibleArg+"]");
+
+      Opt<?> opt = getPositionalOpt ();
+      if (opt == null)
+        {
+          in.read ();
+          ctx.report (ParseDiagnostic.unexpectedPositional
+                      (possibleArg, in.getPosition ()));
+          return;
+        }
+
+      // --- allow it to parse its own arguments.
+      ctx.parseArg (opt, null, 0, 0);
+    }
+  }
+
+  // -------------------------------------------------------------------------
+  // ---- Opt ----------------------------------------------------------------
+  // -------------------------------------------------------------------------
+
+  /**
+   * <p>Option base class.  See various subtypes for real options.
+   *
+   * <p>Defines the interface for parsing option arguments.
+   *
+   * <p><b>Note: </b> if you want the easiest possible way of parsing
+   * options, see the {@link OptTarget} annotation.  Using OptSets and
+   * Opts directly is much more powerful, but 99% of programs don't
+   * need that kind of power.
+   *
+   * <p>See {@link OptSet} for more information on what to do with
+   * Opts once you've created them.
+   *
+   * <h3>Constructing an Opt</h3>
+   *
+   * <p>The constructor for Opt takes an instance of {@link OptSet}, and
+   * the constructor adds the Opt to the OptSet.  This allows for the
+   * incredibly succinct code pattern:
+   *
+   * <pre class="code">
+   * StringOpt mystring = new StringOpt (opts, "mystring");
+   * </pre>
+   *
+   * <h3>Customizing an Opt</h3>
+   *
+   * <p>Opt defines a builder API and state for:
+   * <ul>
+   *   <li>the Opt's {@link #defaultValue(Object)}
+   *
+   *   <li>various types of names ({@link #name(String)}, {@link
+   *   #shortName(char)}, {@link #positional(boolean)})
+   *
+   *   <li>whether the option is {@link #required(boolean)}, or is a
+   *   {@link #list(boolean)}.
+   *
+   *   <li>usage information: the {@link #metavar(String)} for the
+   *   argument, and the {@link #description(String)}.
+   * </ul>
+   *
+   * <p>Once the owning OptSet has been frozen (see {@link
+   * OptSet#freeze()}), none of these can be changed any more.
+   *
+   * <p>An example of using some more sophisticated options:
+   *
+   * <pre class="code">
+   * // --- defines a required option '--mystring STRING' that can also
+   * //   - be specified as -s STRING, and has help text.
+   * StringOpt mystring = new StringOpt (opts, "mystring")
+   *    .shortName ('s').required (true)
+   *    .description ("A handy string");
+   * </pre>
+   *
+   * <h3>Fetching results</h3>
+   *
+   * <p>Opt defines generic methods to fetch the object or objects
+   * specified by the user as the argument of the option.
+   *
+   * <p>If the option is a singleton (i.e. - not a list), then {@link
+   * #get(Cloptus.ParsedArgs)} is used.
+   *
+   * <p>If the option is a <em>list</em> Opt, then {@link
+   * #getList(Cloptus.ParsedArgs)} or {@link
+   * #getArray(Cloptus.ParsedArgs)} is used.
+   *
+   * <pre class="code">
+   * System.out.println ("Got --mystring == "+mystring.get (parsedArgs));
+   * </pre>
+   *
+   * <p>Because these methods are generic, you will get the correct
+   * type at compile time: <tt>StringOpt.get</tt> is typed as String,
+   * for example.
+   *
+   * <p>Most of the subtypes of Opt define convenience getters for
+   * particular values.  {@link Cloptus.FileOpt}, for example, defines
+   * {@link Cloptus.FileOpt#getStringContent(Cloptus.ParsedArgs)} that
+   * returns the contents of the file as a String, among many others.
+   * See particular subtypes for details.
+   *
+   * @see OptSet
+   **/
+  public static abstract class Opt<A> {
+
+    /*
+      Notes on the genericity of Opt
+
+      This class is generic over the argument type of this
+      option. (i.e. - StringOpt should be generic over String, etc).
+
+      This allows methods like get(ParsedArgs) and
+      defaultValue(Object) to be typed correctly.
+
+      Also, note that the entire builder API is covariant: it is
+      overridden in every Opt subtype.  This somewhat irritating code
+      pattern allows the type of a series of builder method calls to
+      be typed correctly, allowing this pattern:
+
+        StringOpt mystring = new StringOpt (opts, "mystring")
+          .positional (true).shortName ('m').description ("blah blah");
+
+      Without the covariant overrides, you would need to cast the
+      result before assigning it.
+     */
+
+    final OptSet opts;
+    final String name;
+    final Class<A> argType;
+
+    A defaultValue;
+
+    List<String> longNames = new ArrayList<String> ();
+    List<Character> shortNames = new ArrayList<Character> ();
+    boolean positional = false;
+
+    boolean required = false;
+    boolean list = false;
+
+    String metavar = null;
+    String description = null;
+
+    Member target = null;
+    MemberBinder binder = null;
+
+    /**
+     * <p>The position of this Opt in its compiled OptSet: assigned
+     * when the OptSet is frozen.  Used to index per-Opt results.
+     **/
+    int ordinal = -1;
+
+    /**
+     * <p>The read-only list returned by getList when the option was
+     * not specified: assigned when the OptSet is frozen.
+     **/
+    List<A> defaults = null;
+
+    /**
+     * <p>Makes a new option.
+     *
+     * @param _opts - the option list to add this option to (the
+     * constructor calls addOpt as a side effect).
+     *
+     * @param _name - the CANONICAL name for this option.  Used in
+     * various APIs to fetch the option reflectively.  The canonical
+     * name is automatically added as a long name for this option (see
+     * {@link #name(String)})
+     *
+     * @param _argType - a Class containing the argument type for this
+     * option.  i.e. - for a StringOpt, this would be String.class.
+     * Necessary for some of the reflective calls this guy does.
+     *
+     * @throws NullPointerException if any of the arguments are null:
+     * everything in the constructor is required.
+     **/
+    public Opt (OptSet _opts, String _name, Class<A> _argType)
+    {
+      if (_opts == null)
+        throw new NullPointerException ("_opts cannot be null");
+      if (_name == null)
+        throw new NullPointerException ("_name cannot be null");
+      if (_argType == null)
+        throw new NullPointerException ("_argType cannot be null");
+
+      opts = _opts;
+      name = _name;
+      argType = _argType;
+      longNames.add (_name);
+      opts.addOpt (this);
+    }
+
+    // ---- Builder API -----------------------------------------------------
+
     /**
      * <p>Sets the default value for this option.
      *
-     * <p>The type of the default value is dependent on the particular
-     * subtype of Opt.
+     * <p>The type of the default value is dependent on the particular
+     * subtype of Opt.
+     **/
+    public Opt<A> defaultValue (A v)
+    { opts.checkNotFrozen (); defaultValue = v; return this; }
+
+    /**
+     * <p>Adds an additional (long) name for this opt.
+     *
+     * <p>If not specified, this option will have only the (canonical)
+     * name passed in the constructor.  All Opts have at least one
+     * long name.
+     *
+     * <p>Long-named options are specified using the <tt>--LONGNAME
+     * ARG</tt> syntax at the command line.
+     *
+     * @see Cloptus.OptTarget#name()
+     **/
+    public Opt<A> name (String name)
+    { opts.checkNotFrozen (); longNames.add (name); return this; }
+
+    /**
+     * <p>Adds a short name for this opt.
+     *
+     * <p>If not specified, the option will have no short names.
+     *
+     * <p>Short-named options are specified using <tt>-X ARG</tt>
+     * syntax at the command line, and can be multiply specified like
+     * this: <tt>-XYZ ARG_X ARG_Y ARG_Z</tt>
+     *
+     * @see Cloptus.OptTarget#shortName()
+     **/
+    public Opt<A> shortName (char name)
+    { opts.checkNotFrozen (); shortNames.add (name); return this; }
+
+    /**
+     * <p>Specifies whether this opt can be specified with no name
+     * (i.e. - positionally)
+     *
+     * <p>If not specified, you can't specify this option without a name.
+     *
+     * @see Cloptus.OptTarget#positional()
+     **/
+    public Opt<A> positional (boolean v)
+    { opts.checkNotFrozen (); positional = v; return this; }
+
+    /**
+     * <p>If true, specifies that this option is required: an error
+     * will be raised if option parsing completes and this option is
+     * not specified.
+     *
+     * <p>If not specified, the option is optional.
+     *
+     * @see Cloptus.OptTarget#required()
+     **/
+    public Opt<A> required (boolean v)
+    { opts.checkNotFrozen (); required = v; return this; }
+
+    /**
+     * <p>If true, specifies that this option is a <em>list</em>: this
+     * means that you can specify this option more than once, and the
+     * result of parsing the option will be a Collection or array.
+     *
+     * <p>If not specified, the option is a singleton: an error will
+     * be raised if you specify the option more than once.
+     *
+     * <p>When using {@link OptTarget}, Collection and array-typed
+     * members will automatically be list Opts.
+     **/
+    public Opt<A> list (boolean v)
+    { opts.checkNotFrozen (); list = v; return this; }
+
+    /**
+     * <p>Specifies the <em>metavar</em> to use in help text for this
+     * option.  Usage information for an option looks like <tt>--name
+     * METAVAR</tt>.
+     *
+     * <p>The metavar should describe the valid values for the
+     * argument, using a single word.
+     *
+     * <p>If not specified, the metavar is derived from the type of
+     * the option use.  For example, a StringOpt has the metavar
+     * STRING.  A FileOpt has the metavar FILE.
+     *
+     * @see Cloptus.OptTarget#metavar()
+     **/
+    public Opt<A> metavar (String v)
+    { opts.checkNotFrozen (); metavar = v; return this; }
+
+    /**
+     * <p>Specifies the help text associated with this option.  This
+     * text is printed if the user specifies the <tt>--help/-h/-?</tt>
+     * option at the command line.
+     *
+     * <p>If not specified, this option has no help text.
+     *
+     * @see Cloptus.OptTarget#description()
+     **/
+    public Opt<A> description (String v)
+    { opts.checkNotFrozen (); description = v; return this; }
+
+    // ---- Getters ---------------------------------------------------------
+
+    /**
+     * <p>Gets the principle name of this opt (used in help, as well
+     * as in APIs to fetch the opt reflectively)
+     *
+     * <p>This is the canonical name passed in the constructor.
+     **/
+    public String getName () { return name; }
+
+    /**
+     * Returns the Class object representing the arg type of this Opt.
+     **/
+    public Class<A> getArgType () { return argType; }
+
+    /**
+     * <p>Returns the specified default value for this argument.
+     **/
+    public A getDefaultValue () { return defaultValue; }
+
+    /**
+     * <p>Returns the list of long names for this argument.  This
+     * includes the canonical name.
+     **/
+    public List<java.lang.String> getLongNames () { return longNames; }
+
+    /**
+     * <p>Returns the list of short names for this argument.
+     **/
+    public List<java.lang.Character> getShortNames () { return shortNames; }
+
+    /**
+     * <p>Returns true if this option can be specified without a name.
+     * There can only be one positional option.
+     **/
+    public boolean isPositional () { return positional; }
+
+    /**
+     * <p>Returns true if this option is required.  A parse exception is
+     * raised if it is missing.
+     **/
+    public boolean isRequired () { return required; }
+
+    /**
+     * <p>Returns true if this option may be specified more than once.
+     **/
+    public boolean isList () { return list; }
+
+    /**
+     * <p>Return the name of the metavariable to use in usage strings.
+     * If 'null', this option takes no argument.
+     **/
+    public String getMetavar () { return metavar; }
+
+    /**
+     * <p>Returns the description for this option, used in help text.
+     **/
+    public String getDescription () { return description; }
+
+    /**
+     * <p>Returns the ordinal of this option: its position (counting
+     * from 0) among the options of its OptSet, in definition order.
+     *
+     * <p>Ordinals are dense, and are assigned when the OptSet is
+     * frozen: until then, this returns -1.  Parse results are kept in
+     * arrays indexed by ordinal.
+     **/
+    public int getOrdinal () { return ordinal; }
+
+    /**
+     * <p>Called when the OptSet is frozen.
+     **/
+    void freezeDefaults ()
+    {
+      defaults = (defaultValue == null) ? Collections.<A>emptyList ()
+        : Collections.singletonList (defaultValue);
+    }
+
+
+    // ---- Parse -----------------------------------------------------------
+
+    /**
+     * <p>Parse the argument for this option, consuming its tokens.
+     *
+     * <p>By default, reads a single token and converts it with {@link
+     * #parseValue(String)}.  Options that consume no tokens, or more
+     * than one, override this: an override is called as soon as the
+     * parse reaches the option (see {@link #takesArg()}).
+     **/
+    protected A parseArg (OptReader in)
+    {
+      String token = in.read ();
+      if (token == null)
+        throw new OptParseException ("Missing argument for option "+this);
+      return parseValue (token);
+    }
+
+    /**
+     * <p>Returns true if this option consumes exactly one argument
+     * token, converted by {@link #parseValue(String)}.
+     *
+     * <p>The tokens of such options are recorded raw while parsing,
+     * and converted afterwards: see {@link OptSet#lazyConversion}.
+     *
+     * <p>By default, true unless this option's class overrides {@link
+     * #parseArg(Cloptus.OptReader)}.
+     **/
+    protected boolean takesArg ()
+    { return ParseArgDeclarer.get (getClass ()) == Opt.class; }
+
+    private static final MethodDeclarer ParseArgDeclarer =
+      new MethodDeclarer ("parseArg", OptReader.class);
+
+    /**
+     * <p>Convert a single argument token into a value.
+     *
+     * <p>Subtypes override either this method or {@link
+     * #parseArg(Cloptus.OptReader)} to parse their arguments.  By default,
+     * fails: it is only reached if they override neither.
+     **/
+    protected A parseValue (String token)
+    {
+      throw new OptCompileException
+        (getClass ().getName ()+" must override parseValue(String)"
+         +" or parseArg(OptReader)");
+    }
+
+    /**
+     * <p>Converts <tt>tokens[start..end)</tt> into the same positions
+     * of <tt>values</tt>, stopping at the first bad token.
+     *
+     * <p>Conversion must be repeatable: the caller finds out what was
+     * wrong with a bad token by converting it again.
+     *
+     * @return the index of the first bad token, or <tt>end</tt> if
+     * they were all good.
+     **/
+    int parseValues (String[] tokens, Object[] values, int start, int end)
+    {
+      for (int i=start; i<end; i++)
+        try {
+          values[i] = parseValue (tokens[i]);
+        } catch (RuntimeException ex) {
+          return i;
+        }
+      return end;
+    }
+
+    // ---- Fetch Return Value ----------------------------------------------
+
+    /**
+     * <p>Fetch the (single) specified value for this option.  Can return
+     * null if the option was not found and no default was specified.
+     *
+     * <p>One of the three default opt target fetchers.
+     *
+     * @throws OptUseException if more than one value exists (as can
+     * be, for 'list'-typed options).
+     *
+     * @see #getList(Cloptus.ParsedArgs)
+     * @see #getArray(Cloptus.ParsedArgs)
+     **/
+    public A get (ParsedArgs parsedArgs)
+    { return parsedArgs.getValue (this, argType, defaultValue); }
+
+    /**
+     * <p>Fetch all the specified values for this option.
+     *
+     * <p>If a default value was specified, and this list would
+     * otherwise be empty, a singleton list containing the default
+     * value is returned.
+     *
+     * <p>The returned list is read-only.
+     *
+     * <p>One of the three default opt target fetchers.
+     *
+     * @see #get(Cloptus.ParsedArgs)
+     * @see #getArray(Cloptus.ParsedArgs)
+     **/
+    public List<A> getList (ParsedArgs parsedArgs)
+    { return parsedArgs.getValues (this, argType, defaultValue); }
+
+    /**
+     * <p>Fetch all of the specified values for this option, as a Java
+     * array.
+     *
+     * <p>One of the three default opt target fetchers.
+     *
+     * @see #get(Cloptus.ParsedArgs)
+     * @see #getList(Cloptus.ParsedArgs)
+     **/
+    public A[] getArray (ParsedArgs parsedArgs)
+    { return parsedArgs.getValueArray (this, argType, defaultValue); }
+
+    // ---- Wiring for OptTarget --------------------------------------------
+
+    /**
+     *
+     **/
+    protected static Opt<?> make (OptSet opts, OptTarget optTarget, Member m)
+    { return new MemberTemplate (optTarget, m).make (opts); }
+
+    /**
+     *
+     **/
+    static String getDefaultOptName (Member m)
+    {
+      String memberName = m.getName ();
+      if (m instanceof Field)
+        return memberName;
+      else if (m instanceof Method)
+        {
+          if (memberName.startsWith ("set") && memberName.length () > 3)
+            return
+              Character.toLowerCase (memberName.charAt (3))
+              + memberName.substring (4);
+          else
+            return memberName;
+        }
+      else
+        {
+          assert (false);
+          return null;
+        }
+    }
+
+    /**
+     *
+     **/
+    static Class<?> getMemberType (Member m)
+    {
+      if (m instanceof Field)
+        return ((Field)m).getType ();
+      else if (m instanceof Method)
+        {
+          Method method = (Method)m;
+          // --- must be a 1-arg method
+          Class<?>[] parameterTypes = method.getParameterTypes ();
+          if (parameterTypes.length != 1)
+            throw new OptCompileException
+              ("@OptTarget can only be specified on methods with 1 parameter: "
+               +"got "+parameterTypes.length+" parameters for method "+method);
+          return parameterTypes[0];
+        }
+      else
+        {
+          assert (false);
+          return null;
+        }
+    }
+
+    /**
+     * <p>Fetches the Class corresponding to the field or method type.
+     *
+     * <p>Looks first for an option type registered for exactly this
+     * argument type (see {@link #registerDefaultOptType}); then, for
+     * an enum, uses EnumOpt, and for an array, the default option type
+     * of its component type.  Results are cached per argument type.
+     *
+     * @throws OptCompileException if there is no default option type.
+     *
+     * @see Cloptus.OptTarget#optType()
+     **/
+    public static Class<?> getDefaultOptType (Class<?> argType)
+    {
+      Class<?> r = findDefaultOptType (argType);
+      if (r == null)
+        throw new OptCompileException
+          ("No default option type for @OptTarget of type "+argType);
+      return r;
+    }
+
+    /**
+     * <p>Makes <tt>optType</tt> the default option type for
+     * @{@link OptTarget} members of type <tt>argType</tt> (and arrays
+     * of it), replacing any previous registration, including the
+     * built-in ones.
+     *
+     * <p>Takes effect for every type defined from then on, including
+     * types already used with {@link OptSet#populateMembers(Object,
+     * String[])}: their cached templates and parsers are made again.
+     * OptSets already defined keep their options.
+     *
+     * <p>Registrations only affect options defined reflectively:
+     * parsers generated by {@link OptTargetProcessor} use the built-in
+     * defaults.  To use your own option types there, specify them with
+     * {@link OptTarget#optType()}.
+     *
+     * <p>Registrations are held weakly: they never keep the argument
+     * type or the option type (or their class loaders) alive.  Code
+     * that is undeployed while the library stays loaded should still
+     * {@linkplain #unregisterDefaultOptType unregister} its types, so
+     * that they stop being used straight away.
+     *
+     * @throws OptCompileException if <tt>optType</tt> is not a concrete
+     * Opt with an (OptSet, String, Class&lt;A&gt;) or (OptSet, String)
+     * constructor.
+     **/
+    public static void registerDefaultOptType (Class<?> argType,
+                                               Class<?> optType)
+    {
+      if (argType == null) throw new NullPointerException ("argType");
+
+      // --- fail now, rather than when the option is defined.
+      OptFactory.forType (optType);
+
+      synchronized (RegisteredOptTypes)
+        {
+          RegisteredOptTypes.put
+            (argType, new java.lang.ref.WeakReference<Class<?>> (optType));
+          registryVersion++;
+        }
+    }
+
+    /**
+     * <p>Undoes {@link #registerDefaultOptType} for the given argument
+     * type: its default option type goes back to the built-in one, if
+     * there is one.
+     **/
+    public static void unregisterDefaultOptType (Class<?> argType)
+    {
+      synchronized (RegisteredOptTypes)
+        {
+          RegisteredOptTypes.remove (argType);
+          registryVersion++;
+        }
+    }
+
+    /**
+     * <p>The registered default option types, by argument type, both
+     * held weakly.  Guarded by its own lock.
+     **/
+    private static final
+      Map<Class<?>,java.lang.ref.WeakReference<Class<?>>> RegisteredOptTypes =
+      new WeakHashMap<Class<?>,java.lang.ref.WeakReference<Class<?>>> ();
+
+    /**
+     * <p>The built-in default option types, by argument type.
+     **/
+    private static final Map<Class<?>,Class<?>> BuiltInOptTypes =
+      new HashMap<Class<?>,Class<?>> ();
+
+    static {
+      BuiltInOptTypes.put (String.class, StringOpt.class);
+      BuiltInOptTypes.put (Integer.class, IntegerOpt.class);
+      BuiltInOptTypes.put (int.class, IntegerOpt.class);
+      BuiltInOptTypes.put (Double.class, DoubleOpt.class);
+      BuiltInOptTypes.put (double.class, DoubleOpt.class);
+      BuiltInOptTypes.put (Boolean.class, FlagOpt.class);
+      BuiltInOptTypes.put (boolean.class, FlagOpt.class);
+      BuiltInOptTypes.put (Date.class, DateOpt.class);
+      BuiltInOptTypes.put (File.class, FileOpt.class);
+      BuiltInOptTypes.put (URI.class, UriOpt.class);
+    }
+
+    /**
+     * <p>Returns the option type registered (or else built in) for
+     * exactly the given argument type, or null.
+     **/
+    private static Class<?> getRegisteredOptType (Class<?> argType)
+    {
+      synchronized (RegisteredOptTypes)
+        {
+          java.lang.ref.WeakReference<Class<?>> r =
+            RegisteredOptTypes.get (argType);
+          Class<?> optType = (r == null) ? null : r.get ();
+          if (optType != null) return optType;
+        }
+      return BuiltInOptTypes.get (argType);
+    }
+
+    /**
+     * <p>Counts registrations: a cached default option type (or
+     * OptTemplate) worked out before the latest registration is
+     * stale.
+     **/
+    static volatile int registryVersion = 0;
+
+    /**
+     * <p>A default option type (or null, for none), and the registry
+     * version it was worked out at.
+     *
+     * <p>The option type is held weakly: the entry for a JDK type like
+     * <tt>Duration</tt> lives as long as the JDK does, and must not
+     * keep a registered option type's class loader alive.
+     **/
+    private static final class DefaultOptType {
+      final int version;
+      final java.lang.ref.WeakReference<Class<?>> optType;
+
+      DefaultOptType (int _version, Class<?> _optType)
+      {
+        version = _version;
+        optType = (_optType == null) ? null
+          : new java.lang.ref.WeakReference<Class<?>> (_optType);
+      }
+
+      /**
+       * <p>Returns true if the option type has been unloaded.
+       **/
+      boolean isCleared () { return optType != null && optType.get () == null; }
+
+      Class<?> get () { return (optType == null) ? null : optType.get (); }
+    }
+
+    private static final ClassValue<DefaultOptType> DefaultOptTypes =
+      new ClassValue<DefaultOptType> () {
+        protected DefaultOptType computeValue (Class<?> argType)
+        {
+          // --- read the version first: a registration racing with us
+          // --- then leaves a stale entry, never a wrong current one.
+          int version = registryVersion;
+          Class<?> r = getRegisteredOptType (argType);
+          if (r == null && argType.isArray ())
+            r = findDefaultOptType (argType.getComponentType ());
+          else if (r == null && Enum.class.isAssignableFrom (argType))
+            r = EnumOpt.class;
+          return new DefaultOptType (version, r);
+        }
+      };
+
+    /**
+     * <p>Returns the default option type for the given argument type,
+     * or null if there is none.
+     **/
+    static Class<?> findDefaultOptType (Class<?> argType)
+    {
+      DefaultOptType r = DefaultOptTypes.get (argType);
+      Class<?> optType = r.get ();
+      while (r.version != registryVersion || r.isCleared ())
+        {
+          DefaultOptTypes.remove (argType);
+          r = DefaultOptTypes.get (argType);
+          optType = r.get ();
+        }
+      return optType;
+    }
+
+    /**
+     *
+     **/
+    public Opt<A> initFromOptTarget (OptTarget target)
+    {
+      assert (getClass () == target.optType ());
+
+      for (String name : target.name ()) name (name);
+      for (char shortName : target.shortName ()) shortName (shortName);
+      positional (target.positional ());
+      
+      required (target.required ());
+      // XXX set to list of argument is appropriate type.
+      // list (target.list ());
+
+      if (!"".equals (target.metavar ())) metavar (target.metavar ());
+      if (!"".equals (target.description ()))
+        description (target.description ());
+
+      return this;
+    }
+
+    public Opt<A> setTarget (Member v)
+    {
+      if (!(v instanceof Field || v instanceof Method))
+        throw new OptCompileException
+          ("Bad target: expected either Field or Method, got "+v.getClass ());
+      return setTarget (v, MemberBinder.forMember (v, getClass ()));
+    }
+
+    Opt<A> setTarget (Member v, MemberBinder b)
+    {
+      opts.checkNotFrozen ();
+      target = v;
+      binder = b;
+      return this;
+    }
+
+    public void populateMember (Object targetObj,
+                                ParsedArgs parsedArgs)
+    {
+      // --- don't bother if there is no target.
+      if (binder == null) return;
+
+      // --- make sure the type is correct.
+      Class<?> desiredTargetObjType = binder.targetType;
+      if (!desiredTargetObjType.isInstance (targetObj))
+        throw new ClassCastException
+          ("Bad target object: desired "+desiredTargetObjType
+           +", got "+targetObj.getClass ());
+
+      binder.bind (targetObj, this, parsedArgs);
+    }
+
+    // ---- Debug -----------------------------------------------------------
+    
+    /**
+     * <p>Print this option as a String.
+     *
+     * <p>Defined as {@link #printSimpleUsage(PrintWriter)}
+     **/
+    public String toString ()
+    {
+      StringPrintWriter out = new StringPrintWriter ();
+      printSimpleUsage (out);
+      return out.toString ();
+    }
+
+    /**
+     * <p>Print simple usage for this option (canonical long name, and
+     * metavar).  Does not print arity information.
+     **/
+    public void printSimpleUsage (PrintWriter out)
+    { printLongNameUsage (out, getName (), getMetavar ()); }
+
+    /**
+     * <p>Print usage for this argument, including arity specifiers for
+     * list and non-required options.
+     **/
+    public void printUsage (PrintWriter out)
+    {
+      if (isRequired () && isList ())
+        {
+          out.print ("( ");
+          printSimpleUsage (out);
+          out.print (" )+");
+        }
+      else if (isList ())
+        {
+          out.print ("( ");
+          printSimpleUsage (out);
+          out.print (" )*");
+        }
+      else if (!isRequired ())
+        {
+          out.print ("[ ");
+          printSimpleUsage (out);
+          out.print (" ]");
+        }
+      else
+        printSimpleUsage (out);
+    }
+
+    /**
+     * <p>Prints all possible usage information for this option, in a
+     * comma-seperated list.
+     **/
+    public void printExhaustiveUsage (PrintWriter out)
+    {
+      String metavar = getMetavar ();
+
+      boolean first = true;
+
+      // --- first, long names.
+      for (String s : getLongNames ())
+        {
+          if (!first) out.print (", "); else first = false;
+          printLongNameUsage (out, s, metavar);
+        }
+
+      // --- then, other short names.
+      for (char s : getShortNames ())
+        {
+          if (!first) out.print (", "); else first = false;
+          printShortNameUsage (out, s, metavar);
+        }
+
+      // --- then, positional usage.
+      if (isPositional ())
+        {
+          if (!first) out.print (", "); else first = false;
+          printPositionalUsage (out, metavar);
+        }
+    }
+
+    /**
+     * <p>Prints help for this option, including exhaustive usage, and
+     * any help text associated with this option.
+     **/
+    public void printOptionHelp (PrintWriter out)
+    {
+      // --- print usage details to string.
+      StringPrintWriter sout = new StringPrintWriter ();
+      printExhaustiveUsage (sout);
+      String usageDetails = sout.toString ();
+
+      // --- indent description 30 characters.
+      String IndentSpaces = "                              ";
+
+      // --- if usage details < IndentSpaces
+      if (usageDetails.length () < IndentSpaces.length ())
+        {
+          out.print (usageDetails);
+          out.print (IndentSpaces.substring
+                     (0, IndentSpaces.length () - usageDetails.length ()));
+        }
+      else
+        {
+          out.println (usageDetails);
+          out.print (IndentSpaces);
+        }
+
+      WordWrap.wordwrap (out, getDescription (), IndentSpaces, false);
+      out.println ();
+    }
+
+    /**
+     * <p>Utility: prints simple usage for the given long name and metavar.
+     **/
+    public static void printLongNameUsage (PrintWriter out, String name, 
+                                           String metavar)
+    {
+      out.print ("--");
+      out.print (name);
+      if (metavar != null)
+        {
+          out.print ("=");
+          out.print (metavar);
+        }
+    }
+
+    /**
+     * <p>Utility: prints simple usage for the given short name and metavar.
+     **/
+    public static void printShortNameUsage (PrintWriter out, char name, 
+                                            String metavar)
+    {
+      out.print ("-");
+      out.print (name);
+      if (metavar != null)
+        {
+          out.print (" ");
+          out.print (metavar);
+        }
+    }
+
+    /**
+     * <p>Utility: prints simple usage for a positional opt with the
+     * given metavar.
+     **/
+    public static void printPositionalUsage (PrintWriter out, String metavar)
+    {
+      if (metavar == null) out.print ("ARG");
+      else                 out.print (metavar);
+    }
+
+  }
+
+  /**
+   * <p>Finds, for each class, the class that declares the version of
+   * a given method it has.
+   *
+   * <p>The built-in Opts use this to tell whether a subtype
+   * overrides a method that their fast paths would skip.
+   **/
+  static final class MethodDeclarer extends ClassValue<Class<?>> {
+    private final String name;
+    private final Class<?>[] params;
+
+    MethodDeclarer (String _name, Class<?>... _params)
+    { name = _name; params = _params; }
+
+    protected Class<?> computeValue (Class<?> type)
+    {
+      for (Class<?> c = type; c != null; c = c.getSuperclass ())
+        for (Method m : c.getDeclaredMethods ())
+          if (m.getName ().equals (name) && !m.isBridge ()
+              && Arrays.equals (m.getParameterTypes (), params))
+            return c;
+      return null;
+    }
+  }
+
+  // -------------------------------------------------------------------------
+  // ---- Implementations of Opt ---------------------------------------------
+  // -------------------------------------------------------------------------
+
+  /**
+   * <p>This is a gross hack to deal with the fact that null cannot be
+   * a default for annotation members.
+   **/
+  private static abstract class NotSpecifiedOpt extends Opt<Object> {
+    private NotSpecifiedOpt (OptSet _opts, String _name)
+    { super (_opts, _name, Object.class); }
+  }
+
+  /**
+   * <p>A String option.  The simplest possible option.
+   **/
+  public static class StringOpt extends Opt<String> {
+
+    /**
+     * <p>Make a StringOpt with the given name.
+     **/
+    public StringOpt (OptSet _opts, String _name)
+    { super (_opts, _name, String.class); metavar ("STRING"); }
+
+    /* Covariant builder methods: for convenient building. */
+    public StringOpt defaultValue(String v){super.defaultValue(v);return this;}
+    public StringOpt name (String name) { super.name (name); return this; }
+    public StringOpt shortName (char name){super.shortName(name);return this; }
+    public StringOpt positional (boolean v){super.positional(v); return this; }
+    public StringOpt required (boolean v) { super.required (v); return this; }
+    public StringOpt list (boolean v) { super.list (v); return this; }
+    public StringOpt metavar (String v) { super.metavar (v); return this; }
+    public StringOpt description (String v){super.description(v);return this; }
+
+    /**
+     * <p>Parse the argument.
+     **/
+    protected String parseValue (String token) { return token; }
+  }
+
+  /**
+   * <p>Base class for options with primitive values.
+   *
+   * <p>Each value is converted straight from its token to a
+   * <tt>long</tt> (for floating point values, the raw bits of a
+   * <tt>double</tt>), and the values of a PrimitiveOpt are kept in a
+   * <tt>long[]</tt>.  They are only boxed if they are fetched as
+   * objects, with {@link #get(Cloptus.ParsedArgs)}, {@link
+   * #getList(Cloptus.ParsedArgs)} or {@link
+   * #getArray(Cloptus.ParsedArgs)}: subtypes add getters for
+   * primitive values and arrays that never box.
+   *
+   * <p>A PrimitiveOpt takes exactly one argument, unless a subtype
+   * overrides {@link #parseArg(Cloptus.OptReader)}: its values are
+   * then encoded as they are parsed.
+   **/
+  public abstract static class PrimitiveOpt<A> extends Opt<A> {
+
+    protected PrimitiveOpt (OptSet _opts, String _name, Class<A> _argType)
+    { super (_opts, _name, _argType); }
+
+    /**
+     * <p>Converts a single argument token into a value, encoded as a
+     * long.
+     **/
+    protected abstract long parseBits (String token);
+
+    /**
+     * <p>Boxes an encoded value.
+     **/
+    protected abstract A fromBits (long bits);
+
+    /**
+     * <p>Encodes a value.
+     **/
+    protected abstract long toBits (A value);
+
+    protected final A parseValue (String token)
+    { return fromBits (parseBits (token)); }
+
+    /**
+     * <p>Returns true if the boxed values may be kept, and handed to
+     * every caller that fetches them: false for mutable argument
+     * types, which are then boxed afresh on each fetch.  By default,
+     * true.
+     **/
+    protected boolean keepsBoxedValues () { return true; }
+
+    /**
+     * <p>Encodes a value parsed by {@link #parseArg(Cloptus.OptReader)}.
+     **/
+    long encode (Object value) { return toBits (getArgType ().cast (value)); }
+
+    /**
+     * <p>Like {@link Opt#parseValues}, but encodes the values into
+     * <tt>bits</tt>.
+     *
+     * <p>The built-in subtypes each override this with their own
+     * loop, calling their {@link NumericUtil} scanner directly: a bad
+     * token then just ends the loop, without any exception being
+     * made.  They only do so if {@link #parseBits(String)} is their
+     * own (see {@link #scansDirectly}): otherwise, they use this loop,
+     * which calls it.
+     **/
+    int parseBits (String[] tokens, long[] bits, int start, int end)
+    {
+      for (int i=start; i<end; i++)
+        try {
+          bits[i] = parseBits (tokens[i]);
+        } catch (RuntimeException ex) {
+          return i;
+        }
+      return end;
+    }
+
+    /**
+     * <p>Returns true if this option's {@link #parseBits(String)} is
+     * the one declared by <tt>type</tt>, so that a bulk loop of
+     * <tt>type</tt> may call its scanner directly: false if a
+     * subtype overrides it.
+     **/
+    final boolean scansDirectly (Class<?> type)
+    { return ParseBitsDeclarer.get (getClass ()) == type; }
+
+    private static final MethodDeclarer ParseBitsDeclarer =
+      new MethodDeclarer ("parseBits", String.class);
+
+    /**
+     * <p>Makes the exception for a token rejected by one of the
+     * {@link NumericUtil} scanners with the given error code.
+     * <tt>expected</tt> describes what the token should have been.
+     **/
+    OptParseException badNumber (String token, int error, String expected)
+    {
+      return new OptParseException
+        ("Bad value "+token+" for option "+this+": "
+         +((error == NumericUtil.OutOfRange)
+           ? expected+" out of range." : "expected "+expected+"."));
+    }
+
+    /**
+     * <p>Fetch the (single) specified value for this option, encoded.
+     * If the option was not specified, returns the encoded default
+     * value, or <tt>ifMissing</tt> if there is no default.
+     *
+     * @throws OptUseException if more than one value exists.
+     **/
+    protected long getBits (ParsedArgs parsedArgs, long ifMissing)
+    {
+      long[] bits = parsedArgs.getValueBits (this);
+      if (bits == null)
+        return (defaultValue == null) ? ifMissing : toBits (defaultValue);
+      if (bits.length > 1)
+        throw new OptUseException
+          ("Asked for singleton value of opt "+this+", got list");
+      return bits[0];
+    }
+
+    /**
+     * <p>Fetch all the specified values for this option, encoded.  If
+     * the option was not specified, returns the encoded default value
+     * (if any).
+     *
+     * <p>The result may be shared: it must not be modified.
+     **/
+    protected long[] getBitsArray (ParsedArgs parsedArgs)
+    {
+      long[] bits = parsedArgs.getValueBits (this);
+      if (bits == null)
+        return (defaultValue == null) ? NoBits
+          : new long[] { toBits (defaultValue) };
+      return bits;
+    }
+
+    private static final long[] NoBits = new long[0];
+  }
+
+  /**
+   * <p>An IntegerOpt: parses integers.
+   *
+   * <p>Supports 0x... (hex) 0b... (binary) and 0... (octal) constants.
+   *
+   * <p>For sizes with SI suffixes (like K, M, etc), see {@link
+   * ByteSizeOpt}.
+   **/
+  public static class IntegerOpt extends PrimitiveOpt<Integer> {
+
+    /**
+     * <p>Make an IntegerOpt with the given name.
+     **/
+    public IntegerOpt (OptSet _opts, String _name)
+    { super (_opts, _name, Integer.class); metavar ("INTEGER"); }
+
+    /* Covariant builder methods: for convenient building. */
+    public IntegerOpt defaultValue(Integer v)
+    {super.defaultValue(v);return this;}
+    public IntegerOpt name (String name) { super.name (name); return this; }
+    public IntegerOpt shortName (char name){super.shortName(name);return this;}
+    public IntegerOpt positional (boolean v){super.positional(v); return this;}
+    public IntegerOpt required (boolean v) { super.required (v); return this; }
+    public IntegerOpt list (boolean v) { super.list (v); return this; }
+    public IntegerOpt metavar (String v) { super.metavar (v); return this; }
+    public IntegerOpt description (String v){super.description(v);return this;}
+
+    /**
+     * <p>Convenience method, gets the option result as a Java int.
+     *
+     * <p>Returns -1 if the value is not found.
+     **/
+    public int getInt (ParsedArgs parsedArgs)
+    { return (int)getBits (parsedArgs, -1); }
+
+    /**
+     * <p>Convenience method, gets the option result as a Java int array.
+     **/
+    public int[] getIntArray (ParsedArgs parsedArgs)
+    {
+      long[] bits = getBitsArray (parsedArgs);
+      int[] r = new int[bits.length];
+      for (int i=0; i<bits.length; i++) r[i] = (int)bits[i];
+      return r;
+    }
+
+    protected Integer fromBits (long bits) { return (int)bits; }
+
+    protected long toBits (Integer value) { return value; }
+
+    /**
+     * <p>Parse the next token as an Integer.
+     *
+     * <p>Includes support for various bases.
+     *
+     * @see NumericUtil#scanInteger
+     **/
+    protected long parseBits (String valueStr)
+    {
+      long[] value = new long[1];
+      int error = NumericUtil.scanInteger
+        (valueStr, Integer.MIN_VALUE, Integer.MAX_VALUE, value, 0);
+      if (error != NumericUtil.Ok)
+        throw badNumber (valueStr, error, "integer");
+      return value[0];
+    }
+
+    int parseBits (String[] tokens, long[] bits, int start, int end)
+    {
+      if (!scansDirectly (IntegerOpt.class))
+        return super.parseBits (tokens, bits, start, end);
+      for (int i=start; i<end; i++)
+        if (NumericUtil.scanInteger (tokens[i], Integer.MIN_VALUE,
+                                     Integer.MAX_VALUE, bits, i)
+            != NumericUtil.Ok)
+          return i;
+      return end;
+    }
+  }
+
+  /**
+   * <p>A DoubleOpt.  Allows specification of floating point values.
+   **/
+  public static class DoubleOpt extends PrimitiveOpt<Double> {
+
+    /**
+     * <p>Make a DoubleOpt with the given name.
+     **/
+    public DoubleOpt (OptSet _opts, String _name)
+    { super (_opts, _name, Double.class); metavar ("DOUBLE"); }
+
+    /* Covariant builder methods: for convenient building. */
+    public DoubleOpt defaultValue(Double v){super.defaultValue(v);return this;}
+    public DoubleOpt name (String name) { super.name (name); return this; }
+    public DoubleOpt shortName (char name){super.shortName(name);return this;}
+    public DoubleOpt positional (boolean v){super.positional(v); return this;}
+    public DoubleOpt required (boolean v) { super.required (v); return this; }
+    public DoubleOpt list (boolean v) { super.list (v); return this; }
+    public DoubleOpt metavar (String v) { super.metavar (v); return this; }
+    public DoubleOpt description (String v){super.description(v);return this;}
+
+    /**
+     * <p>Convenience method, gets the option result as a Java double.
+     *
+     * <p>Returns Double.NaN if the value is not found.
+     **/
+    public double getDouble (ParsedArgs parsedArgs)
+    {
+      return Double.longBitsToDouble
+        (getBits (parsedArgs, Double.doubleToRawLongBits (Double.NaN)));
+    }
+
+    /**
+     * <p>Convenience method, gets the option result as a Java double array.
+     **/
+    public double[] getDoubleArray (ParsedArgs parsedArgs)
+    {
+      long[] bits = getBitsArray (parsedArgs);
+      double[] r = new double[bits.length];
+      for (int i=0; i<bits.length; i++) r[i] = Double.longBitsToDouble (bits[i]);
+      return r;
+    }
+
+    protected Double fromBits (long bits)
+    { return Double.longBitsToDouble (bits); }
+
+    protected long toBits (Double value)
+    { return Double.doubleToRawLongBits (value); }
+
+    /**
+     * <p>Parses the next token as a Double value.
+     *
+     * @see NumericUtil#scanDouble
+     **/
+    protected long parseBits (String valueStr)
+    {
+      long[] value = new long[1];
+      int error = NumericUtil.scanDouble (valueStr, value, 0);
+      if (error != NumericUtil.Ok)
+        throw badNumber (valueStr, error, "double");
+      return value[0];
+    }
+
+    int parseBits (String[] tokens, long[] bits, int start, int end)
+    {
+      if (!scansDirectly (DoubleOpt.class))
+        return super.parseBits (tokens, bits, start, end);
+      for (int i=start; i<end; i++)
+        if (NumericUtil.scanDouble (tokens[i], bits, i) != NumericUtil.Ok)
+          return i;
+      return end;
+    }
+  }
+
+  /**
+   * <p>A ByteSizeOpt: parses sizes in bytes, like <tt>512Mi</tt>,
+   * <tt>1.5G</tt> or <tt>64KiB</tt>.
+   *
+   * <p>By default, <tt>K</tt>, <tt>M</tt>, ... are decimal (SI)
+   * multipliers, and <tt>Ki</tt>, <tt>Mi</tt>, ... are binary ones:
+   * see {@link #computerUnits} to make them all binary.
+   *
+   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
+   * java.lang.Long; {@link #getLong} returns the primitive value.
+   *
+   * @see NumericUtil#scanByteSize
+   **/
+  public static class ByteSizeOpt extends PrimitiveOpt<Long> {
+
+    boolean computerUnits = false;
+
+    /**
+     * <p>Make a ByteSizeOpt with the given name.
+     **/
+    public ByteSizeOpt (OptSet _opts, String _name)
+    { super (_opts, _name, Long.class); metavar ("SIZE"); }
+
+    /* Covariant builder methods: for convenient building. */
+    public ByteSizeOpt defaultValue(Long v){super.defaultValue(v);return this;}
+    public ByteSizeOpt name (String name) { super.name (name); return this; }
+    public ByteSizeOpt shortName (char name){super.shortName(name);return this;}
+    public ByteSizeOpt positional(boolean v){super.positional(v);return this;}
+    public ByteSizeOpt required (boolean v) { super.required (v); return this; }
+    public ByteSizeOpt list (boolean v) { super.list (v); return this; }
+    public ByteSizeOpt metavar (String v) { super.metavar (v); return this; }
+    public ByteSizeOpt description(String v){super.description(v);return this;}
+
+    /**
+     * <p>If true, <tt>K</tt>, <tt>M</tt>, ... are binary multipliers
+     * (1024, 1048576, ...), as they often are for memory sizes.
+     *
+     * <p>If not specified, they are decimal (1000, 1000000, ...).
+     **/
+    public ByteSizeOpt computerUnits (boolean v)
+    { opts.checkNotFrozen (); computerUnits = v; return this; }
+
+    /**
+     * <p>Convenience method, gets the option result as a Java long.
+     *
+     * <p>Returns -1 if the value is not found.
+     **/
+    public long getLong (ParsedArgs parsedArgs)
+    { return getBits (parsedArgs, -1); }
+
+    /**
+     * <p>Convenience method, gets the option result as a Java long array.
+     **/
+    public long[] getLongArray (ParsedArgs parsedArgs)
+    { return getBitsArray (parsedArgs).clone (); }
+
+    protected Long fromBits (long bits) { return bits; }
+
+    protected long toBits (Long value) { return value; }
+
+    /**
+     * <p>Parse the next token as a size in bytes.
+     **/
+    protected long parseBits (String valueStr)
+    {
+      long[] value = new long[1];
+      int error = NumericUtil.scanByteSize (valueStr, computerUnits, value, 0);
+      if (error != NumericUtil.Ok)
+        throw badNumber (valueStr, error, "size");
+      return value[0];
+    }
+
+    int parseBits (String[] tokens, long[] bits, int start, int end)
+    {
+      if (!scansDirectly (ByteSizeOpt.class))
+        return super.parseBits (tokens, bits, start, end);
+      for (int i=start; i<end; i++)
+        if (NumericUtil.scanByteSize (tokens[i], computerUnits, bits, i)
+            != NumericUtil.Ok)
+          return i;
+      return end;
+    }
+  }
+
+  /**
+   * <p>A DurationOpt: parses durations, like <tt>250ms</tt>,
+   * <tt>1.5s</tt> or <tt>2h30m</tt>.
+   *
+   * <p>Values are kept as a whole number of the Opt's {@link #unit}
+   * (milliseconds, unless specified), which is also the unit of a
+   * number given without one.
+   *
+   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
+   * java.lang.Long; {@link #getLong} returns the primitive value.
+   *
+   * @see NumericUtil#scanDuration
+   **/
+  public static class DurationOpt extends PrimitiveOpt<Long> {
+
+    TimeUnit unit = TimeUnit.MILLISECONDS;
+
+    /**
+     * <p>Make a DurationOpt with the given name.
+     **/
+    public DurationOpt (OptSet _opts, String _name)
+    { super (_opts, _name, Long.class); metavar ("DURATION"); }
+
+    /* Covariant builder methods: for convenient building. */
+    public DurationOpt defaultValue(Long v){super.defaultValue(v);return this;}
+    public DurationOpt name (String name) { super.name (name); return this; }
+    public DurationOpt shortName(char name){super.shortName(name);return this;}
+    public DurationOpt positional(boolean v){super.positional(v);return this;}
+    public DurationOpt required (boolean v) { super.required (v); return this; }
+    public DurationOpt list (boolean v) { super.list (v); return this; }
+    public DurationOpt metavar (String v) { super.metavar (v); return this; }
+    public DurationOpt description(String v){super.description(v);return this;}
+
+    /**
+     * <p>Specifies the unit values are kept in, and that a number
+     * given without a unit is in.  Values are rounded to the nearest
+     * whole unit.
+     *
+     * <p>If not specified, the unit is milliseconds.
+     **/
+    public DurationOpt unit (TimeUnit v)
+    {
+      opts.checkNotFrozen ();
+      if (v == null) throw new OptCompileException ("Null unit for "+this);
+      unit = v;
+      return this;
+    }
+
+    /**
+     * <p>Fetch the unit values are kept in.
+     **/
+    public TimeUnit getUnit () { return unit; }
+
+    /**
+     * <p>Convenience method, gets the option result as a Java long,
+     * in the Opt's {@link #unit}.
+     *
+     * <p>Returns -1 if the value is not found.
+     **/
+    public long getLong (ParsedArgs parsedArgs)
+    { return getBits (parsedArgs, -1); }
+
+    /**
+     * <p>Convenience method, gets the option result as a Java long
+     * array, in the Opt's {@link #unit}.
+     **/
+    public long[] getLongArray (ParsedArgs parsedArgs)
+    { return getBitsArray (parsedArgs).clone (); }
+
+    protected Long fromBits (long bits) { return bits; }
+
+    protected long toBits (Long value) { return value; }
+
+    /**
+     * <p>Parse the next token as a duration.
+     **/
+    protected long parseBits (String valueStr)
+    {
+      long[] value = new long[1];
+      int error = NumericUtil.scanDuration (valueStr, unit, value, 0);
+      if (error != NumericUtil.Ok)
+        throw badNumber (valueStr, error, "duration");
+      return value[0];
+    }
+
+    int parseBits (String[] tokens, long[] bits, int start, int end)
+    {
+      if (!scansDirectly (DurationOpt.class))
+        return super.parseBits (tokens, bits, start, end);
+      for (int i=start; i<end; i++)
+        if (NumericUtil.scanDuration (tokens[i], unit, bits, i)
+            != NumericUtil.Ok)
+          return i;
+      return end;
+    }
+  }
+
+  /**
+   * <p>A Boolean option: parses boolean values.
+   *
+   * <p>A BooleanOpt expects a single argument that is parsed as
+   * "true" or "false".
+   *
+   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
+   * java.lang.Boolean.
+   *
+   * <p>If you want a flag (with no argument), use {@link FlagOpt}
+   *
+   * @see Cloptus.Opt
+   **/
+  public static class BooleanOpt extends Opt<Boolean> {
+
+    /**
+     * <p>Make a BooleanOpt with the given name.
+     **/
+    public BooleanOpt (OptSet _opts, String _name)
+    { super (_opts, _name, Boolean.class); metavar ("BOOLEAN"); }
+
+    /* Covariant builder methods: for convenient building. */
+    public BooleanOpt defaultValue(Boolean v)
+    {super.defaultValue(v);return this;}
+    public BooleanOpt name (String name) { super.name (name); return this; }
+    public BooleanOpt shortName (char name){super.shortName(name);return this;}
+    public BooleanOpt positional (boolean v){super.positional(v); return this;}
+    public BooleanOpt required (boolean v) { super.required (v); return this; }
+    public BooleanOpt list (boolean v) { super.list (v); return this; }
+    public BooleanOpt metavar (String v) { super.metavar (v); return this; }
+    public BooleanOpt description (String v){super.description(v);return this;}
+
+    /**
+     * <p>Convenience method, gets the option result as a Java boolean.
+     *
+     * <p>Returns false if the value is not found.
+     **/
+    public boolean getBoolean (ParsedArgs parsedArgs)
+    {
+      Boolean r = get (parsedArgs);
+      if (r == null) return false;
+      return r;
+    }
+
+    /**
+     * <p>Convenience method, gets the option result as a Java boolean array.
+     **/
+    public boolean[] getBooleanArray (ParsedArgs parsedArgs)
+    {
+      List<Boolean> list = getList (parsedArgs);
+      boolean[] r = new boolean[list.size ()];
+      int idx = 0;
+      for (boolean b : list) r[idx++] = b;
+      return r;
+    }
+
+    /**
+     * <p>Parses the next token as a boolean value.
+     *
+     * <p>If the first character (case insensitive) is '0' or 'f', the
+     * value is false.
+     *
+     * <p>If the first character is '1' or 't', the value is true.
+     **/
+    protected Boolean parseValue (String valueStr)
+    {
+      if (valueStr.length () == 0)
+        throw new OptParseException ("Bad value '' for option "+this
+                                     +": expected 'true' or 'false'.");
+
+      switch (valueStr.toLowerCase ().charAt (0))
+        {
+        case '0': case 'f': return false;
+        case '1': case 't': return true;
+        default:
+          throw new OptParseException ("Bad value '"+valueStr
+                                       +"' for option "+this
+                                       +": expected 'true' or 'false'.");
+        }
+    }
+  }
+
+  /**
+   * <p>An option flag.
+   *
+   * <p>No arguments, returns 'true' if specified, and 'false' if not
+   * specified.
+   *
+   * <p>If 'invert()' is called, will return 'false' if specified, and
+   * 'true' if not specified.
+   **/
+  public static class FlagOpt extends BooleanOpt {
+
+    /**
+     * <p>The value to return if specified.
+     **/
+    Boolean valueIfSet = true;
+
+    /**
+     * <p>Make a new FlagOpt with the given name.
+     **/
+    public FlagOpt (OptSet _opts, String _name)
+    { super (_opts, _name); metavar (null); defaultValue (false); }
+
+    /**
+     * <p>Invert this flag.
+     *
+     * <p>If called, this flag will return 'false' if specified, and
+     * 'true' if not specified, the inverse of the normal behavior.
+     **/
+    public FlagOpt invert ()
+    { defaultValue (true); valueIfSet = false; return this; }
+
+    /* Covariant builder methods: for convenient building. */
+    public FlagOpt defaultValue(Boolean v) {super.defaultValue(v);return this;}
+    public FlagOpt name (String name) { super.name (name); return this; }
+    public FlagOpt shortName (char name){super.shortName(name);return this;}
+    public FlagOpt positional (boolean v){super.positional(v); return this;}
+    public FlagOpt required (boolean v) { super.required (v); return this; }
+    public FlagOpt list (boolean v) { super.list (v); return this; }
+    public FlagOpt metavar (String v) { super.metavar (v); return this; }
+    public FlagOpt description (String v){super.description(v);return this;}
+
+    /**
+     * <p>Parses no tokens: just returns the default value.
+     **/
+    protected Boolean parseArg (OptReader in) { return valueIfSet; }
+
+    /**
+     * <p>Flags take no argument.
+     **/
+    protected boolean takesArg () { return false; }
+  }
+
+  /**
+   * <p>A help option.  Added by default to the OptSet object.
+   *
+   * <p>This is just a FlagOpt with a special type.
+   **/
+  public static class HelpOpt extends FlagOpt {
+
+    /**
+     * <p>Make a new HelpOpt with the given name.
+     **/
+    public HelpOpt (OptSet _opts, String _name) { super (_opts, _name); }
+
+    /* Covariant builder methods: for convenient building. */
+    public HelpOpt defaultValue(Boolean v) {super.defaultValue(v);return this;}
+    public HelpOpt name (String name) { super.name (name); return this; }
+    public HelpOpt shortName (char name){super.shortName(name);return this;}
+    public HelpOpt positional (boolean v){super.positional(v); return this;}
+    public HelpOpt required (boolean v) { super.required (v); return this; }
+    public HelpOpt list (boolean v) { super.list (v); return this; }
+    public HelpOpt metavar (String v) { super.metavar (v); return this; }
+    public HelpOpt description (String v){super.description(v);return this;}
+  }
+
+  /**
+   * <p>A Date option: allows specification of Dates.
+   *
+   * <p>A DateOpt expects a single argument that is parsed as a date,
+   * or a date and time.  ISO-8601 dates and times (like
+   * <tt>2007-12-25</tt>, <tt>2007-12-25T13:30:00Z</tt> or
+   * <tt>2007-12-25 13:30:00.250+01:00</tt>) are parsed directly.
+   * Anything else is tried against a list of {@link
+   * DateTimeFormatter}s: by default, other ISO-8601 forms, RFC-1123
+   * (<tt>Tue, 25 Dec 2007 13:30:00 GMT</tt>), and a few common
+   * forms like <tt>12/25/2007</tt> and <tt>Dec 25, 2007</tt>; see
+   * {@link #formats(String[])} to specify others.  The formatters are
+   * tried in order of how often each has matched so far.
+   *
+   * <p>Dates and times without a time zone are in the Opt's {@link
+   * #zone}.
+   *
+   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
+   * java.util.Date.  Values are kept as milliseconds since the epoch:
+   * {@link #getTime} and {@link #getTimeArray} return them without
+   * making any Dates.
+   **/
+  public static class DateOpt extends PrimitiveOpt<Date> {
+
+    ZoneId zone = ZoneId.systemDefault ();
+
+    // --- the fallback formatters, and how often each has matched.
+    // --- The counts are updated without locking, so they are only
+    // --- approximate; the order is replaced, never modified, so it
+    // --- is always a permutation of the formatters.
+    DateTimeFormatter[] formatters = DefaultFormatters;
+    int[] formatterHits = new int[DefaultFormatters.length];
+    volatile int[] formatterOrder = identity (DefaultFormatters.length);
+
+    static final DateTimeFormatter[] DefaultFormatters = {
+      DateTimeFormatter.ISO_DATE_TIME,
+      DateTimeFormatter.ISO_DATE,
+      DateTimeFormatter.RFC_1123_DATE_TIME,
+      compile ("M/d/uuuu[ H:mm[:ss]]", ResolverStyle.STRICT),
+      compile ("MMM d, uuuu[ H:mm[:ss]]", ResolverStyle.STRICT),
+      compile ("d MMM uuuu[ H:mm[:ss]]", ResolverStyle.STRICT),
+      compile ("uuuu/M/d[ H:mm[:ss]]", ResolverStyle.STRICT),
+    };
+
+    /**
+     * <p>Make a new DateOpt with the given name.
+     **/
+    public DateOpt (OptSet _opts, String _name)
+    { super (_opts, _name, Date.class); metavar ("DATE"); }
+
+    /* Covariant builder methods: for convenient building. */
+    public DateOpt defaultValue(Date v) {super.defaultValue(v);return this;}
+    public DateOpt name (String name) { super.name (name); return this; }
+    public DateOpt shortName (char name){super.shortName(name);return this;}
+    public DateOpt positional (boolean v){super.positional(v); return this;}
+    public DateOpt required (boolean v) { super.required (v); return this; }
+    public DateOpt list (boolean v) { super.list (v); return this; }
+    public DateOpt metavar (String v) { super.metavar (v); return this; }
+    public DateOpt description (String v){super.description(v);return this;}
+
+    /**
+     * <p>Specifies the time zone of dates and times given without
+     * one.
+     *
+     * <p>If not specified, the system default time zone.
+     **/
+    public DateOpt zone (ZoneId v)
+    {
+      opts.checkNotFrozen ();
+      if (v == null) throw new OptCompileException ("Null zone for "+this);
+      zone = v;
+      return this;
+    }
+
+    /**
+     * <p>Specifies the formats of the dates accepted, other than
+     * ISO-8601 ones, as {@link DateTimeFormatter} patterns.  Each is
+     * compiled once, here, and matched case-insensitively, with US
+     * month and day names.
+     *
+     * <p>If not specified, a few common formats are accepted: see
+     * {@link DateOpt}.
+     *
+     * @throws OptCompileException if a pattern is invalid.
+     **/
+    public DateOpt formats (String... patterns)
+    {
+      DateTimeFormatter[] v = new DateTimeFormatter[patterns.length];
+      for (int i=0; i<patterns.length; i++)
+        try {
+          v[i] = compile (patterns[i], ResolverStyle.SMART);
+        } catch (IllegalArgumentException ex) {
+          throw new OptCompileException
+            ("Bad date format '"+patterns[i]+"' for "+this, ex);
+        }
+      return formatters (v);
+    }
+
+    /**
+     * <p>Specifies the formatters to parse dates accepted, other than
+     * ISO-8601 ones.
+     *
+     * @see #formats(String[])
+     **/
+    public DateOpt formatters (DateTimeFormatter... v)
+    {
+      opts.checkNotFrozen ();
+      formatters = v.clone ();
+      formatterHits = new int[v.length];
+      formatterOrder = identity (v.length);
+      return this;
+    }
+
+    /**
+     * <p>Fetch the time zone of dates and times given without one.
+     **/
+    public ZoneId getZone () { return zone; }
+
+    private static DateTimeFormatter compile (String pattern,
+                                              ResolverStyle style)
+    {
+      return new DateTimeFormatterBuilder ().parseCaseInsensitive ()
+        .appendPattern (pattern).toFormatter (Locale.US)
+        .withResolverStyle (style);
+    }
+
+    private static int[] identity (int n)
+    {
+      int[] r = new int[n];
+      for (int i=0; i<n; i++) r[i] = i;
+      return r;
+    }
+
+    /**
+     * <p>Convenience method, gets the option result as milliseconds
+     * since the epoch.
+     *
+     * <p>Returns Long.MIN_VALUE if the value is not found.
+     **/
+    public long getTime (ParsedArgs parsedArgs)
+    { return getBits (parsedArgs, Long.MIN_VALUE); }
+
+    /**
+     * <p>Convenience method, gets the option results as milliseconds
+     * since the epoch.
+     **/
+    public long[] getTimeArray (ParsedArgs parsedArgs)
+    { return getBitsArray (parsedArgs).clone (); }
+
+    protected Date fromBits (long bits) { return new Date (bits); }
+
+    /**
+     * <p>Dates are mutable: each fetch gets its own.
+     **/
+    protected boolean keepsBoxedValues () { return false; }
+
+    protected long toBits (Date value) { return value.getTime (); }
+
+    /**
+     * <p>Parses the next token as a Date.
+     **/
+    protected long parseBits (String value)
+    {
+      long[] millis = new long[1];
+      if (!scan (value, millis, 0))
+        throw new OptParseException ("Bad value '"+value+"' for option "+this
+                                     +": expected date.");
+      return millis[0];
+    }
+
+    int parseBits (String[] tokens, long[] bits, int start, int end)
+    {
+      if (!scansDirectly (DateOpt.class))
+        return super.parseBits (tokens, bits, start, end);
+      for (int i=start; i<end; i++)
+        if (!scan (tokens[i], bits, i)) return i;
+      return end;
+    }
+
+    /**
+     * <p>Scans the given token as a date, storing it (as milliseconds
+     * since the epoch) into <tt>out[index]</tt>.
+     *
+     * @return false (having stored nothing) if it is not a date.
+     **/
+    boolean scan (String token, long[] out, int index)
+    {
+      if (scanIso (token, out, index)) return true;
+
+      int[] order = formatterOrder;
+      for (int i=0; i<order.length; i++)
+        if (scanFormatted (formatters[order[i]], token, out, index))
+          {
+            hit (order, i);
+            return true;
+          }
+      return false;
+    }
+
+    /**
+     * <p>Counts a match of the formatter at position <tt>i</tt> in the
+     * given order, moving it forward if it has now matched more often
+     * than the one before it.
+     **/
+    private void hit (int[] order, int i)
+    {
+      int hits = ++formatterHits[order[i]];
+      if (i > 0 && hits > formatterHits[order[i-1]])
+        {
+          int[] r = order.clone ();
+          r[i] = order[i-1];
+          r[i-1] = order[i];
+          formatterOrder = r;
+        }
+    }
+
+    /**
+     * <p>Scans the token with the given formatter.
+     **/
+    private boolean scanFormatted (DateTimeFormatter formatter, String token,
+                                   long[] out, int index)
+    {
+      // --- check the syntax first: that fails without an exception.
+      java.text.ParsePosition pos = new java.text.ParsePosition (0);
+      if (formatter.parseUnresolved (token, pos) == null
+          || pos.getIndex () != token.length ())
+        return false;
+
+      TemporalAccessor t;
+      try {
+        t = formatter.parse (token);
+      } catch (DateTimeException ex) {
+        return false;
+      }
+
+      if (t.isSupported (ChronoField.INSTANT_SECONDS))
+        {
+          out[index] = Instant.from (t).toEpochMilli ();
+          return true;
+        }
+
+      LocalDate date = t.query (TemporalQueries.localDate ());
+      if (date == null) return false;
+      LocalTime time = t.query (TemporalQueries.localTime ());
+      if (time == null) time = LocalTime.MIDNIGHT;
+
+      // --- a date with an offset or zone, but no time: keep it.
+      ZoneId z = t.query (TemporalQueries.zone ());
+      if (z == null) z = zone;
+      out[index] = ZonedDateTime.of (date, time, z).toInstant ()
+        .toEpochMilli ();
+      return true;
+    }
+
+    /**
+     * <p>Scans the token as an ISO-8601 date
+     * (<tt>yyyy-MM-dd</tt>), or date and time
+     * (<tt>yyyy-MM-ddTHH:mm[:ss[.fraction]][zone]</tt>, where the
+     * <tt>T</tt> may be a space, and the zone is <tt>Z</tt> or an
+     * offset like <tt>+01:00</tt>), straight from its characters.
+     *
+     * @return false (having stored nothing) if it is not one.
+     **/
+    private boolean scanIso (String token, long[] out, int index)
+    {
+      int len = token.length ();
+      if (len < 10 || token.charAt (4) != '-' || token.charAt (7) != '-')
+        return false;
+      int year = digits (token, 0, 4);
+      int month = digits (token, 5, 2);
+      int day = digits (token, 8, 2);
+      if (year < 0 || month < 1 || month > 12 || day < 1
+          || day > daysInMonth (year, month))
+        return false;
+
+      int hour = 0, minute = 0, second = 0, millis = 0;
+      int p = 10;
+      if (p < len)
+        {
+          char c = token.charAt (p);
+          if ((c != 'T' && c != 't' && c != ' ') || p+6 > len
+              || token.charAt (p+3) != ':')
+            return false;
+          hour = digits (token, p+1, 2);
+          minute = digits (token, p+4, 2);
+          p += 6;
+          if (p < len && token.charAt (p) == ':')
+            {
+              second = digits (token, p+1, 2);
+              p += 3;
+              if (p < len && (token.charAt (p) == '.' || token.charAt (p) == ','))
+                {
+                  // --- keep milliseconds: ignore finer digits.
+                  int start = ++p;
+                  for (; p<len && p-start<9; p++)
+                    {
+                      int d = token.charAt (p) - '0';
+                      if (d < 0 || d > 9) break;
+                      if (p-start < 3) millis = millis * 10 + d;
+                    }
+                  if (p == start) return false;
+                  for (int i=p-start; i<3; i++) millis *= 10;
+                }
+            }
+          if (hour < 0 || hour > 23 || minute < 0 || minute > 59
+              || second < 0 || second > 59)
+            return false;
+        }
+
+      long epochSecond = epochDay (year, month, day) * 86400L
+        + hour * 3600 + minute * 60 + second;
+
+      if (p == len)
+        {
+          // --- no zone: use the Opt's.
+          if (zone.getRules ().isFixedOffset ())
+            epochSecond -= zone.getRules ().getOffset (Instant.EPOCH)
+              .getTotalSeconds ();
+          else
+            epochSecond = LocalDateTime.of (year, month, day,
+                                            hour, minute, second)
+              .atZone (zone).toEpochSecond ();
+        }
+      else
+        {
+          char c = token.charAt (p);
+          if (c == 'Z' || c == 'z')
+            p++;
+          else if (c == '+' || c == '-')
+            {
+              // --- +HH, +HHmm or +HH:mm
+              int offsetHours = digits (token, p+1, 2);
+              int offsetMinutes = 0;
+              p += 3;
+              boolean colon = p < len && token.charAt (p) == ':';
+              if (colon) p++;
+              if (colon || p < len)
+                {
+                  offsetMinutes = digits (token, p, 2);
+                  p += 2;
+                }
+              if (offsetHours < 0 || offsetHours > 18
+                  || offsetMinutes < 0 || offsetMinutes > 59)
+                return false;
+              int offset = offsetHours * 3600 + offsetMinutes * 60;
+              epochSecond -= (c == '-') ? -offset : offset;
+            }
+          if (p != len) return false;
+        }
+
+      out[index] = epochSecond * 1000 + millis;
+      return true;
+    }
+
+    /**
+     * <p>Returns the value of the <tt>n</tt> decimal digits at
+     * <tt>token[start]</tt>, or -1 if they are not all digits.
+     **/
+    private static int digits (String token, int start, int n)
+    {
+      if (start + n > token.length ()) return -1;
+      int value = 0;
+      for (int i=start; i<start+n; i++)
+        {
+          int d = token.charAt (i) - '0';
+          if (d < 0 || d > 9) return -1;
+          value = value * 10 + d;
+        }
+      return value;
+    }
+
+    private static int daysInMonth (int year, int month)
+    {
+      if (month == 2)
+        return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))
+          ? 29 : 28;
+      return (month == 4 || month == 6 || month == 9 || month == 11)
+        ? 30 : 31;
+    }
+
+    /**
+     * <p>Returns the number of days from 1970-01-01 to the given
+     * (proleptic Gregorian) date.
+     **/
+    static long epochDay (int year, int month, int day)
+    {
+      // --- count years from March, so that leap days come last.
+      long y = (month <= 2) ? year - 1 : year;
+      long era = Math.floorDiv (y, 400);
+      long yearOfEra = y - era * 400;
+      int dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5
+        + day - 1;
+      long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+        + dayOfYear;
+      return era * 146097 + dayOfEra - 719468;
+    }
+  }
+
+  /**
+   * <p>This is a cute one: an enumeration option, parses values from
+   * a Java Enum object.
+   *
+   * <p>Expects a single argument that is parsed as one of the values
+   * from a java.lang.Enum type.  Names are matched
+   * case-insensitively, and may be abbreviated to any unique prefix
+   * (like long option names).  If the Enum has constants whose names
+   * differ only in case, those must be given exactly.
+   *
+   * <p>{@link #get(Cloptus.ParsedArgs)} returns an instance of the
+   * appropriate java.lang.Enum subtype.  Values are kept as ordinals:
+   * {@link #getEnumSet} collects a list option's values without
+   * boxing any.
+   **/
+  public static class EnumOpt<T extends Enum<T>> extends PrimitiveOpt<T> {
+
+    final T[] constants;
+
+    // --- the constants' names, case-folded.
+    final NameTrie<T> names;
+
+    // --- the constants whose names differ only in case, by exact
+    // --- name, or null if there are none: the trie cannot tell them
+    // --- apart.
+    final Map<String,T> caseClashes;
+
+    /**
+     * <p>Make a new EnumOpt with the given name and Enum type.
+     *
+     * @throws OptCompileException if the type is not an Enum.
+     **/
+    public EnumOpt (OptSet _opts, String _name, Class<T> enumType)
+    {
+      super (_opts, _name, elementType (enumType));
+      metavar ("ENUM"); // XXX metavar
+
+      constants = getArgType ().getEnumConstants ();
+      if (constants == null)
+        throw new OptCompileException ("Not an enum type: "+enumType);
+
+      names = new NameTrie<T> ();
+      Map<String,T> clashes = null;
+      for (T c : constants)
+        {
+          T existing = names.put (c.name (), c);
+          if (existing != null)
+            {
+              if (clashes == null) clashes = new HashMap<String,T> ();
+              clashes.put (existing.name (), existing);
+              clashes.put (c.name (), c);
+            }
+        }
+      caseClashes = clashes;
+    }
+
+    /**
+     * <p>Members of type <code>E[]</code> hand us the array type:
+     * the values are still of type <code>E</code>.
+     **/
+    @SuppressWarnings("unchecked")
+    static <T> Class<T> elementType (Class<T> type)
+    {
+      return type.isArray () ? (Class<T>)type.getComponentType () : type;
+    }
+
+    /* Covariant builder methods: for convenient building. */
+    public EnumOpt<T> defaultValue(T v) {super.defaultValue(v);return this;}
+    public EnumOpt<T> name (String name) { super.name (name); return this; }
+    public EnumOpt<T> shortName (char name){super.shortName(name);return this;}
+    public EnumOpt<T> positional (boolean v){super.positional(v); return this;}
+    public EnumOpt<T> required (boolean v) { super.required (v); return this; }
+    public EnumOpt<T> list (boolean v) { super.list (v); return this; }
+    public EnumOpt<T> metavar (String v) { super.metavar (v); return this; }
+    public EnumOpt<T> description (String v){super.description(v);return this;}
+
+    /**
+     * <p>Convenience method, gets the option results as a set.  If
+     * the option was not specified, the set holds the default value
+     * (if any).
+     **/
+    public EnumSet<T> getEnumSet (ParsedArgs parsedArgs)
+    {
+      EnumSet<T> r = EnumSet.noneOf (argType);
+      for (long bits : getBitsArray (parsedArgs)) r.add (constants[(int)bits]);
+      return r;
+    }
+
+    protected T fromBits (long bits) { return constants[(int)bits]; }
+
+    protected long toBits (T value) { return value.ordinal (); }
+
+    /**
+     * <p>Parse the next token as an Enum value.
+     **/
+    protected long parseBits (String value)
+    {
+      Object match = lookup (value);
+      if (match == NameTrie.Ambiguous)
+        throw new OptParseException ("Ambiguous value '"+value+"' for option "
+                                     +this+": could be any of "
+                                     +getCandidates (value));
+      if (match == null)
+        {
+          List<String> expected = new ArrayList<String> ();
+          for (T c : constants) expected.add (c.name ());
+          throw new OptParseException ("Bad value '"+value+"' for option "
+                                       +this+": expected one of "
+                                       +expected+".");
+        }
+      return ((Enum<?>)match).ordinal ();
+    }
+
+    int parseBits (String[] tokens, long[] bits, int start, int end)
+    {
+      if (!scansDirectly (EnumOpt.class))
+        return super.parseBits (tokens, bits, start, end);
+      for (int i=start; i<end; i++)
+        {
+          Object match = lookup (tokens[i]);
+          if (match == null || match == NameTrie.Ambiguous) return i;
+          bits[i] = ((Enum<?>)match).ordinal ();
+        }
+      return end;
+    }
+
+    /**
+     * <p>Looks up the constant named by the given token: an exact
+     * name, or else a case-insensitive one, or else a unique prefix.
+     *
+     * @return the constant, null if there is none, or {@link
+     * NameTrie#Ambiguous}.
+     **/
+    Object lookup (String token)
+    {
+      if (caseClashes == null)
+        return names.lookup (token, 0, token.length (), true);
+
+      T exact = caseClashes.get (token);
+      if (exact != null) return exact;
+      Object match = names.lookup (token, 0, token.length (), true);
+      if (caseClashes.containsValue (match)) return NameTrie.Ambiguous;
+      return match;
+    }
+
+    /**
+     * <p>Returns the names of the constants the given token could be
+     * a prefix of, for use in error messages.
+     **/
+    List<String> getCandidates (String token)
+    {
+      List<String> r = names.getCandidates (token, 0, token.length ());
+      if (caseClashes != null)
+        for (String name : caseClashes.keySet ())
+          if (name.regionMatches (true, 0, token, 0, token.length ())
+              && !r.contains (name))
+            r.add (name);
+      return r;
+    }
+  }
+
+  /**
+   * <p>A File option: parses filenames, and returns Files.
+   *
+   * <p>A FileOpt expects a single argument that is interpreted as a
+   * filename on the host operating system.
+   *
+   * <p>Accepts filename arguments using either slash convention, and
+   * converts them into system-standard conventions.
+   *
+   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
+   * java.io.File
+   *
+   * <p>Provides a rich API to fetch the underlying file as a Stirng
+   * pathname, File, Reader, Writer, InputStream, OutputStream, String
+   * content, or byte[] content.
+   *
+   * <p>All Writers and Streams returned are buffered.
+   **/
+  public static class FileOpt extends Opt<File> {
+
+    /**
+     * <p>Make a FileOpt with the given name.
+     **/
+    public FileOpt (OptSet _opts, String _name)
+    { super (_opts, _name, File.class); metavar ("FILE"); }
+
+    /* Covariant builder methods: for convenient building. */
+    public FileOpt defaultValue(File v) {super.defaultValue(v);return this;}
+    public FileOpt name (String name) { super.name (name); return this; }
+    public FileOpt shortName (char name){super.shortName(name);return this;}
+    public FileOpt positional (boolean v){super.positional(v); return this;}
+    public FileOpt required (boolean v) { super.required (v); return this; }
+    public FileOpt list (boolean v) { super.list (v); return this; }
+    public FileOpt metavar (String v) { super.metavar (v); return this; }
+    public FileOpt description (String v){super.description(v);return this;}
+
+    /**
+     * <p>Fetches the filename of the specified file, normalized to
+     * host OS conventions.
+     *
+     * <p>In particular, all slashes are normalized to local
+     * conventions.
+     **/
+    public String getFileName (ParsedArgs parsedArgs)
+    { return get (parsedArgs).getPath (); }
+
+    /**
+     * <p>Fetches the list of filenames specified.
+     *
+     * @see #getFileName(Cloptus.ParsedArgs)
+     **/
+    public List<String> getFileNameList (ParsedArgs parsedArgs)
+    {
+      List<String> r = new ArrayList<String> ();
+      for (File f : getList (parsedArgs)) r.add (f.getPath ());
+      return r;
+    }
+
+    /**
+     * <p>Fetch the list of filenames specified as a Java String array.
+     *
+     * @see #getFileName(Cloptus.ParsedArgs)
+     **/
+    public String[] getFileNameArray (ParsedArgs parsedArgs)
+    { return getFileNameList (parsedArgs).toArray (new String[0]); }
+
+    /**
+     * <p>Fetch a buffered InputStream on the contents of the specified file.
+     **/
+    public InputStream getInputStream (ParsedArgs parsedArgs)
+      throws FileNotFoundException
+    { return new BufferedInputStream (new FileInputStream (get(parsedArgs))); }
+
+    /**
+     * <p>Fetch a buffered OutputStream to write to the specified file.
+     **/
+    public OutputStream getOutputStream (ParsedArgs parsedArgs)
+      throws FileNotFoundException
+    {return new BufferedOutputStream (new FileOutputStream (get(parsedArgs)));}
+
+    /**
+     * <p>Fetch a buffered Reader on the contents of the specified file.
+     *
+     * <p>Uses the default system character set.
+     **/
+    public Reader getReader (ParsedArgs parsedArgs)
+      throws FileNotFoundException
+    { return new InputStreamReader (getInputStream (parsedArgs)); }
+
+    /**
+     * <p>Fetch a buffered Reader on the contents of the specified
+     * file, using the named character set.
+     **/
+    public Reader getReader (ParsedArgs parsedArgs, String charsetName)
+      throws FileNotFoundException, UnsupportedEncodingException
+    { return new InputStreamReader (getInputStream (parsedArgs),charsetName); }
+
+    /**
+     * <p>Fetch a buffered Writer to write to the specified file.
+     **/
+    public Writer getWriter (ParsedArgs parsedArgs)
+      throws FileNotFoundException
+    { return new OutputStreamWriter (getOutputStream (parsedArgs)); }
+
+    /**
+     * <p>Fetch a buffered Writer to write to the specified file,
+     * using the named character set.
+     **/
+    public Writer getWriter (ParsedArgs parsedArgs, String charsetName)
+      throws FileNotFoundException, UnsupportedEncodingException
+    {return new OutputStreamWriter (getOutputStream (parsedArgs),charsetName);}
+
+    /**
+     * <p>Fetch the raw contents of the specified file as an array of
+     * bytes.
+     **/
+    public byte[] getByteContent (ParsedArgs parsedArgs) throws IOException
+    { return IoLib.readFully (getInputStream (parsedArgs)); }
+
+    /**
+     * <p>Fetch the text content of the specified file as a String.
+     *
+     * <p>Uses the default system character set.
+     **/
+    public String getStringContent (ParsedArgs parsedArgs) throws IOException
+    { return IoLib.readFully (getReader (parsedArgs)); }
+
+    /**
+     * <p>Fetch the text content of the specified file as a String,
+     * using the named character set.
+     **/
+    public String getStringContent (ParsedArgs parsedArgs, String charsetName)
+      throws IOException, UnsupportedEncodingException
+    { return IoLib.readFully (getReader (parsedArgs, charsetName)); }
+
+    /**
+     * <p>Parses the next token as an abstract filename.
+     *
+     * <p>Normalizes slashes to environment-standard slashes.
+     **/
+    protected File parseValue (String value)
+    {
+
+      // --- normalize newlines.
+      value = value
+        .replace ('/', File.separatorChar)
+        .replace ('\\', File.separatorChar);;
+
+      // --- make a java.io.File object
+      return new File (value);
+    }
+  }
+
+  /**
+   * <p>An URI option: parses URIs.
+   *
+   * <p>An UriOpt expects a single argument that is interpreted as a
+   * Uniform Resource Identifier.  If the argument appears to be a
+   * filename, it is converted into the equivalent <tt>file:</tt> URI.
+   *
+   * <p>Accepts URIs with either slash convention, and normalizes them
+   * into forward slashes (<tt>/</tt>).
+   *
+   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
+   * java.net.URI
+   *
+   * <p>Provides a rich API to fetch the underlying resource as a
+   * String URI, URL, URLConnection, Reader, InputStream, byte[]
+   * content or String content.
+   *
+   * <p>All Readers and Streams are buffered.
+   **/
+  public static class UriOpt extends Opt<URI> {
+
+    /**
+     *
+     **/
+    public UriOpt (OptSet _opts, String _name)
+    { super (_opts, _name, URI.class); metavar ("URI"); }
+
+    /* Covariant builder methods: for convenient building. */
+    public UriOpt defaultValue(URI v) {super.defaultValue(v);return this;}
+    public UriOpt name (String name) { super.name (name); return this; }
+    public UriOpt shortName (char name){super.shortName(name);return this;}
+    public UriOpt positional (boolean v){super.positional(v); return this;}
+    public UriOpt required (boolean v) { super.required (v); return this; }
+    public UriOpt list (boolean v) { super.list (v); return this; }
+    public UriOpt metavar (String v) { super.metavar (v); return this; }
+    public UriOpt description (String v){super.description(v);return this;}
+
+    /**
+     * <p>Returns the String representation of an URI.
+     *
+     * <p>This may contain unquoted characters making it unsuitable
+     * for using as a true URI, but is more pleasant to look at.
+     *
+     * <p>If the value is being {@linkplain OptSet#lazyConversion
+     * converted lazily} and has not been converted yet, filenames
+     * are only normalized: no URI object is built for them.  They are
+     * then not checked to be valid URIs, until the URI itself is asked
+     * for.  That is not done if a subtype overrides {@link
+     * #parseValue(String)}: the token is then always converted by it.
+     *
+     * @see URI#toString()
      **/
-    public Opt<A> defaultValue (A v) { defaultValue = v; return this; }
+    public String getString (ParsedArgs parsedArgs)
+    {
+      String[] tokens = parsedArgs.getUnconvertedTokens (this);
+      if (tokens == null || tokens.length > 1 || !convertsDirectly ())
+        return get (parsedArgs).toString ();
+      return getString (tokens[0], null);
+    }
 
     /**
-     * <p>Adds an additional (long) name for this opt.
+     * <p>Returns the String representations of all the specified
+     * URIs.
      *
-     * <p>If not specified, this option will have only the (canonical)
-     * name passed in the constructor.  All Opts have at least one
-     * long name.
+     * <p>Like {@link #getString(Cloptus.ParsedArgs)}, does not build
+     * URI objects for filenames not yet converted.
+     **/
+    public List<String> getStringList (ParsedArgs parsedArgs)
+    {
+      String[] tokens = parsedArgs.getUnconvertedTokens (this);
+      List<String> r;
+      if (tokens == null || !convertsDirectly ())
+        {
+          List<URI> uris = getList (parsedArgs);
+          r = new ArrayList<String> (uris.size ());
+          for (URI uri : uris) r.add (uri.toString ());
+        }
+      else
+        {
+          StringBuilder buf = new StringBuilder ();
+          r = new ArrayList<String> (tokens.length);
+          for (String token : tokens) r.add (getString (token, buf));
+        }
+      return r;
+    }
+
+    /**
+     * <p>Returns the String representation of an URI.
      *
-     * <p>Long-named options are specified using the <tt>--LONGNAME
-     * ARG</tt> syntax at the command line.
+     * <p>This String representation contains only ASCII characters
+     * (all non-ASCII characters are quoted).
      *
-     * @see Cloptus.OptTarget#name()
+     * @see URI#toASCIIString()
+     **/
+    public String getASCIIString (ParsedArgs parsedArgs)
+    { return get (parsedArgs).toASCIIString (); }
+
+    /**
+     * <p>Returns this URI object as an URL.
+     *
+     * @throws MalformedURLException under various circumstances (see
+     * {@link URI#toURL()}), but mostly if the URI uses a scheme
+     * unsupported by the Java runtime.
+     **/
+    public URL getURL (ParsedArgs parsedArgs) throws MalformedURLException
+    {
+      // XXX resolve relative to CWD
+      return get (parsedArgs).toURL ();
+    }
+
+    /**
+     * <p>Return a new URLConnection for this URL.
+     *
+     * @throws MalformedURLException under various circumstances (see
+     * {@link URI#toURL()}), but mostly if the URI uses a scheme
+     * unsupported by the Java runtime.
+     *
+     * @throws IOException if the URLConnection cannot be established.
+     **/
+    public URLConnection getURLConnection (ParsedArgs parsedArgs)
+      throws MalformedURLException, IOException
+    { return getURL (parsedArgs).openConnection (); }
+
+    /**
+     * <p>Return a new buffered Reader on the contents of the
+     * specified URI.
+     *
+     * <p>Uses the default system character set.
+     *
+     * @throws MalformedURLException under various circumstances (see
+     * {@link URI#toURL()}), but mostly if the URI uses a scheme
+     * unsupported by the Java runtime.
+     *
+     * @throws IOException if the Reader cannot be created
+     **/
+    public Reader getReader (ParsedArgs parsedArgs)
+      throws MalformedURLException, IOException
+    { return new InputStreamReader (getInputStream (parsedArgs)); }
+
+    /**
+     * <p>Return a new buffered Reader on the contents of the
+     * specified URI, using the named character set.
+     *
+     * @throws MalformedURLException under various circumstances (see
+     * {@link URI#toURL()}), but mostly if the URI uses a scheme
+     * unsupported by the Java runtime.
+     *
+     * @throws IOException if the Reader cannot be created
+     *
+     * @throws UnsupportedEncodingException if the named character set
+     * is not supported.
+     **/
+    public Reader getReader (ParsedArgs parsedArgs, String charsetName)
+      throws MalformedURLException, IOException, UnsupportedEncodingException
+    { return new InputStreamReader (getInputStream (parsedArgs), charsetName);}
+
+    /**
+     * <p>Return a new buffered InputStream on the contents of the
+     * specified URI.
+     *
+     * @throws MalformedURLException under various circumstances (see
+     * {@link URI#toURL()}), but mostly if the URI uses a scheme
+     * unsupported by the Java runtime.
+     *
+     * @throws IOException if the InputStream cannot be created
+     **/
+    public InputStream getInputStream (ParsedArgs parsedArgs)
+      throws MalformedURLException, IOException
+    { return new BufferedInputStream (getURL (parsedArgs).openStream ()); }
+
+    /**
+     * <p>Fetch the raw contents of the specified URI as an array of
+     * bytes.
+     *
+     * @throws MalformedURLException under various circumstances (see
+     * {@link URI#toURL()}), but mostly if the URI uses a scheme
+     * unsupported by the Java runtime.
+     *
+     * @throws IOException if the the content of the resource cannot
+     * be read.
      **/
-    public Opt<A> name (String name) { longNames.add (name); return this; }
+    public byte[] getByteContent (ParsedArgs parsedArgs)
+      throws MalformedURLException, IOException
+    { return IoLib.readFully (getInputStream (parsedArgs)); }
+
+    /**
+     * <p>Fetch the content of the specified URI as a String.
+     *
+     * <p>Uses the system default character set.
+     *
+     * @throws MalformedURLException under various circumstances (see
+     * {@link URI#toURL()}), but mostly if the URI uses a scheme
+     * unsupported by the Java runtime.
+     *
+     * @throws IOException if the the content of the resource cannot
+     * be read.
+     **/
+    public String getStringContent (ParsedArgs parsedArgs)
+      throws MalformedURLException, IOException
+    { return IoLib.readFully (getReader (parsedArgs)); }
+
+    /**
+     * <p>Fetch the content of the specified URI as a String, using
+     * the named character set.
+     *
+     * @throws MalformedURLException under various circumstances (see
+     * {@link URI#toURL()}), but mostly if the URI uses a scheme
+     * unsupported by the Java runtime.
+     *
+     * @throws IOException if the the content of the resource cannot
+     * be read.
+     *
+     * @throws UnsupportedEncodingException if the named character set
+     * is not supported.
+     **/
+    public String getStringContent (ParsedArgs parsedArgs, String charsetName)
+      throws MalformedURLException, IOException, UnsupportedEncodingException
+    { return IoLib.readFully (getReader (parsedArgs, charsetName)); }
+
+    /**
+     * <p>Parses the next token as an URI
+     *
+     * <p>Deals with filenames, converts them into file: URIs.
+     **/
+    protected URI parseValue (String value)
+    { return toURI (normalize (value, classify (value), null)); }
+
+    /**
+     * <p>Returns true unless a subtype overrides {@link
+     * #parseValue(String)}: if it does, every conversion has to go
+     * through it.
+     **/
+    private boolean convertsDirectly ()
+    { return ParseValueDeclarer.get (getClass ()) == UriOpt.class; }
+
+    private static final MethodDeclarer ParseValueDeclarer =
+      new MethodDeclarer ("parseValue", String.class);
+
+    /**
+     * <p>Converts <tt>tokens[start..end)</tt>, normalizing them all
+     * in the same buffer.
+     **/
+    int parseValues (String[] tokens, Object[] values, int start, int end)
+    {
+      if (!convertsDirectly ())
+        return super.parseValues (tokens, values, start, end);
+      StringBuilder buf = new StringBuilder ();
+      for (int i=start; i<end; i++)
+        {
+          String value = normalize (tokens[i], classify (tokens[i]), buf);
+          try {
+            values[i] = new URI (value);
+          } catch (URISyntaxException ex) {
+            return i;
+          }
+        }
+      return end;
+    }
+
+    /**
+     * <p>Returns the String representation of the URI the given token
+     * stands for, only building the URI if it has a scheme.
+     **/
+    String getString (String token, StringBuilder buf)
+    {
+      int kind = classify (token);
+      String value = normalize (token, kind, buf);
+      if (kind == SchemeUri) toURI (value);
+      return value;
+    }
+
+    /**
+     * <p>Makes a new URI from a normalized token.
+     **/
+    URI toURI (String value)
+    {
+      try {
+        return new URI (value);
+      } catch (URISyntaxException ex) {
+        throw new OptParseException ("Bad value '"+value+"' for option "+this
+                                     +": expected URI", ex);
+      }
+    }
+
+    // ---- Scanning --------------------------------------------------------
+
+    // --- the kinds of token, as told apart by classify:
+    // ---   RelativePath - no scheme: a relative URI, or a filename
+    // ---   DrivePath    - a Win32 filename with a drive letter, 'C:\'
+    // ---   UncPath      - a Win32 UNC filename, '\\host\share'
+    // ---   SchemeUri    - an URI with a scheme, 'http:'
+    static final int RelativePath = 0;
+    static final int DrivePath = 1;
+    static final int UncPath = 2;
+    static final int SchemeUri = 3;
+
+    /**
+     * <p>Tells what kind of URI the given token is, looking no further
+     * than its scheme.
+     *
+     * <p>This behavior matches what's found in Firefox/IE: a drive
+     * letter is not taken for a one-letter scheme.
+     **/
+    static int classify (String token)
+    {
+      int length = token.length ();
+      if (length < 2) return RelativePath;
+      char c0 = token.charAt (0);
+      char c1 = token.charAt (1);
+
+      // --- Win32 drive letter specification.
+      if (c1 == ':' && isAlpha (c0)
+          && length > 2 && isSlash (token.charAt (2)))
+        return DrivePath;
+
+      // --- Win32 UNC
+      if (isSlash (c0) && isSlash (c1)) return UncPath;
+
+      // --- scheme = alpha *( alpha | digit | "+" | "-" | "." ) ":"
+      if (!isAlpha (c0)) return RelativePath;
+      for (int i=1; i<length; i++)
+        {
+          char c = token.charAt (i);
+          if (c == ':') return SchemeUri;
+          if (!(isAlpha (c) || (c >= '0' && c <= '9')
+                || c == '+' || c == '-' || c == '.'))
+            return RelativePath;
+        }
+      return RelativePath;
+    }
+
+    /**
+     * <p>Returns the given token with all its backslashes turned into
+     * forward slashes, and filenames made into absolute
+     * <tt>file:</tt> URIs.
+     *
+     * <p>The token itself is returned if there is nothing to change.
+     * Otherwise the result is built in <tt>buf</tt>, if not null, so a
+     * caller normalizing many tokens need only allocate the Strings.
+     **/
+    static String normalize (String token, int kind, StringBuilder buf)
+    {
+      // --- prepend 'file://' - for file: URI
+      // ---                /  - for absolute URI
+      boolean file = (kind == DrivePath || kind == UncPath);
+      int slash = token.indexOf ('\\');
+      if (slash < 0 && !file) return token;
+
+      if (buf == null) buf = new StringBuilder (token.length () + 8);
+      else buf.setLength (0);
+      if (file) buf.append ("file:///");
+      if (slash < 0) return buf.append (token).toString ();
+
+      buf.append (token, 0, slash);
+      for (int i=slash, length=token.length (); i<length; i++)
+        {
+          char c = token.charAt (i);
+          buf.append ((c == '\\') ? '/' : c);
+        }
+      return buf.toString ();
+    }
+
+    private static boolean isAlpha (char c)
+    { return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'); }
+
+    private static boolean isSlash (char c) { return c == '/' || c == '\\'; }
+  }
+
+  // -------------------------------------------------------------------------
+  // ---- ParsedArgs ---------------------------------------------------------
+  // -------------------------------------------------------------------------
+
+  /**
+   * <p>A list of parsed options.  This is the result of ramming a
+   * String[] of arguments into a call to {@link OptSet#run(String[])}
+   * or {@link OptSet#parse(String[])}.
+   *
+   * <p>Various APIs can be used to fetch the results of parsing the
+   * arguments.
+   *
+   * <p>{@link #getParsedArgs(Cloptus.Opt)} will fetch all of the
+   * parsed options in the order that they were specified.  This is
+   * handy for implementing complex programs like the UNIX command
+   * 'find'.
+   *
+   * <p>Mostly, however, the typed getters on {@link Cloptus.Opt}
+   * should be used.
+   *
+   * <p>A ParsedArgs returned by {@link OptSet#parse(String[])} is an
+   * immutable snapshot.  Once it has been handed to another thread
+   * (by any means, even a data race), any number of threads may read
+   * it at once, without locking.  The value getters never modify it,
+   * and, once the values are converted, never allocate (getters
+   * returning arrays return copies).  Values converted {@linkplain
+   * OptSet#lazyConversion lazily} are remembered in immutable
+   * per-option slots, so threads racing to convert them at worst
+   * convert them twice.
+   *
+   * <p>A ParsedArgs returned by {@link
+   * CompiledOptSet#parse(ParseContext,String[])} is instead owned by
+   * its context, and only valid until the context is parsed into
+   * again.
+   *
+   * @see Cloptus.OptSet
+   * @see Cloptus.Opt
+   * @see Cloptus.OptSet#run(String[])
+   * @see Cloptus.OptSet#parse(String[])
+   **/
+  public static class ParsedArgs implements Iterable<ParsedArg> {
+
+    final OptSet opts;
+    final ParseContext ctx;
+    final Set<Opt<?>> involvedOpts;
 
     /**
-     * <p>Adds a short name for this opt.
-     *
-     * <p>If not specified, the option will have no short names.
-     *
-     * <p>Short-named options are specified using <tt>-X ARG</tt>
-     * syntax at the command line, and can be multiply specified like
-     * this: <tt>-XYZ ARG_X ARG_Y ARG_Z</tt>
-     *
-     * @see Cloptus.OptTarget#shortName()
+     * <p>Makes an empty ParsedArgs for the given (frozen) OptSet and
+     * arguments.
      **/
-    public Opt<A> shortName (char name) { shortNames.add (name); return this; }
+    public ParsedArgs (OptSet _opts, String[] _args)
+    {
+      opts = _opts;
+      ctx = new ParseContext (_opts.freeze (), this, _args.length, false);
+      ctx.reset (_args);
+      involvedOpts = new InvolvedOpts ();
+    }
 
     /**
-     * <p>Specifies whether this opt can be specified with no name
-     * (i.e. - positionally)
-     *
-     * <p>If not specified, you can't specify this option without a name.
-     *
-     * @see Cloptus.OptTarget#positional()
+     * <p>Makes a ParsedArgs reading the results in the given
+     * ParseContext.
      **/
-    public Opt<A> positional (boolean v) { positional = v; return this; }
+    ParsedArgs (ParseContext _ctx)
+    {
+      opts = _ctx.parser.opts;
+      ctx = _ctx;
+      involvedOpts = new InvolvedOpts ();
+    }
 
     /**
-     * <p>If true, specifies that this option is required: an error
-     * will be raised if option parsing completes and this option is
-     * not specified.
+     * <p>Converts every argument that has not been converted yet,
+     * reporting the first (in command line order) that cannot be.
      *
-     * <p>If not specified, the option is optional.
+     * <p>Only useful with {@linkplain OptSet#lazyConversion lazy
+     * conversion}, where a bad argument is otherwise only reported
+     * when its value is first asked for.  Otherwise, does nothing.
      *
-     * @see Cloptus.OptTarget#required()
+     * @throws OptParseException if an argument cannot be converted
      **/
-    public Opt<A> required (boolean v) { required = v; return this; }
+    public void validateAll () { ctx.convertAll (); }
+
+    // ----------------------------------------------------------------------
 
     /**
-     * <p>If true, specifies that this option is a <em>list</em>: this
-     * means that you can specify this option more than once, and the
-     * result of parsing the option will be a Collection or array.
      *
-     * <p>If not specified, the option is a singleton: an error will
-     * be raised if you specify the option more than once.
-     *
-     * <p>When using {@link OptTarget}, Collection and array-typed
-     * members will automatically be list Opts.
      **/
-    public Opt<A> list (boolean v) { list = v; return this; }
+    public void populateMembers (Object targetObj)
+    {for (Opt<?> opt : opts.getOpts ()) opt.populateMember (targetObj, this);}
+
+    // ----------------------------------------------------------------------
 
     /**
-     * <p>Specifies the <em>metavar</em> to use in help text for this
-     * option.  Usage information for an option looks like <tt>--name
-     * METAVAR</tt>.
-     *
-     * <p>The metavar should describe the valid values for the
-     * argument, using a single word.
-     *
-     * <p>If not specified, the metavar is derived from the type of
-     * the option use.  For example, a StringOpt has the metavar
-     * STRING.  A FileOpt has the metavar FILE.
-     *
-     * @see Cloptus.OptTarget#metavar()
+     * Iterate over the result of {@link #getParsedArgs()}.
      **/
-    public Opt<A> metavar (String v) { metavar = v; return this; }
+    public Iterator<ParsedArg> iterator () { return getParsedArgs ().iterator (); }
 
     /**
-     * <p>Specifies the help text associated with this option.  This
-     * text is printed if the user specifies the <tt>--help/-h/-?</tt>
-     * option at the command line.
-     *
-     * <p>If not specified, this option has no help text.
-     *
-     * @see Cloptus.OptTarget#description()
+     * Retrieve the parsed args specified by the user.
      **/
-    public Opt<A> description (String v) { description = v; return this; }
+    public List<ParsedArg> getParsedArgs ()
+    {
+      List<ParsedArg> r = new ArrayList<ParsedArg> (ctx.eventCount);
+      for (int e=0; e<ctx.eventCount; e++) r.add (ctx.makeParsedArg (e));
+      return r;
+    }
 
-    // ---- Getters ---------------------------------------------------------
+//     /**
+//      * Retrieve the parsed args specified by the user, followed by
+//      * synthesized parsed args for unspecified options with default
+//      * values.
+//      **/
+//     public List<ParsedArg> getParsedArgsWithDefaults ()
+//     {
+//       // XXX should we cache this??
+//       List<ParsedArg> r = new ArrayList<ParsedArg> ();
 
-    /**
-     * <p>Gets the principle name of this opt (used in help, as well
-     * as in APIs to fetch the opt reflectively)
-     *
-     * <p>This is the canonical name passed in the constructor.
-     **/
-    public String getName () { return name; }
+//       // --- add all the regular parsed args.
+//       r.addAll (parsedArgs);
 
-    /**
-     * Returns the Class object representing the arg type of this Opt.
-     **/
-    public Class<A> getArgType () { return argType; }
+//       // --- figure out the unspecified args with default values, add them too.
+//       for (Opt<?> opt : opts.getOpts ())
+//         if (getValues (opt, opt.getArgType (), null).size () == 0
+//             && opt.defaultValue != null)
+//           r.add (new ParsedArg (opt, opt.getName (), opt.defaultValue, true));
 
-    /**
-     * <p>Returns the specified default value for this argument.
-     **/
-    public A getDefaultValue () { return defaultValue; }
+//       return r;
+//     }
 
     /**
-     * <p>Returns the list of long names for this argument.  This
-     * includes the canonical name.
+     * <p>Retrieve the set of Opts that have some arg specified in this
+     * ParsedArgs set, in definition order.
+     *
+     * <p>The set is a read-only view, backed by a bitset: membership
+     * tests are O(1).
      **/
-    public List<java.lang.String> getLongNames () { return longNames; }
+    public Set<Opt<?>> getInvolvedOpts () { return involvedOpts; }
 
     /**
-     * <p>Returns the list of short names for this argument.
+     * <p>The set of Opts that have some arg specified.
      **/
-    public List<java.lang.Character> getShortNames () { return shortNames; }
+    private class InvolvedOpts extends AbstractSet<Opt<?>> {
+      public int size () { return ctx.seenCount; }
 
-    /**
-     * <p>Returns true if this option can be specified without a name.
-     * There can only be one positional option.
-     **/
-    public boolean isPositional () { return positional; }
+      public boolean contains (Object o)
+      { return (o instanceof Opt) && isSpecified ((Opt<?>)o); }
+
+      public Iterator<Opt<?>> iterator ()
+      {
+        return new Iterator<Opt<?>> () {
+          int next = ctx.nextSeen (0);
+          public boolean hasNext () { return next != -1; }
+          public Opt<?> next ()
+          {
+            if (next == -1) throw new NoSuchElementException ();
+            Opt<?> r = ctx.parser.optsByOrdinal[next];
+            next = ctx.nextSeen (next + 1);
+            return r;
+          }
+          public void remove () { throw new UnsupportedOperationException (); }
+        };
+      }
+    }
 
     /**
-     * <p>Returns true if this option is required.  A parse exception is
-     * raised if it is missing.
+     * <p>Returns true if the given Opt was specified at least once.
      **/
-    public boolean isRequired () { return required; }
+    public boolean isSpecified (Opt<?> opt)
+    {
+      if (opt.opts != opts) return false;
+      int ordinal = opt.ordinal;
+      return (ctx.seen[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
 
     /**
-     * <p>Returns true if this option may be specified more than once.
+     * <p>Returns the number of times the given Opt was specified.
      **/
-    public boolean isList () { return list; }
+    public int getCount (Opt<?> opt) { return ctx.getCount (opt); }
 
     /**
-     * <p>Return the name of the metavariable to use in usage strings.
-     * If 'null', this option takes no argument.
+     * <p>Retrieve the parsed args specified for the given Opt.
      **/
-    public String getMetavar () { return metavar; }
+    public List<ParsedArg> getParsedArgs (Opt<?> opt)
+    {
+      int count = ctx.getCount (opt);
+      List<ParsedArg> r = new ArrayList<ParsedArg> (count);
+      if (count > 0)
+        for (int e=ctx.firstEvents[opt.ordinal]; e!=-1; e=ctx.nextEvents[e])
+          r.add (ctx.makeParsedArg (e));
+      return r;
+    }
 
     /**
-     * <p>Returns the description for this option, used in help text.
+     * <p>Retrieve the value for the given Opt instance contained in
+     * these ParsedArgs.
+     *
+     * <p>If the option was not specified, return the given default
+     * value.
+     *
+     * @throws OptUseException if the given Opt is a list, and was
+     * specified more than once,
+     * @throws OptParseException if the value is being converted lazily,
+     * and cannot be converted
      **/
-    public String getDescription () { return description; }
-
-
-    // ---- Parse -----------------------------------------------------------
+    public <T> T getValue (Opt<T> opt, Class<T> type, T defaultValue)
+    {
+      switch (ctx.getCount (opt))
+        {
+        case 0: return defaultValue;
+        case 1: return type.cast (ctx.convert (opt)[0]);
+        default:
+          throw new OptUseException
+            ("Asked for singleton value of opt "+opt+", got list");
+        }
+    }
 
     /**
-     * <p>Parse the argument for this option.
+     * <p>Retrieve the values for the given Opt instance contained in
+     * these ParsedArgs, as a read-only list.
+     *
+     * <p>If the option was not specified, return a list containing
+     * the given default value.
      *
-     * <p>Subtypes must override this method to parse their arguments.
+     * @throws OptParseException if the values are being converted
+     * lazily, and cannot be converted
      **/
-    protected abstract A parseArg (OptReader in);
+    @SuppressWarnings(value={"unchecked"})
+    public <T> List<T> getValues (Opt<T> opt, Class<T> type, T defaultValue)
+    {
+      if (ctx.getCount (opt) == 0)
+        {
+          // --- default value handling.
+          if (defaultValue == opt.defaultValue && opt.defaults != null)
+            return opt.defaults;
+          if (defaultValue == null) return Collections.<T>emptyList ();
+          return Collections.singletonList (defaultValue);
+        }
 
-    // ---- Fetch Return Value ----------------------------------------------
+      Converted c = ctx.boxed (opt);
+      checkType (opt, c.values, type);
+      return (List<T>)c.list;
+    }
 
     /**
-     * <p>Fetch the (single) specified value for this option.  Can return
-     * null if the option was not found and no default was specified.
-     *
-     * <p>One of the three default opt target fetchers.
+     * <p>Retrieve the values for the given Opt instance contained in
+     * these ParsedArgs, as a new array.
      *
-     * @throws OptUseException if more than one value exists (as can
-     * be, for 'list'-typed options).
+     * <p>If the option was not specified, return an array containing
+     * the given default value.
      *
-     * @see #getList(Cloptus.ParsedArgs)
-     * @see #getArray(Cloptus.ParsedArgs)
+     * @throws OptParseException if the values are being converted
+     * lazily, and cannot be converted
      **/
-    public A get (ParsedArgs parsedArgs)
-    { return parsedArgs.getValue (this, argType, defaultValue); }
+    @SuppressWarnings(value={"unchecked"})
+    public <T> T[] getValueArray (Opt<T> opt, Class<T> type, T defaultValue)
+    {
+      if (ctx.getCount (opt) == 0)
+        {
+          // --- default value handling.
+          T[] r = (T[])java.lang.reflect.Array.newInstance
+            (type, (defaultValue == null) ? 0 : 1);
+          if (defaultValue != null) r[0] = defaultValue;
+          return r;
+        }
+      return values (opt, type).clone ();
+    }
 
     /**
-     * <p>Fetch all the specified values for this option.
-     *
-     * <p>If a default value was specified, and this list would
-     * otherwise be empty, a singleton list containing the default
-     * value is returned.
+     * <p>Retrieve the encoded values for the given PrimitiveOpt
+     * contained in these ParsedArgs, or null if it was not specified.
      *
-     * <p>One of the three default opt target fetchers.
+     * <p>The array itself is returned, not a copy: it must not be
+     * modified.
      *
-     * @see #get(Cloptus.ParsedArgs)
-     * @see #getArray(Cloptus.ParsedArgs)
+     * @throws OptParseException if the values are being converted
+     * lazily, and cannot be converted
      **/
-    public List<A> getList (ParsedArgs parsedArgs)
-    { return parsedArgs.getValues (this, argType, defaultValue); }
+    long[] getValueBits (PrimitiveOpt<?> opt)
+    {
+      if (ctx.getCount (opt) == 0) return null;
+      return ctx.convertBits (opt);
+    }
 
     /**
-     * <p>Fetch all of the specified values for this option, as a Java
-     * array.
-     *
-     * <p>One of the three default opt target fetchers.
-     *
-     * @see #get(Cloptus.ParsedArgs)
-     * @see #getList(Cloptus.ParsedArgs)
+     * <p>Retrieve the raw argument tokens for the given Opt contained
+     * in these ParsedArgs, if they are being {@linkplain
+     * OptSet#lazyConversion converted lazily} and have not been
+     * converted yet.  Otherwise (or if it was not specified), returns
+     * null.
      **/
-    @SuppressWarnings(value={"unchecked"})
-    public A[] getArray (ParsedArgs parsedArgs)
+    String[] getUnconvertedTokens (Opt<?> opt)
     {
-      List<A> list = getList (parsedArgs);
+      if (ctx.getCount (opt) == 0 || !opt.takesArg ()) return null;
+      if (ctx.converted[opt.ordinal] != null) return null;
+      return ctx.getTokens (opt);
+    }
 
-      // --- make a return array (XXX how to remove unchecked warning???)
-      A[] r = (A[])java.lang.reflect.Array.newInstance(argType, list.size ());
+    /**
+     * <p>Returns the converted values of the given (specified) Opt:
+     * the array itself, not a copy.
+     **/
+    @SuppressWarnings(value={"unchecked"})
+    private <T> T[] values (Opt<T> opt, Class<T> type)
+    {
+      Object[] r = ctx.convert (opt);
+      checkType (opt, r, type);
+      return (T[])r;
+    }
 
-      return list.toArray (r);
+    private static void checkType (Opt<?> opt, Object[] values, Class<?> type)
+    {
+      if (!type.isAssignableFrom (values.getClass ().getComponentType ()))
+        throw new ClassCastException
+          ("Cannot fetch values of "+opt+" as "+type.getName ());
     }
 
-    // ---- Wiring for OptTarget --------------------------------------------
+    /**
+     * <p>Return true if the magic --help option was specified.
+     **/
+    public boolean isHelpRequested ()
+    { return opts.getHelpOpt ().getBoolean (this); }
 
     /**
-     *
+     * <p>Make a nice string rendering of this ParsedArgs set.
      **/
-    protected static Opt<?> make (OptSet opts, OptTarget optTarget, Member m)
+    public String toString ()
     {
-      // --- figure out the argument type.
-      Class<?> argType = getMemberType (m);
-
-      // --- work out the type of option to create.
-      Class<?> optType = null;
-      if (optType == null)
+      StringBuilder out = new StringBuilder ();
+      for (int e=0; e<ctx.eventCount; e++)
         {
-          optType = optTarget.optType ();
-          if (optType == NotSpecifiedOpt.class) optType = null;
+          if (e > 0) out.append (" ");
+          out.append (ctx.makeParsedArg (e));
         }
-      if (optType == null) optType = getDefaultOptType (argType);
-      if (!Opt.class.isAssignableFrom (optType))
-        throw new ClassCastException
-          ("Got non-Opt subtype for optType in @OptTarget "+optTarget);
-
-      // --- figure out the option name.
-      String optName;
-      if (optTarget.name ().length > 0)
-        optName = optTarget.name ()[0];
-      else
-        optName = getDefaultOptName (m);
-
-      // --- make the option.
-      Opt<?> r = make (optType, opts, optName, argType);
+      return out.toString ();
+    }
+  }
 
-      if (argType.isArray ()) r.list (true);
+  /**
+   * <p>The working state of a parse: a token stream, and the results
+   * parsed so far.
+   *
+   * <p>A ParseContext can be reused for any number of parses, one
+   * after another, using {@link
+   * CompiledOptSet#parse(ParseContext,String[])}.  Each parse resets
+   * the context, and the context's {@link ParsedArgs} then holds the
+   * results until the next parse.
+   *
+   * <p>All the results are kept in arrays, which are sized when the
+   * context is made, and grown only when a parse needs more room than
+   * any parse before it.  So, in the steady state, parsing into a
+   * reused context allocates only the converted values: one array per
+   * option specified, plus whatever the Opts themselves allocate (an
+   * IntegerOpt boxes large Integers, a FileOpt makes a File, and the
+   * <tt>--name=value</tt> syntax splits off the value).
+   *
+   * <pre class="code">
+   * ParseContext ctx = parser.newParseContext ();
+   * for (String[] args : requests)
+   *   {
+   *     ParsedArgs parsedArgs = parser.parse (ctx, args);
+   *     ...
+   *   }
+   * </pre>
+   *
+   * <p>A ParseContext, and the ParsedArgs it owns, must only be used
+   * by one thread at a time.
+   *
+   * @see CompiledOptSet#parse(ParseContext,String[])
+   **/
+  public static class ParseContext {
+
+    final CompiledOptSet parser;
+    ParsedArgs parsedArgs;
+    final OptReader in = new OptReader ();
+
+    String[] args;
+
+    // --- the parsed options, in command line order.  For event 'e':
+    // ---   eventOpts[e]      - the Opt
+    // ---   eventRanks[e]     - how many events the Opt had before it
+    // ---   eventValues[e]    - the value, for Opts that take no
+    // ---                       argument
+    // ---   eventTokens[e]    - the raw argument token, or null if the
+    // ---                       Opt takes no argument
+    // ---   eventArgStarts[e] - where in the token the argument starts:
+    // ---                       past the '=', for '--name=value'
+    // ---   eventPositions[e] - where in the arguments the value was
+    // ---   eventNameTokens[e] - the token the name was seen in
+    // ---                       (null for positional options)
+    // ---   eventNameStarts/Ends[e] - where in the token the name was
+    // ---   nextEvents[e]     - the next event for the same Opt, or -1
+    int eventCount = 0;
+    Opt<?>[] eventOpts;
+    int[] eventRanks;
+    Object[] eventValues;
+    String[] eventTokens;
+    int[] eventArgStarts;
+    int[] eventPositions;
+    String[] eventNameTokens;
+    int[] eventNameStarts;
+    int[] eventNameEnds;
+    int[] nextEvents;
+
+    // --- per-Opt chains through the events, indexed by Opt ordinal,
+    // --- and the Opt's converted values (null until converted).
+    // --- Once a parse is done, only the converted slots are ever
+    // --- written: see Converted.
+    final int[] eventCounts;
+    final int[] firstEvents;
+    final int[] lastEvents;
+    final Converted[] converted;
+
+    // --- the set of specified Opts, as a bitset over their
+    // --- ordinals, and its size.
+    final long[] seen;
+    int seenCount = 0;
+
+    // --- the set of Opts specified more than once.
+    final long[] repeated;
+
+    // --- true to collect problems as diagnostics, rather than throw
+    // --- them (see CompiledOptSet.tryParse); and the diagnostics, if
+    // --- there were any.
+    boolean collecting = false;
+    List<ParseDiagnostic> diagnostics = null;
+
+    // --- the bad events found by convertAll (), when collecting.
+    private int[] badEvents;
+    private int badEventCount;
+
+    // --- for a context parsed into again and again (one made with a
+    // --- public constructor), buffers kept from parse to parse:
+    // ---   spares[o]   - Opt o's last Converted values, whose arrays
+    // ---                 are refilled if it has as many values again
+    // ---   tokenBuffer - the tokens being converted
+    // ---   splitTokens[e], splitArgs[e] - the last '--name=value'
+    // ---                 token split for event e, and its value
+    // --- For a context made for a single parse, these are null.
+    private final Converted[] spares;
+    private String[] tokenBuffer;
+    private String[] splitTokens;
+    private String[] splitArgs;
+
+    /**
+     * <p>Makes a new ParseContext for the given parser.
+     **/
+    public ParseContext (CompiledOptSet _parser) { this (_parser, 16); }
+
+    /**
+     * <p>Makes a new ParseContext for the given parser, with room for
+     * <tt>capacity</tt> parsed options before it needs to grow.
+     **/
+    public ParseContext (CompiledOptSet _parser, int capacity)
+    { this (_parser, null, capacity, true); }
+
+    /**
+     * <p>Makes a new ParseContext, to be parsed into again and again
+     * if <tt>reused</tt> (reusing its buffers), or else just once
+     * (leaving its results an immutable snapshot).
+     **/
+    ParseContext (CompiledOptSet _parser, ParsedArgs _parsedArgs,
+                  int capacity, boolean reused)
+    {
+      parser = _parser;
+      parsedArgs = _parsedArgs;
+      in.argFileCache = parser.argFileCache;
+
+      capacity = Math.max (capacity, 4);
+      eventOpts = new Opt<?>[capacity];
+      eventRanks = new int[capacity];
+      eventValues = new Object[capacity];
+      eventTokens = new String[capacity];
+      eventArgStarts = new int[capacity];
+      eventPositions = new int[capacity];
+      eventNameTokens = new String[capacity];
+      eventNameStarts = new int[capacity];
+      eventNameEnds = new int[capacity];
+      nextEvents = new int[capacity];
+
+      int optCount = parser.optsByOrdinal.length;
+      eventCounts = new int[optCount];
+      firstEvents = new int[optCount];
+      lastEvents = new int[optCount];
+      converted = new Converted[optCount];
+      spares = reused ? new Converted[optCount] : null;
+      if (reused)
+        {
+          splitTokens = new String[capacity];
+          splitArgs = new String[capacity];
+        }
+      seen = new long[(optCount + 63) >>> 6];
+      repeated = new long[seen.length];
+    }
 
-      r.setTarget (m);
-      r.initFromOptTarget (optTarget);
-      return r;
+    /**
+     * <p>Returns the ParsedArgs holding the results of the last parse
+     * into this context.
+     **/
+    public ParsedArgs getParsedArgs ()
+    {
+      if (parsedArgs == null) parsedArgs = new ParsedArgs (this);
+      return parsedArgs;
     }
 
     /**
-     *
+     * <p>Discards all results, and prepares to parse the given
+     * arguments.
      **/
-    private static String getDefaultOptName (Member m)
+    void reset (String[] _args)
     {
-      String memberName = m.getName ();
-      if (m instanceof Field)
-        return memberName;
-      else if (m instanceof Method)
-        {
-          if (memberName.startsWith ("set") && memberName.length () > 3)
-            return
-              Character.toLowerCase (memberName.charAt (3))
-              + memberName.substring (4);
-          else
-            return memberName;
-        }
-      else
-        {
-          assert (false);
-          return null;
-        }
+      // --- drop references to the last parse's values.
+      Arrays.fill (eventOpts, 0, eventCount, null);
+      Arrays.fill (eventValues, 0, eventCount, null);
+      Arrays.fill (eventTokens, 0, eventCount, null);
+      Arrays.fill (eventNameTokens, 0, eventCount, null);
+      Arrays.fill (eventCounts, 0);
+      Arrays.fill (converted, null);
+      Arrays.fill (seen, 0);
+      Arrays.fill (repeated, 0);
+      seenCount = 0;
+      eventCount = 0;
+      diagnostics = null;
+      badEventCount = 0;
+
+      args = _args;
+      in.reset (_args);
     }
 
     /**
+     * <p>Lets the given Opt parse its argument, and records it.
      *
+     * <p>If the Opt {@linkplain Opt#takesArg() takes an argument},
+     * the raw token is recorded, to be converted later: otherwise the
+     * Opt parses its value right away.
      **/
-    private static Class<?> getMemberType (Member m)
+    void parseArg (Opt<?> opt, String nameToken, int nameStart, int nameEnd)
     {
-      if (m instanceof Field)
-        return ((Field)m).getType ();
-      else if (m instanceof Method)
+      if (opt.takesArg ())
         {
-          Method method = (Method)m;
-          // --- must be a 1-arg method
-          Class<?>[] parameterTypes = method.getParameterTypes ();
-          if (parameterTypes.length != 1)
-            throw new OptCompileException
-              ("@OptTarget can only be specified on methods with 1 parameter: "
-               +"got "+parameterTypes.length+" parameters for method "+method);
-          return parameterTypes[0];
+          String token = in.read ();
+          if (token == null)
+            {
+              report (ParseDiagnostic.missingArgument
+                      (opt, in.getPosition ()));
+              return;
+            }
+          addEvent (opt, nameToken, nameStart, nameEnd,
+                    token, 0, in.getPosition (), null);
         }
       else
         {
-          assert (false);
-          return null;
+          int position = in.getPosition ();
+          addEvent (opt, nameToken, nameStart, nameEnd,
+                    null, 0, position, opt.parseArg (in));
         }
     }
 
     /**
-     * <p>Fetches the Class corresponding to the field or method type.
+     * <p>Records the given Opt, which {@linkplain Opt#takesArg()
+     * takes an argument}, with its argument given in the same token as
+     * its name: <tt>--name=value</tt>.
      *
-     * @see Cloptus.OptTarget#optType()
+     * <p>The value is not split out of the token until it is
+     * converted (see {@link #getArgToken}).
      **/
-    public static Class<?> getDefaultOptType (Class<?> argType)
+    void parseInlineArg (Opt<?> opt, String token, int nameEnd, int argStart)
     {
-      if (argType == String.class) return StringOpt.class;
-      else if (argType == Integer.class || argType == int.class)
-        return IntegerOpt.class;
-      else if (argType == Double.class || argType == double.class)
-        return DoubleOpt.class;
-      else if (argType == Boolean.class || argType == boolean.class)
-        return FlagOpt.class;
-      else if (argType == Date.class) return DateOpt.class;
-      else if (Enum.class.isAssignableFrom (argType)) return EnumOpt.class;
-      else if (argType == File.class) return FileOpt.class;
-      else if (argType == URI.class) return UriOpt.class;
-
-      else if (argType.isArray ())
-	return getDefaultOptType (argType.getComponentType ());
-
-      else throw new OptCompileException
-             ("No default option type for @OptTarget of type "+argType);
+      addEvent (opt, token, 0, nameEnd,
+                token, argStart, in.getPosition (), null);
     }
 
     /**
+     * <p>Reports a problem: throws it, or if collecting diagnostics,
+     * records it.
      *
+     * @throws OptParseException unless collecting diagnostics.
      **/
-    private static
-      Opt<?> make (Class<?> optType, OptSet opts, String optName,
-                   Class<?> argType)
+    void report (ParseDiagnostic d)
     {
-      // --- try to find constructor (opts, name, argType)
-      try {
-        Constructor<?> constructor = optType.getConstructor (OptSet.class,
-                                                             String.class,
-                                                             Class.class);
-        return (Opt<?>)constructor.newInstance (opts, optName, argType);
-      } catch (IllegalAccessException ex) {
-        throw new OptCompileException
-          ("Cannot access constructor (OptSet, String, Class<A>)", ex);
-      } catch (InstantiationException ex) {
-        throw new OptCompileException
-          ("Option type "+optType+" is abstract", ex);
-      } catch (InvocationTargetException ex) {
-        throw new OptCompileException
-          ("Error executing constructor (OptSet, String, Class<A>)", ex);
-      } catch (ExceptionInInitializerError ex) {
-        throw new OptCompileException
-          ("Error executing constructor (OptSet, String, Class<A>)", ex);
-      } catch (ClassCastException ex) {
-        throw new OptCompileException
-          ("Option type "+optType+
-           " incorrect in constructor (OptSet, String, Class<A>)", ex);
-      } catch (NoSuchMethodException ex) {
-        // --- fallthrough.
-      }
+      if (!collecting) throw d.toException ();
+      if (diagnostics == null)
+        diagnostics = new ArrayList<ParseDiagnostic> ();
+      diagnostics.add (d);
+    }
 
-      // --- otherwise, try to find constructor (opts, name)
-      try {
-        Constructor<?> constructor = optType.getConstructor(OptSet.class,
-                                                            String.class);
-        return (Opt<?>)constructor.newInstance (opts, optName);
-      } catch (IllegalAccessException ex) {
-        throw new OptCompileException
-          ("Cannot access constructor (OptSet, String)", ex);
-      } catch (InstantiationException ex) {
-        throw new OptCompileException
-          ("Option type "+optType+" is abstract", ex);
-      } catch (InvocationTargetException ex) {
-        throw new OptCompileException
-          ("Error executing constructor (OptSet, String)", ex);
-      } catch (ExceptionInInitializerError ex) {
-        throw new OptCompileException
-          ("Error executing constructor (OptSet, String)", ex);
-      } catch (ClassCastException ex) {
-        throw new OptCompileException
-          ("Option type "+optType+
-           " incorrect in constructor (OptSet, String)", ex);
-      } catch (NoSuchMethodException ex) {
-        // --- fallthrough
-      }
+    /**
+     * <p>Records a parsed option.
+     **/
+    void addEvent (Opt<?> opt, String nameToken, int nameStart, int nameEnd,
+                   String token, int argStart, int position, Object value)
+    {
+      if (opt == null) throw new NullPointerException ();
+
+      if (eventCount == eventOpts.length) grow ();
+
+      int e = eventCount++;
+      int idx = opt.ordinal;
+      eventOpts[e] = opt;
+      eventRanks[e] = eventCounts[idx];
+      eventValues[e] = value;
+      eventTokens[e] = token;
+      eventArgStarts[e] = argStart;
+      eventPositions[e] = position;
+      eventNameTokens[e] = nameToken;
+      eventNameStarts[e] = nameStart;
+      eventNameEnds[e] = nameEnd;
+      nextEvents[e] = -1;
+
+      // --- chain it onto the Opt's list of events.
+      int count = ++eventCounts[idx];
+      if (count == 1)
+        {
+          firstEvents[idx] = e;
+          CompiledOptSet.setBit (seen, idx);
+          seenCount++;
+        }
+      else
+        {
+          nextEvents[lastEvents[idx]] = e;
+          if (count == 2) CompiledOptSet.setBit (repeated, idx);
+        }
+      lastEvents[idx] = e;
+    }
 
-      throw new OptCompileException ("No reasonable constructor found "+
-                                     "for Opt subtype "+optType);
+    private void grow ()
+    {
+      int capacity = eventOpts.length * 2;
+      eventOpts = Arrays.copyOf (eventOpts, capacity);
+      eventRanks = Arrays.copyOf (eventRanks, capacity);
+      eventValues = Arrays.copyOf (eventValues, capacity);
+      eventTokens = Arrays.copyOf (eventTokens, capacity);
+      eventArgStarts = Arrays.copyOf (eventArgStarts, capacity);
+      eventPositions = Arrays.copyOf (eventPositions, capacity);
+      eventNameTokens = Arrays.copyOf (eventNameTokens, capacity);
+      eventNameStarts = Arrays.copyOf (eventNameStarts, capacity);
+      eventNameEnds = Arrays.copyOf (eventNameEnds, capacity);
+      nextEvents = Arrays.copyOf (nextEvents, capacity);
+      if (splitTokens != null)
+        {
+          splitTokens = Arrays.copyOf (splitTokens, capacity);
+          splitArgs = Arrays.copyOf (splitArgs, capacity);
+        }
     }
 
     /**
+     * <p>Returns the argument token of the given event: for
+     * <tt>--name=value</tt>, the part of the token after the '='.
      *
+     * <p>A reused context remembers the values it splits out, so the
+     * same argument array parsed again does not split them again.
      **/
-    public Opt<A> initFromOptTarget (OptTarget target)
+    String getArgToken (int e)
     {
-      assert (getClass () == target.optType ());
-
-      for (String name : target.name ()) name (name);
-      for (char shortName : target.shortName ()) shortName (shortName);
-      positional (target.positional ());
-      
-      required (target.required ());
-      // XXX set to list of argument is appropriate type.
-      // list (target.list ());
-
-      if (!"".equals (target.metavar ())) metavar (target.metavar ());
-      if (!"".equals (target.description ()))
-        description (target.description ());
+      String token = eventTokens[e];
+      int start = eventArgStarts[e];
+      if (start == 0) return token;
+      if (splitTokens == null) return token.substring (start);
+      if (splitTokens[e] != token)
+        {
+          splitArgs[e] = token.substring (start);
+          splitTokens[e] = token;
+        }
+      return splitArgs[e];
+    }
 
-      return this;
+    /**
+     * <p>Returns the number of times the given Opt was parsed: 0 if
+     * the Opt is not part of this context's OptSet.
+     **/
+    int getCount (Opt<?> opt)
+    {
+      if (opt.opts != parser.opts) return 0;
+      return eventCounts[opt.ordinal];
     }
 
-    public Opt<A> setTarget (Member v)
+    /**
+     * <p>Returns the ordinal of the first specified Opt at or after
+     * the given ordinal, or -1.
+     **/
+    int nextSeen (int ordinal)
     {
-      if (!(v instanceof Field || v instanceof Method))
-        throw new OptCompileException
-          ("Bad target: expected either Field or Method, got "+v.getClass ());
-      target = v;
-      return this;
+      int w = ordinal >>> 6;
+      if (w >= seen.length) return -1;
+      long word = seen[w] & (-1L << ordinal);
+      while (true)
+        {
+          if (word != 0) return (w << 6) + Long.numberOfTrailingZeros (word);
+          if (++w == seen.length) return -1;
+          word = seen[w];
+        }
     }
 
-    public void populateMember (Object targetObj,
-                                ParsedArgs parsedArgs)
+    /**
+     * <p>Checks the global required/list constraints, and the
+     * OptSet's declarative constraints.
+     *
+     * <p>Each check is a few word-wide operations on the bitsets of
+     * specified and repeated Opts: the counts are only looked at for
+     * an Opt that actually breaks a constraint, or has explicit
+     * occurrence bounds.
+     *
+     * <p>Each broken constraint is {@link #report}ed, in a fixed
+     * order: required Opts first, then repeats, bounds, exclusive
+     * groups and prerequisites.
+     *
+     * @throws OptParseException if any are broken, unless collecting
+     **/
+    void validate ()
     {
-      // --- don't bother if there is no target.
-      if (target == null) return;
+      if (DebugValidate)
+        System.err.println ("validate parsedArgs == "+getParsedArgs ());
 
-      // --- make sure the type is correct.
-      Class<?> desiredTargetObjType = target.getDeclaringClass ();
-      if (!desiredTargetObjType.isInstance (targetObj))
-        throw new ClassCastException
-          ("Bad target object: desired "+desiredTargetObjType.getClass ()
-           +", got "+targetObj.getClass ());
+      long[] required = parser.requiredMask;
+      long[] single = parser.singleMask;
 
-      Class<?> argType = getMemberType (target);
+      // --- one pass over the words, remembering the first word
+      // --- breaking each rule.
+      int missingWord = -1, repeatedWord = -1;
+      for (int w=0; w<seen.length; w++)
+        {
+          if (missingWord == -1 && (required[w] & ~seen[w]) != 0)
+            missingWord = w;
+          if (repeatedWord == -1 && (single[w] & repeated[w]) != 0)
+            repeatedWord = w;
+        }
 
-      Object value;
-      if (argType.isArray ())
-	value = getArray (parsedArgs);
-      else
-	value = get (parsedArgs);
+      // --- validate 'required' feature.
+      if (missingWord != -1)
+        for (int w=missingWord; w<seen.length; w++)
+          for (long word = required[w] & ~seen[w]; word != 0; word &= word-1)
+            report (ParseDiagnostic.constraint
+                    (ParseDiagnostic.Code.MISSING_REQUIRED, -1,
+                     firstOpt (w, word), null, 0, 0));
 
-      // --- not specified: don't try to set it.
-      if (value == null) return;
+      // --- validate 'list' feature.
+      if (repeatedWord != -1)
+        for (int w=repeatedWord; w<seen.length; w++)
+          for (long word = single[w] & repeated[w]; word != 0; word &= word-1)
+            {
+              Opt<?> a = firstOpt (w, word);
+              report (ParseDiagnostic.constraint
+                      (ParseDiagnostic.Code.REPEATED, eventPosition (a, 1),
+                       a, null, eventCounts[a.ordinal], 1));
+            }
 
-      // --- invoke the target (depending on its type)
-      if (target instanceof Field)
-        try {
-          ((Field)target).set (targetObj, value);
-        } catch (IllegalArgumentException ex) {
-          throw new OptUseException
-            ("Bad argument type for field: expected "
-             +((Field)target).getType ()+", got "+value
-             +" ("+value.getClass ()+")", ex);
-        } catch (IllegalAccessException ex) {
-          throw new OptUseException ("XXX", ex);
+      // --- validate occurrence bounds.
+      for (int i=0; i<parser.boundedOrdinals.length; i++)
+        {
+          int count = eventCounts[parser.boundedOrdinals[i]];
+          if (count >= parser.boundedMins[i] && count <= parser.boundedMaxes[i])
+            continue;
+          Opt<?> a = parser.optsByOrdinal[parser.boundedOrdinals[i]];
+          if (count < parser.boundedMins[i])
+            report (ParseDiagnostic.constraint
+                    (ParseDiagnostic.Code.TOO_FEW, -1,
+                     a, null, count, parser.boundedMins[i]));
+          else
+            report (ParseDiagnostic.constraint
+                    (ParseDiagnostic.Code.TOO_MANY,
+                     eventPosition (a, parser.boundedMaxes[i]),
+                     a, null, count, parser.boundedMaxes[i]));
         }
-      else if (target instanceof Method)
-        try {
-          ((Method)target).invoke (targetObj, value);
-        } catch (IllegalArgumentException ex) {
-          if (!target.getDeclaringClass ().isInstance (targetObj))
-            throw new OptUseException
-              ("Bad call to "+target.getName ()+": tried to use 'this' "+
-               "of type "+targetObj+", wanted "+target.getDeclaringClass ());
 
-          throw new OptUseException
-            ("Something bad happened when trying to invoke "+target
-             +", with this="+targetObj+", and arg="+value, ex);
-        } catch (IllegalAccessException ex) {
-          throw new OptUseException ("XXX", ex);
-        } catch (InvocationTargetException ex) {
-          throw new OptUseException ("XXX", ex);
+      // --- validate mutually exclusive groups.
+      for (long[] group : parser.exclusiveMasks)
+        {
+          Opt<?> a = nextOpt (group, 0);
+          if (a == null) continue;
+          Opt<?> b = nextOpt (group, a.ordinal + 1);
+          if (b != null)
+            report (ParseDiagnostic.constraint
+                    (ParseDiagnostic.Code.EXCLUSIVE, eventPosition (b, 0),
+                     a, b, 0, 0));
+        }
+
+      // --- validate requirements.
+      for (int i=0; i<parser.requiringOrdinals.length; i++)
+        {
+          if (!CompiledOptSet.getBit (seen, parser.requiringOrdinals[i]))
+            continue;
+          long[] prerequisites = parser.requiredByMasks[i];
+          for (int w=0; w<seen.length; w++)
+            if ((prerequisites[w] & ~seen[w]) != 0)
+              {
+                Opt<?> a = parser.optsByOrdinal[parser.requiringOrdinals[i]];
+                report (ParseDiagnostic.constraint
+                        (ParseDiagnostic.Code.MISSING_PREREQUISITE,
+                         eventPosition (a, 0), a,
+                         firstOpt (w, prerequisites[w] & ~seen[w]), 0, 0));
+                break;
+              }
         }
-      else
-        throw new OptUseException ("Bad target: "+target.getClass ());
     }
 
-    // ---- Debug -----------------------------------------------------------
-    
     /**
-     * <p>Print this option as a String.
-     *
-     * <p>Defined as {@link #printSimpleUsage(PrintWriter)}
+     * <p>Returns the position of the given (specified) Opt's event
+     * with the given rank.
      **/
-    public String toString ()
+    private int eventPosition (Opt<?> opt, int rank)
     {
-      StringPrintWriter out = new StringPrintWriter ();
-      printSimpleUsage (out);
-      return out.toString ();
+      int e = firstEvents[opt.ordinal];
+      for (int i=0; i<rank; i++) e = nextEvents[e];
+      return eventPositions[e];
     }
 
     /**
-     * <p>Print simple usage for this option (canonical long name, and
-     * metavar).  Does not print arity information.
+     * <p>Returns the Opt for the lowest bit set in the given word of a
+     * bitset.
      **/
-    public void printSimpleUsage (PrintWriter out)
-    { printLongNameUsage (out, getName (), getMetavar ()); }
+    private Opt<?> firstOpt (int w, long word)
+    {
+      return parser.optsByOrdinal
+        [(w << 6) + Long.numberOfTrailingZeros (word)];
+    }
 
     /**
-     * <p>Print usage for this argument, including arity specifiers for
-     * list and non-required options.
+     * <p>Returns the first specified Opt in the given mask, at or after
+     * the given ordinal.
      **/
-    public void printUsage (PrintWriter out)
+    private Opt<?> nextOpt (long[] mask, int ordinal)
     {
-      if (isRequired () && isList ())
+      for (int w=ordinal >>> 6; w<seen.length; w++)
         {
-          out.print ("( ");
-          printSimpleUsage (out);
-          out.print (" )+");
+          long word = mask[w] & seen[w];
+          if (w == ordinal >>> 6) word &= -1L << ordinal;
+          if (word != 0) return firstOpt (w, word);
         }
-      else if (isList ())
+      return null;
+    }
+
+    /**
+     * <p>Returns the converted values of the given (specified) Opt,
+     * converting them first if they have not been already.  For a
+     * PrimitiveOpt, only the bits are guaranteed to be there.
+     *
+     * @throws OptParseException if a token cannot be converted
+     **/
+    Converted converted (Opt<?> opt)
+    {
+      Converted c = converted[opt.ordinal];
+      if (c == null)
         {
-          out.print ("( ");
-          printSimpleUsage (out);
-          out.print (" )*");
+          c = convertValues (opt, false);
+          if (c.error != null) throw c.error;
+          converted[opt.ordinal] = c;
         }
-      else if (!isRequired ())
+      return c;
+    }
+
+    /**
+     * <p>Like {@link #converted}, but boxes a PrimitiveOpt's values if
+     * they have not been already.
+     **/
+    Converted boxed (Opt<?> opt)
+    {
+      Converted c = converted (opt);
+      if (c.values == null)
         {
-          out.print ("[ ");
-          printSimpleUsage (out);
-          out.print (" ]");
+          PrimitiveOpt<?> p = (PrimitiveOpt<?>)opt;
+          c = new Converted (box (p, c.bits), c.bits);
+          if (p.keepsBoxedValues ()) converted[opt.ordinal] = c;
         }
-      else
-        printSimpleUsage (out);
+      return c;
     }
 
     /**
-     * <p>Prints all possible usage information for this option, in a
-     * comma-seperated list.
+     * <p>Returns the values of the given (specified) Opt, converting
+     * them first if they have not been already.
+     *
+     * @throws OptParseException if a token cannot be converted
      **/
-    public void printExhaustiveUsage (PrintWriter out)
-    {
-      String metavar = getMetavar ();
+    Object[] convert (Opt<?> opt) { return boxed (opt).values; }
 
-      boolean first = true;
+    /**
+     * <p>Returns the encoded values of the given (specified)
+     * PrimitiveOpt, converting them first if they have not been
+     * already.
+     *
+     * @throws OptParseException if a token cannot be converted
+     **/
+    long[] convertBits (PrimitiveOpt<?> opt) { return converted (opt).bits; }
 
-      // --- first, long names.
-      for (String s : getLongNames ())
-        {
-          if (!first) out.print (", "); else first = false;
-          printLongNameUsage (out, s, metavar);
-        }
+    private static <A> Object[] box (PrimitiveOpt<A> opt, long[] b)
+    {
+      Object[] r = (Object[])java.lang.reflect.Array.newInstance
+        (opt.getArgType (), b.length);
+      for (int i=0; i<b.length; i++) r[i] = opt.fromBits (b[i]);
+      return r;
+    }
 
-      // --- then, other short names.
-      for (char s : getShortNames ())
-        {
-          if (!first) out.print (", "); else first = false;
-          printShortNameUsage (out, s, metavar);
-        }
+    /**
+     * <p>Converts every token not yet converted.  If any are bad,
+     * throws for the first in command line order; or when collecting,
+     * reports every one of them, in command line order.
+     *
+     * @throws OptParseException if a token cannot be converted
+     **/
+    void convertAll ()
+    {
+      Converted bad = null;
+      for (int ordinal=0; ordinal<converted.length; ordinal++)
+        if (converted[ordinal] == null && eventCounts[ordinal] > 0)
+          {
+            Converted c = convertValues (parser.optsByOrdinal[ordinal],
+                                         collecting);
+            if (c.badEvent == -1) converted[ordinal] = c;
+            else if (bad == null || c.badEvent < bad.badEvent) bad = c;
+          }
+      if (bad == null) return;
+      if (!collecting) throw bad.error;
 
-      // --- then, positional usage.
-      if (isPositional ())
+      // --- events are numbered in command line order.
+      Arrays.sort (badEvents, 0, badEventCount);
+      for (int i=0; i<badEventCount; i++)
         {
-          if (!first) out.print (", "); else first = false;
-          printPositionalUsage (out, metavar);
+          int e = badEvents[i];
+          report (ParseDiagnostic.badValue
+                  (eventOpts[e], getArgToken (e), eventPositions[e]));
         }
     }
 
     /**
-     * <p>Prints help for this option, including exhaustive usage, and
-     * any help text associated with this option.
+     * <p>Remembers a bad event, for {@link #convertAll} to report.
      **/
-    public void printOptionHelp (PrintWriter out)
+    private void addBadEvent (int e)
     {
-      // --- print usage details to string.
-      StringPrintWriter sout = new StringPrintWriter ();
-      printExhaustiveUsage (sout);
-      String usageDetails = sout.toString ();
+      if (badEvents == null) badEvents = new int[8];
+      else if (badEventCount == badEvents.length)
+        badEvents = Arrays.copyOf (badEvents, badEventCount * 2);
+      badEvents[badEventCount++] = e;
+    }
 
-      // --- indent description 30 characters.
-      String IndentSpaces = "                              ";
+    /**
+     * <p>Converts the tokens of the given (specified) Opt into an
+     * array of values (or, for a PrimitiveOpt, of bits), in order.
+     * The arrays are new, unless this context is reused and the Opt
+     * has as many values as last time: its spare arrays are then
+     * refilled.
+     *
+     * <p>Long runs of tokens (see {@link OptSet#parallelThreshold})
+     * are converted in parallel.
+     *
+     * <p>In a context made for a single parse, only reads the
+     * context, so it is safe to call from several threads at once
+     * once the parse is done.
+     *
+     * <p>When collecting, every bad event is remembered with {@link
+     * #addBadEvent}, and no error is made.
+     *
+     * @return the values, or else the first bad event and its error.
+     **/
+    private Converted convertValues (Opt<?> opt, boolean collect)
+    {
+      int ordinal = opt.ordinal;
+      int count = eventCounts[ordinal];
+      PrimitiveOpt<?> p = (opt instanceof PrimitiveOpt)
+        ? (PrimitiveOpt<?>)opt : null;
+      Object[] r = null;
+      long[] b = null;
+      Converted spare = (spares == null) ? null : spares[ordinal];
+      if (spare != null && spare.size () == count)
+        { r = spare.values; b = spare.bits; }
+      else
+        {
+          spare = null;
+          if (p != null) b = new long[count];
+          else r = (Object[])java.lang.reflect.Array.newInstance
+                 (opt.getArgType (), count);
+        }
 
-      // --- if usage details < IndentSpaces
-      if (usageDetails.length () < IndentSpaces.length ())
+      int e = firstEvents[ordinal];
+      if (!opt.takesArg ())
         {
-          out.print (usageDetails);
-          out.print (IndentSpaces.substring
-                     (0, IndentSpaces.length () - usageDetails.length ()));
+          // --- already parsed: just collect them.
+          for (int i=0; i<count; i++, e=nextEvents[e])
+            if (p != null) b[i] = p.encode (eventValues[e]);
+            else r[i] = eventValues[e];
+          return converted (ordinal, spare, r, b);
         }
+
+      String[] tokens = (spares == null) ? new String[count]
+        : tokenBuffer (count);
+      getTokens (opt, tokens);
+
+      // --- convert them all in one loop, specific to the Opt's type.
+      int bad;
+      if (count < parser.parallelThreshold)
+        bad = (p != null)
+          ? p.parseBits (tokens, b, 0, count)
+          : opt.parseValues (tokens, r, 0, count);
       else
         {
-          out.println (usageDetails);
-          out.print (IndentSpaces);
+          ConversionTask task =
+            new ConversionTask (opt, tokens, r, b, 0, count);
+          ForkJoinPool.commonPool ().invoke (task);
+          bad = task.badIndex;
         }
 
-      WordWrap.wordwrap (out, getDescription (), IndentSpaces, false);
-      out.println ();
+      if (bad < count)
+        {
+          // --- find the event the bad token came from.
+          e = firstEvents[ordinal];
+          for (int i=0; i<bad; i++) e = nextEvents[e];
+          if (!collect)
+            return new Converted (e, conversionError (opt, tokens[bad]));
+
+          // --- carry on past each bad token, to find the rest.
+          int first = e;
+          for (int i=bad; i<count; )
+            {
+              addBadEvent (e);
+              int next = (p != null)
+                ? p.parseBits (tokens, b, i+1, count)
+                : opt.parseValues (tokens, r, i+1, count);
+              for (; i<next; i++) e = nextEvents[e];
+            }
+          return new Converted (first, null);
+        }
+
+      return converted (ordinal, spare, r, b);
     }
 
     /**
-     * <p>Utility: prints simple usage for the given long name and metavar.
+     * <p>Returns the Converted holding the given (good) values: the
+     * spare they were written into, if any, else a new one, kept as
+     * the Opt's spare if this context is reused.
      **/
-    public static void printLongNameUsage (PrintWriter out, String name, 
-                                           String metavar)
+    private Converted converted (int ordinal, Converted spare,
+                                 Object[] values, long[] bits)
     {
-      out.print ("--");
-      out.print (name);
-      if (metavar != null)
-        {
-          out.print ("=");
-          out.print (metavar);
-        }
+      if (spare != null) return spare;
+      Converted r = new Converted (values, bits);
+      if (spares != null) spares[ordinal] = r;
+      return r;
     }
 
     /**
-     * <p>Utility: prints simple usage for the given short name and metavar.
+     * <p>Returns the reused buffer for tokens, with room for at least
+     * <tt>count</tt> of them.
      **/
-    public static void printShortNameUsage (PrintWriter out, char name, 
-                                            String metavar)
+    private String[] tokenBuffer (int count)
     {
-      out.print ("-");
-      out.print (name);
-      if (metavar != null)
-        {
-          out.print (" ");
-          out.print (metavar);
-        }
+      if (tokenBuffer == null || tokenBuffer.length < count)
+        tokenBuffer = new String[Math.max (count, 16)];
+      return tokenBuffer;
     }
 
     /**
-     * <p>Utility: prints simple usage for a positional opt with the
-     * given metavar.
+     * <p>Returns the raw argument tokens of the given (specified) Opt,
+     * which must {@linkplain Opt#takesArg() take an argument}, in
+     * order.
      **/
-    public static void printPositionalUsage (PrintWriter out, String metavar)
+    String[] getTokens (Opt<?> opt)
     {
-      if (metavar == null) out.print ("ARG");
-      else                 out.print (metavar);
+      String[] r = new String[eventCounts[opt.ordinal]];
+      getTokens (opt, r);
+      return r;
     }
 
-  }
+    /**
+     * <p>Copies the raw argument tokens of the given (specified) Opt
+     * into the start of <tt>into</tt>.
+     **/
+    private void getTokens (Opt<?> opt, String[] into)
+    {
+      int count = eventCounts[opt.ordinal];
+      int e = firstEvents[opt.ordinal];
+      for (int i=0; i<count; i++, e=nextEvents[e]) into[i] = getArgToken (e);
+    }
 
-  // -------------------------------------------------------------------------
-  // ---- Implementations of Opt ---------------------------------------------
-  // -------------------------------------------------------------------------
+    /**
+     * <p>Converts a token found to be bad again, to get its error.
+     **/
+    static RuntimeException conversionError (Opt<?> opt, String token)
+    {
+      try {
+        opt.parseValue (token);
+      } catch (RuntimeException ex) {
+        return ex;
+      }
+      return new OptParseException ("Bad value "+token+" for option "+opt);
+    }
 
-  /**
-   * <p>This is a gross hack to deal with the fact that null cannot be
-   * a default for annotation members.
-   **/
-  private static abstract class NotSpecifiedOpt extends Opt<Object> {
-    private NotSpecifiedOpt (OptSet _opts, String _name)
-    { super (_opts, _name, Object.class); }
+    /**
+     * <p>Makes a ParsedArg for the given event.
+     **/
+    ParsedArg makeParsedArg (int e)
+    {
+      Object value = convert (eventOpts[e])[eventRanks[e]];
+      String nameSeen = (eventNameTokens[e] == null) ? null
+        : eventNameTokens[e].substring (eventNameStarts[e], eventNameEnds[e]);
+      return new ParsedArg (eventOpts[e], nameSeen, value, false,
+                            getArgToken (e), eventPositions[e]);
+    }
   }
 
   /**
-   * <p>A String option.  The simplest possible option.
+   * <p>The converted values of a single Opt, in command line order;
+   * or else, the reason they could not be converted.
+   *
+   * <p>Immutable: its final fields let it be handed between threads
+   * without locking, so a slot holding one may be filled in by
+   * whichever thread converts the values first.
    **/
-  public static class StringOpt extends Opt<String> {
+  static final class Converted {
 
     /**
-     * <p>Make a StringOpt with the given name.
+     * <p>The values, with the Opt's argType as component type: null
+     * for a PrimitiveOpt whose values have not been boxed.
      **/
-    public StringOpt (OptSet _opts, String _name)
-    { super (_opts, _name, String.class); metavar ("STRING"); }
+    final Object[] values;
 
-    /* Covariant builder methods: for convenient building. */
-    public StringOpt defaultValue(String v){super.defaultValue(v);return this;}
-    public StringOpt name (String name) { super.name (name); return this; }
-    public StringOpt shortName (char name){super.shortName(name);return this; }
-    public StringOpt positional (boolean v){super.positional(v); return this; }
-    public StringOpt required (boolean v) { super.required (v); return this; }
-    public StringOpt list (boolean v) { super.list (v); return this; }
-    public StringOpt metavar (String v) { super.metavar (v); return this; }
-    public StringOpt description (String v){super.description(v);return this; }
+    /**
+     * <p>A read-only view of the values.
+     **/
+    final List<Object> list;
 
     /**
-     * <p>Parse the argument.
+     * <p>The encoded values of a PrimitiveOpt, else null.
+     **/
+    final long[] bits;
+
+    final int badEvent;
+    final RuntimeException error;
+
+    Converted (Object[] _values, long[] _bits)
+    {
+      values = _values;
+      list = (_values == null) ? null
+        : Collections.unmodifiableList (Arrays.asList (_values));
+      bits = _bits;
+      badEvent = -1;
+      error = null;
+    }
+
+    Converted (int _badEvent, RuntimeException _error)
+    {
+      values = null; list = null; bits = null;
+      badEvent = _badEvent;
+      error = _error;
+    }
+
+    /**
+     * <p>Returns the number of values.
      **/
-    protected String parseArg (OptReader in) { return in.read (); }
+    int size () { return (bits != null) ? bits.length : values.length; }
   }
 
   /**
-   * <p>An IntegerOpt: parses integers.
-   *
-   * <p>Supports 0x... (hex) 0b... (binary) and 0... (octal) constants.
+   * <p>Converts a range of an Opt's tokens (into values, or for a
+   * PrimitiveOpt into bits), splitting it in half until the pieces
+   * are small enough to convert serially.
    *
-   * XXX May one day support SI suffixes (like K, M, etc)
+   * <p>Each piece stops at its first bad token.  Joining keeps the
+   * bad token from the leftmost piece that had one, so the error
+   * reported is always that of the first bad token, however the work
+   * was scheduled.
    **/
-  public static class IntegerOpt extends Opt<Integer> {
+  static class ConversionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
 
     /**
-     * <p>Make an IntegerOpt with the given name.
+     * <p>Pieces this small are converted serially.
      **/
-    public IntegerOpt (OptSet _opts, String _name)
-    { super (_opts, _name, Integer.class); metavar ("INTEGER"); }
+    static final int MinChunk = 1024;
 
-    /* Covariant builder methods: for convenient building. */
-    public IntegerOpt defaultValue(Integer v)
-    {super.defaultValue(v);return this;}
-    public IntegerOpt name (String name) { super.name (name); return this; }
-    public IntegerOpt shortName (char name){super.shortName(name);return this;}
-    public IntegerOpt positional (boolean v){super.positional(v); return this;}
-    public IntegerOpt required (boolean v) { super.required (v); return this; }
-    public IntegerOpt list (boolean v) { super.list (v); return this; }
-    public IntegerOpt metavar (String v) { super.metavar (v); return this; }
-    public IntegerOpt description (String v){super.description(v);return this;}
+    final Opt<?> opt;
+    final String[] tokens;
+    final Object[] values;
+    final long[] bits;
+    final int start, end;
 
     /**
-     * <p>Convenience method, gets the option result as a Java int.
-     *
-     * <p>Returns -1 if the value is not found.
+     * <p>The index of the first bad token, or <tt>end</tt>.
      **/
-    public int getInt (ParsedArgs parsedArgs)
-    {
-      Integer r = get (parsedArgs);
-      if (r == null) return -1;
-      return r;
-    }
+    int badIndex;
 
-    /**
-     * <p>Convenience method, gets the option result as a Java int array.
-     **/
-    public int[] getIntArray (ParsedArgs parsedArgs)
+    ConversionTask (Opt<?> _opt, String[] _tokens, Object[] _values,
+                    long[] _bits, int _start, int _end)
     {
-      List<Integer> list = getList (parsedArgs);
-      int[] r = new int[list.size ()];
-      int idx = 0;
-      for (int i : list) r[idx++] = i;
-      return r;
+      opt = _opt; tokens = _tokens; values = _values; bits = _bits;
+      start = _start; end = _end;
     }
 
-    /**
-     * <p>Parse the next token as an Integer.
-     *
-     * <p>Includes support for various bases.
-     **/
-    protected Integer parseArg (OptReader in)
-    {
-      String valueStr = in.read ();
-
-      // --- hexadecimal
-      final int radix;
-      if (valueStr.startsWith ("0x"))
-        { valueStr = valueStr.substring (2); radix = 16; }
-      // --- binary
-      else if (valueStr.startsWith ("0b"))
-        { valueStr = valueStr.substring (2); radix = 2; }
-      // --- octal
-      else if (valueStr.startsWith ("0"))
-        { valueStr = valueStr.substring (1); radix = 8; }
-      // --- decimal
-      else
-        { radix = 10; }
+    protected void compute ()
+    {
+      if (end - start <= MinChunk)
+        {
+          badIndex = (bits != null)
+            ? ((PrimitiveOpt<?>)opt).parseBits (tokens, bits, start, end)
+            : opt.parseValues (tokens, values, start, end);
+          return;
+        }
 
-      // --- parse the value.
-      int value;
-      try {
-        value = Integer.parseInt (valueStr, radix);
-      } catch (NumberFormatException ex) {
-        throw new OptParseException
-          ("Bad value "+valueStr+" for option "+this
-           +": expected integer.", ex);
-      }
+      int mid = (start + end) >>> 1;
+      ConversionTask left =
+        new ConversionTask (opt, tokens, values, bits, start, mid);
+      ConversionTask right =
+        new ConversionTask (opt, tokens, values, bits, mid, end);
+      invokeAll (left, right);
 
-      return value;
+      badIndex = (left.badIndex < mid) ? left.badIndex : right.badIndex;
     }
   }
 
   /**
-   * <p>A DoubleOpt.  Allows specification of floating point values.
+   * <p>A single ParsedArg.  This represents a user-specified argument.
+   *
+   * <p>Contains the Opt matched against, the name specified by the
+   * user (null for a positional argument), the Object value that was
+   * derived, and the token it was derived from.
    **/
-  public static class DoubleOpt extends Opt<Double> {
+  public static class ParsedArg {
+    final Opt<?> opt;
+    final String nameSeen;
+    final Object value;
+    final boolean synthesized;
+    final String token;
+    final int position;
+
+    public ParsedArg (Opt<?> _opt, String _nameSeen, Object _value,
+                      boolean _synthesized)
+    { this (_opt, _nameSeen, _value, _synthesized, null, -1); }
+
+    public ParsedArg (Opt<?> _opt, String _nameSeen, Object _value,
+                      boolean _synthesized, String _token, int _position)
+    {
+      opt = _opt; nameSeen = _nameSeen; value = _value;
+      synthesized = _synthesized;
+      token = _token; position = _position;
+    }
+
+    public Opt<?> getOpt () { return opt; }
+
+    public String getNameSeen () { return nameSeen; }
 
     /**
-     * <p>Make a DoubleOpt with the given name.
+     * <p>Returns the argument token the value was converted from, or
+     * null if the option takes no argument.
      **/
-    public DoubleOpt (OptSet _opts, String _name)
-    { super (_opts, _name, Double.class); metavar ("DOUBLE"); }
-
-    /* Covariant builder methods: for convenient building. */
-    public DoubleOpt defaultValue(Double v){super.defaultValue(v);return this;}
-    public DoubleOpt name (String name) { super.name (name); return this; }
-    public DoubleOpt shortName (char name){super.shortName(name);return this;}
-    public DoubleOpt positional (boolean v){super.positional(v); return this;}
-    public DoubleOpt required (boolean v) { super.required (v); return this; }
-    public DoubleOpt list (boolean v) { super.list (v); return this; }
-    public DoubleOpt metavar (String v) { super.metavar (v); return this; }
-    public DoubleOpt description (String v){super.description(v);return this;}
+    public String getToken () { return token; }
 
     /**
-     * <p>Convenience method, gets the option result as a Java double.
-     *
-     * <p>Returns Double.NaN if the value is not found.
+     * <p>Returns the index, in the argument array, of the argument the
+     * value came from, or -1 if unknown.  (Values read from an
+     * argument file report the position of its <tt>@FILE</tt>
+     * argument.)
      **/
-    public double getDouble (ParsedArgs parsedArgs)
+    public int getPosition () { return position; }
+
+    public <T> T getValue (Class<T> type) { return type.cast (value); }
+
+    public String toString () { return "--" + opt.getName () + "=" + value; }
+  }
+
+  /**
+   * <p>The outcome of {@link CompiledOptSet#tryParse}: either the
+   * ParsedArgs, or else every problem found in the arguments.
+   **/
+  public static class ParseResult {
+    final ParsedArgs parsedArgs;
+    final List<ParseDiagnostic> diagnostics;
+
+    ParseResult (ParsedArgs _parsedArgs)
     {
-      Double r = get (parsedArgs);
-      if (r == null) return Double.NaN;
-      return r;
+      parsedArgs = _parsedArgs;
+      diagnostics = Collections.emptyList ();
     }
 
-    /**
-     * <p>Convenience method, gets the option result as a Java double array.
-     **/
-    public double[] getDoubleArray (ParsedArgs parsedArgs)
+    ParseResult (List<ParseDiagnostic> _diagnostics)
     {
-      List<Double> list = getList (parsedArgs);
-      double[] r = new double[list.size ()];
-      int idx = 0;
-      for (double i : list) r[idx++] = i;
-      return r;
+      parsedArgs = null;
+      diagnostics = Collections.unmodifiableList (_diagnostics);
     }
 
     /**
-     * <p>Parses the next token as a Double value.
+     * <p>Returns true if the arguments parsed without any problems.
      **/
-    protected Double parseArg (OptReader in)
-    {
-      String valueStr = in.read ();
+    public boolean isOk () { return parsedArgs != null; }
 
-      double value;
-      try {
-        value = Double.parseDouble (valueStr);
-      } catch (NumberFormatException ex) {
-        throw new OptParseException
-          ("Bad value "+valueStr+" for option "+this
-           +": expected doubleeger.", ex);
-      }
+    /**
+     * <p>Returns the parsed arguments, or null if there were problems.
+     **/
+    public ParsedArgs getParsedArgs () { return parsedArgs; }
 
-      return value;
-    }
+    /**
+     * <p>Returns the problems found, in the order they were found
+     * (for problems with the command line itself, that's command line
+     * order).  Empty if {@link #isOk}.
+     **/
+    public List<ParseDiagnostic> getDiagnostics () { return diagnostics; }
+
+    public String toString ()
+    { return isOk () ? parsedArgs.toString () : diagnostics.toString (); }
   }
 
   /**
-   * <p>A Boolean option: parses boolean values.
-   *
-   * <p>A BooleanOpt expects a single argument that is parsed as
-   * "true" or "false".
-   *
-   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
-   * java.lang.Boolean.
-   *
-   * <p>If you want a flag (with no argument), use {@link FlagOpt}
+   * <p>A single problem found by {@link CompiledOptSet#tryParse}.
    *
-   * @see Cloptus.Opt
+   * <p>Diagnostics are cheap to make: the message is only built if
+   * asked for.  It is the same message the equivalent
+   * OptParseException would have had.
    **/
-  public static class BooleanOpt extends Opt<Boolean> {
+  public static class ParseDiagnostic {
+
+    /**
+     * <p>The kinds of problem.
+     **/
+    public enum Code {
+      /** An option name that matches no Opt. **/
+      UNKNOWN_OPTION,
+      /** A long option prefix that matches more than one Opt. **/
+      AMBIGUOUS_OPTION,
+      /** An Opt that takes an argument, at the end of the arguments. **/
+      MISSING_ARGUMENT,
+      /** A positional argument, when no Opt takes them. **/
+      UNEXPECTED_POSITIONAL,
+      /** An argument its Opt cannot convert. **/
+      BAD_VALUE,
+      /** An argument file that is unnamed, or cannot be read. **/
+      BAD_ARG_FILE,
+      /** A required Opt that was not specified. **/
+      MISSING_REQUIRED,
+      /** A non-list Opt specified more than once. **/
+      REPEATED,
+      /** An Opt specified fewer times than its lower bound. **/
+      TOO_FEW,
+      /** An Opt specified more times than its upper bound. **/
+      TOO_MANY,
+      /** Two mutually exclusive Opts, both specified. **/
+      EXCLUSIVE,
+      /** An Opt specified without one it requires. **/
+      MISSING_PREREQUISITE,
+      /** Any other problem, thrown while parsing. **/
+      OTHER
+    }
 
-    /**
-     * <p>Make a BooleanOpt with the given name.
-     **/
-    public BooleanOpt (OptSet _opts, String _name)
-    { super (_opts, _name, Boolean.class); metavar ("BOOLEAN"); }
+    final Code code;
+    final int position;
+    final String token;
+    final int nameStart, nameEnd;
+    final Opt<?> opt;
+    final Opt<?> other;
+    final int count, bound;
+    final CompiledOptSet parser;
+    final Throwable cause;
+
+    // --- built on demand.
+    private String message;
+
+    ParseDiagnostic (Code _code, int _position, String _token,
+                     int _nameStart, int _nameEnd, Opt<?> _opt,
+                     Opt<?> _other, int _count, int _bound,
+                     CompiledOptSet _parser, Throwable _cause)
+    {
+      code = _code; position = _position; token = _token;
+      nameStart = _nameStart; nameEnd = _nameEnd;
+      opt = _opt; other = _other;
+      count = _count; bound = _bound;
+      parser = _parser; cause = _cause;
+    }
 
-    /* Covariant builder methods: for convenient building. */
-    public BooleanOpt defaultValue(Boolean v)
-    {super.defaultValue(v);return this;}
-    public BooleanOpt name (String name) { super.name (name); return this; }
-    public BooleanOpt shortName (char name){super.shortName(name);return this;}
-    public BooleanOpt positional (boolean v){super.positional(v); return this;}
-    public BooleanOpt required (boolean v) { super.required (v); return this; }
-    public BooleanOpt list (boolean v) { super.list (v); return this; }
-    public BooleanOpt metavar (String v) { super.metavar (v); return this; }
-    public BooleanOpt description (String v){super.description(v);return this;}
+    static ParseDiagnostic failed (RuntimeException ex, int position)
+    {
+      return new ParseDiagnostic (Code.OTHER, position, null, 0, 0,
+                                  null, null, 0, 0, null, ex);
+    }
 
-    /**
-     * <p>Convenience method, gets the option result as a Java boolean.
-     *
-     * <p>Returns false if the value is not found.
-     **/
-    public boolean getBoolean (ParsedArgs parsedArgs)
+    static ParseDiagnostic badArgFile (String token, int position,
+                                       RuntimeException ex)
     {
-      Boolean r = get (parsedArgs);
-      if (r == null) return false;
-      return r;
+      return new ParseDiagnostic (Code.BAD_ARG_FILE, position, token, 0, 0,
+                                  null, null, 0, 0, null, ex);
     }
 
     /**
-     * <p>Convenience method, gets the option result as a Java boolean array.
+     * <p>The unknown name is <tt>token[nameStart..nameEnd)</tt>: a
+     * long option starts at 0, a short one within an option list.
      **/
-    public boolean[] getBooleanArray (ParsedArgs parsedArgs)
+    static ParseDiagnostic unknownOption (CompiledOptSet parser, String token,
+                                          int nameStart, int nameEnd,
+                                          int position, boolean ambiguous)
     {
-      List<Boolean> list = getList (parsedArgs);
-      boolean[] r = new boolean[list.size ()];
-      int idx = 0;
-      for (boolean b : list) r[idx++] = b;
-      return r;
+      return new ParseDiagnostic
+        (ambiguous ? Code.AMBIGUOUS_OPTION : Code.UNKNOWN_OPTION,
+         position, token, nameStart, nameEnd,
+         null, null, 0, 0, parser, null);
     }
 
-    /**
-     * <p>Parses the next token as a boolean value.
-     *
-     * <p>If the first character (case insensitive) is '0' or 'f', the
-     * value is false.
-     *
-     * <p>If the first character is '1' or 't', the value is true.
-     **/
-    protected Boolean parseArg (OptReader in)
+    static ParseDiagnostic unexpectedPositional (String token, int position)
     {
-      String valueStr = in.read ();
+      return new ParseDiagnostic (Code.UNEXPECTED_POSITIONAL, position,
+                                  token, 0, 0, null, null, 0, 0, null, null);
+    }
 
-      if (valueStr.length () == 0)
-        throw new OptParseException ("Bad value '' for option "+this
-                                     +": expected 'true' or 'false'.");
+    static ParseDiagnostic missingArgument (Opt<?> opt, int position)
+    {
+      return new ParseDiagnostic (Code.MISSING_ARGUMENT, position, null, 0, 0,
+                                  opt, null, 0, 0, null, null);
+    }
 
-      switch (valueStr.toLowerCase ().charAt (0))
-        {
-        case '0': case 'f': return false;
-        case '1': case 't': return true;
-        default:
-          throw new OptParseException ("Bad value '"+valueStr
-                                       +"' for option "+this
-                                       +": expected 'true' or 'false'.");
-        }
+    static ParseDiagnostic badValue (Opt<?> opt, String token, int position)
+    {
+      return new ParseDiagnostic (Code.BAD_VALUE, position, token, 0, 0,
+                                  opt, null, 0, 0, null, null);
     }
-  }
 
-  /**
-   * <p>An option flag.
-   *
-   * <p>No arguments, returns 'true' if specified, and 'false' if not
-   * specified.
-   *
-   * <p>If 'invert()' is called, will return 'false' if specified, and
-   * 'true' if not specified.
-   **/
-  public static class FlagOpt extends BooleanOpt {
+    static ParseDiagnostic constraint (Code code, int position,
+                                       Opt<?> opt, Opt<?> other,
+                                       int count, int bound)
+    {
+      return new ParseDiagnostic (code, position, null, 0, 0,
+                                  opt, other, count, bound, null, null);
+    }
+
+    public Code getCode () { return code; }
 
     /**
-     * <p>The value to return if specified.
+     * <p>Returns the index, in the argument array, of the argument the
+     * problem was found at, or -1 if it is not at any one argument
+     * (e.g. a missing required Opt).
      **/
-    Boolean valueIfSet = true;
+    public int getPosition () { return position; }
 
     /**
-     * <p>Make a new FlagOpt with the given name.
+     * <p>Returns the argument the problem was found in, or null.
      **/
-    public FlagOpt (OptSet _opts, String _name)
-    { super (_opts, _name); metavar (null); defaultValue (false); }
+    public String getToken () { return token; }
 
     /**
-     * <p>Invert this flag.
-     *
-     * <p>If called, this flag will return 'false' if specified, and
-     * 'true' if not specified, the inverse of the normal behavior.
+     * <p>Returns the Opt the problem is with, or null.
      **/
-    public FlagOpt invert ()
-    { defaultValue (true); valueIfSet = false; return this; }
-
-    /* Covariant builder methods: for convenient building. */
-    public FlagOpt defaultValue(Boolean v) {super.defaultValue(v);return this;}
-    public FlagOpt name (String name) { super.name (name); return this; }
-    public FlagOpt shortName (char name){super.shortName(name);return this;}
-    public FlagOpt positional (boolean v){super.positional(v); return this;}
-    public FlagOpt required (boolean v) { super.required (v); return this; }
-    public FlagOpt list (boolean v) { super.list (v); return this; }
-    public FlagOpt metavar (String v) { super.metavar (v); return this; }
-    public FlagOpt description (String v){super.description(v);return this;}
+    public Opt<?> getOpt () { return opt; }
 
     /**
-     * <p>Parses no tokens: just returns the default value.
+     * <p>Returns the second Opt involved, or null: for {@link
+     * Code#EXCLUSIVE}, the one specified along with {@link #getOpt()};
+     * for {@link Code#MISSING_PREREQUISITE}, the one it requires.
      **/
-    protected Boolean parseArg (OptReader in) { return valueIfSet; }
-  }
-
-  /**
-   * <p>A help option.  Added by default to the OptSet object.
-   *
-   * <p>This is just a FlagOpt with a special type.
-   **/
-  public static class HelpOpt extends FlagOpt {
+    public Opt<?> getOtherOpt () { return other; }
 
     /**
-     * <p>Make a new HelpOpt with the given name.
+     * <p>Returns how many times {@link #getOpt()} was specified, for
+     * {@link Code#REPEATED}, {@link Code#TOO_FEW} and {@link
+     * Code#TOO_MANY}; otherwise 0.
      **/
-    public HelpOpt (OptSet _opts, String _name) { super (_opts, _name); }
-
-    /* Covariant builder methods: for convenient building. */
-    public HelpOpt defaultValue(Boolean v) {super.defaultValue(v);return this;}
-    public HelpOpt name (String name) { super.name (name); return this; }
-    public HelpOpt shortName (char name){super.shortName(name);return this;}
-    public HelpOpt positional (boolean v){super.positional(v); return this;}
-    public HelpOpt required (boolean v) { super.required (v); return this; }
-    public HelpOpt list (boolean v) { super.list (v); return this; }
-    public HelpOpt metavar (String v) { super.metavar (v); return this; }
-    public HelpOpt description (String v){super.description(v);return this;}
-  }
-
-  /**
-   * <p>A Date option: allows specification of Dates.
-   *
-   * <p>A DateOpt expects a single argument that is parsed as a
-   * Gregorian Date.  This will change in the future: Cloptus will get
-   * a Date parsing library that accepts a very flexible date syntax.
-   *
-   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
-   * java.util.Date.
-   *
-   * <p>There are no convenience methods at this time.
-   *
-   * <p>TODO: Right now, uses <tt>java.util.Date.parse()</tt> to parse
-   * the date, which sucks.  Write a new, flexible date parser for
-   * this guy.
-   **/
-  public static class DateOpt extends Opt<Date> {
+    public int getCount () { return count; }
 
     /**
-     * <p>Make a new DateOpt with the given name.
+     * <p>Returns the bound {@link #getCount()} broke, for {@link
+     * Code#REPEATED} (1), {@link Code#TOO_FEW} (the minimum) and
+     * {@link Code#TOO_MANY} (the maximum); otherwise 0.
      **/
-    public DateOpt (OptSet _opts, String _name)
-    { super (_opts, _name, Date.class); metavar ("DATE"); }
+    public int getBound () { return bound; }
 
-    /* Covariant builder methods: for convenient building. */
-    public DateOpt defaultValue(Date v) {super.defaultValue(v);return this;}
-    public DateOpt name (String name) { super.name (name); return this; }
-    public DateOpt shortName (char name){super.shortName(name);return this;}
-    public DateOpt positional (boolean v){super.positional(v); return this;}
-    public DateOpt required (boolean v) { super.required (v); return this; }
-    public DateOpt list (boolean v) { super.list (v); return this; }
-    public DateOpt metavar (String v) { super.metavar (v); return this; }
-    public DateOpt description (String v){super.description(v);return this;}
+    public String getMessage ()
+    {
+      if (message == null) message = buildMessage ();
+      return message;
+    }
+
+    private String buildMessage ()
+    {
+      switch (code)
+        {
+        case UNKNOWN_OPTION:
+          if (nameStart == 0)
+            return "Don't understand option '"
+              +token.substring (0, nameEnd)+"'";
+          return "Don't understand option '-"+token.charAt (nameStart)
+            +"' in option list '"+token+"'";
+        case AMBIGUOUS_OPTION:
+          return "Ambiguous option '"+token.substring (0, nameEnd)
+            +"': could be any of "
+            +parser.optsByLongName.getCandidates (token, 2, nameEnd);
+        case MISSING_ARGUMENT:
+          return "Missing argument for option "+opt;
+        case UNEXPECTED_POSITIONAL:
+          return "Don't understand option '"+token
+            +"': no positional arguments allowed.";
+        case BAD_VALUE:
+          return ParseContext.conversionError (opt, token).getMessage ();
+        case BAD_ARG_FILE:
+          if (cause != null) return cause.getMessage ();
+          return "Missing file name for argument file: expected '@FILE'";
+        case MISSING_REQUIRED:
+          return "Missing required option "+opt;
+        case REPEATED:
+          return opt+" can only be specified once, was specified "
+            +count+" times.";
+        case TOO_FEW:
+          return opt+" must be specified at least "+bound
+            +" times, was specified "+count+" times.";
+        case TOO_MANY:
+          return opt+" can be specified at most "+bound
+            +" times, was specified "+count+" times.";
+        case EXCLUSIVE:
+          return opt+" and "+other+" cannot be used together.";
+        case MISSING_PREREQUISITE:
+          return opt+" requires "+other+".";
+        default:
+          // --- name any other exception: its message may not say
+          // --- what went wrong on its own.
+          if (cause instanceof OptParseException) return cause.getMessage ();
+          return cause.toString ();
+        }
+    }
 
     /**
-     * <p>Parses the next token as a Date.
+     * <p>Returns the OptParseException that {@link
+     * CompiledOptSet#parse(String[])} would have thrown for this
+     * problem.
      **/
-    @SuppressWarnings("deprecation")
-    protected Date parseArg (OptReader in)
+    public OptParseException toException ()
     {
-      String value = in.read ();
+      if (cause instanceof OptParseException)
+        return (OptParseException)cause;
+      return new OptParseException (getMessage (), cause);
+    }
 
-      // XXX parse Date here in fancier way.
-      try {
-        // this deprecated method was WAY more awesome than normal date parsing.
-        // that said, I really need to write/fetch a flexible human-friendly date parser.  This is nuts.
-        return new Date (value);
-      } catch (IllegalArgumentException ex) {
-        throw new OptParseException ("Bad value '"+value+"' for option "+this
-                                     +": expected date.", ex);
-      }
+    public String toString ()
+    {
+      return (position == -1) ? getMessage ()
+        : "argument "+position+": "+getMessage ();
     }
   }
 
+  // -------------------------------------------------------------------------
+  // ---- Exceptions ---------------------------------------------------------
+  // -------------------------------------------------------------------------
+
   /**
-   * <p>This is a cute one: an enumeration option, parses values from
-   * a Java Enum object.
-   *
-   * <p>Expects a single argument that is parsed as one of the values
-   * from a java.lang.Enum type.  Eventually, this parsing will be
-   * case-insensitive.  Currently, it is case-sensitive (which makes
-   * it hard for users).
-   *
-   * <p>{@link #get(Cloptus.ParsedArgs)} returns an instance of the
-   * appropriate java.lang.Enum subtype.
-   *
-   * <p>TODO: make case insensitive.  If there are multiple matches
-   * for a case-insensitive match, match case-sensitively, or yield an
-   * error if that doesn't work.
+   * <p>Base type for option exceptions.
    **/
-  public static class EnumOpt<T extends Enum<T>> extends Opt<T> {
+  public abstract static class OptException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    public OptException () { super (); }
+    public OptException (String msg) { super (msg); }
+    public OptException (String msg, Throwable ex)
+    { super (msg); initCause (ex); }
+  }
 
-    /**
-     * <p>Make a new EnumOpt with the given name and Enum type.
-     **/
-    public EnumOpt (OptSet _opts, String _name, Class<T> enumType)
-    { super (_opts, _name, enumType); metavar ("ENUM"); } // XXX metavar
+  /**
+   * <p>Thrown if there's a problem with the specification of an option.
+   **/
+  public static class OptCompileException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    public OptCompileException () { super (); }
+    public OptCompileException (String msg) { super (msg); }
+    public OptCompileException (String msg, Throwable ex) { super (msg, ex); }
+  }
 
-    /* Covariant builder methods: for convenient building. */
-    public EnumOpt<T> defaultValue(T v) {super.defaultValue(v);return this;}
-    public EnumOpt<T> name (String name) { super.name (name); return this; }
-    public EnumOpt<T> shortName (char name){super.shortName(name);return this;}
-    public EnumOpt<T> positional (boolean v){super.positional(v); return this;}
-    public EnumOpt<T> required (boolean v) { super.required (v); return this; }
-    public EnumOpt<T> list (boolean v) { super.list (v); return this; }
-    public EnumOpt<T> metavar (String v) { super.metavar (v); return this; }
-    public EnumOpt<T> description (String v){super.description(v);return this;}
+  /**
+   * <p>Thrown if there's a problem during the parsing of an option.
+   **/
+  public static class OptParseException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    public OptParseException () { super (); }
+    public OptParseException (String msg) { super (msg); }
+    public OptParseException (String msg, Throwable ex) { super (msg, ex); }
+  }
 
-    /**
-     * <p>Parse the next token as an Enum value.
-     **/
-    protected T parseArg (OptReader in)
-    {
-      String value = in.read ();
-      try {
-        return Enum.valueOf (argType, value);
-      } catch (IllegalArgumentException ex) {
-        throw new OptParseException ("Bad value '"+value+"' for option "+this
-                                     +": expected enum value.", ex);
-      }
-    }
+  /**
+   * <p>Thrown if there's a problem using a ParsedArgs set.
+   **/
+  public static class OptUseException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    public OptUseException () { super (); }
+    public OptUseException (String msg) { super (msg); }
+    public OptUseException (String msg, Throwable ex) { super (msg, ex); }
   }
 
+  // -------------------------------------------------------------------------
+  // ---- Utility Classes ----------------------------------------------------
+  // -------------------------------------------------------------------------
+
   /**
-   * <p>A File option: parses filenames, and returns Files.
-   *
-   * <p>A FileOpt expects a single argument that is interpreted as a
-   * filename on the host operating system.
-   *
-   * <p>Accepts filename arguments using either slash convention, and
-   * converts them into system-standard conventions.
-   *
-   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
-   * java.io.File
+   * <p>Reads args.
    *
-   * <p>Provides a rich API to fetch the underlying file as a Stirng
-   * pathname, File, Reader, Writer, InputStream, OutputStream, String
-   * content, or byte[] content.
+   * <p>A token stream over the original argument array: a cursor into
+   * the array, plus a small pushback stack for tokens synthesized
+   * during the parse (like the value half of <tt>--name=value</tt>).
+   * Reading, peeking, and pushing back are all O(1), and the argument
+   * array is never copied, so parsing is linear in the number of
+   * arguments.
    *
-   * <p>All Writers and Streams returned are buffered.
+   * <p>Argument files (see {@link #pushArgFile(File)}) are stacked on
+   * top of the argument array: their tokens are read incrementally
+   * until they run out, and then reading carries on where it left
+   * off.
    **/
-  public static class FileOpt extends Opt<File> {
+  static class OptReader {
+    private String[] args;
+    private int position = 0;
 
-    /**
-     * <p>Make a FileOpt with the given name.
-     **/
-    public FileOpt (OptSet _opts, String _name)
-    { super (_opts, _name, File.class); metavar ("FILE"); }
+    private String[] pushback = new String[4];
+    private int[] pushbackPositions = new int[4];
+    private int pushbackCount = 0;
 
-    /* Covariant builder methods: for convenient building. */
-    public FileOpt defaultValue(File v) {super.defaultValue(v);return this;}
-    public FileOpt name (String name) { super.name (name); return this; }
-    public FileOpt shortName (char name){super.shortName(name);return this;}
-    public FileOpt positional (boolean v){super.positional(v); return this;}
-    public FileOpt required (boolean v) { super.required (v); return this; }
-    public FileOpt list (boolean v) { super.list (v); return this; }
-    public FileOpt metavar (String v) { super.metavar (v); return this; }
-    public FileOpt description (String v){super.description(v);return this;}
+    private int lastPosition = -1;
+
+    private final List<ArgFileTokenizer> argFiles =
+      new ArrayList<ArgFileTokenizer> ();
 
     /**
-     * <p>Fetches the filename of the specified file, normalized to
-     * host OS conventions.
-     *
-     * <p>In particular, all slashes are normalized to local
-     * conventions.
+     * <p>If not null, argument files are looked up here before being
+     * read, and added here once they have been read.
      **/
-    public String getFileName (ParsedArgs parsedArgs)
-    { return get (parsedArgs).getPath (); }
+    ArgFileCache argFileCache = null;
+
+    public OptReader () { this (new String[0]); }
+
+    public OptReader (String[] _args) { args = _args; }
 
     /**
-     * <p>Fetches the list of filenames specified.
-     *
-     * @see #getFileName(Cloptus.ParsedArgs)
+     * <p>Discards any remaining tokens, and starts reading the given
+     * arguments from the beginning.
      **/
-    public List<String> getFileNameList (ParsedArgs parsedArgs)
+    public void reset (String[] _args)
     {
-      List<String> r = new ArrayList<String> ();
-      for (File f : getList (parsedArgs)) r.add (f.getPath ());
-      return r;
+      closeArgFiles ();
+      args = _args;
+      position = 0;
+      lastPosition = -1;
+      while (pushbackCount > 0) pushback[--pushbackCount] = null;
     }
 
-    /**
-     * <p>Fetch the list of filenames specified as a Java String array.
-     *
-     * @see #getFileName(Cloptus.ParsedArgs)
-     **/
-    public String[] getFileNameArray (ParsedArgs parsedArgs)
-    { return getFileNameList (parsedArgs).toArray (new String[0]); }
+    public String read ()
+    {
+      // --- pushed-back tokens come first, most recent first.
+      if (pushbackCount > 0)
+        {
+          String r = pushback[--pushbackCount];
+          pushback[pushbackCount] = null;
+          lastPosition = pushbackPositions[pushbackCount];
+          return r;
+        }
 
-    /**
-     * <p>Fetch a buffered InputStream on the contents of the specified file.
-     **/
-    public InputStream getInputStream (ParsedArgs parsedArgs)
-      throws FileNotFoundException
-    { return new BufferedInputStream (new FileInputStream (get(parsedArgs))); }
+      // --- then, the innermost argument file.
+      ArgFileTokenizer argFile = currentArgFile ();
+      if (argFile != null)
+        {
+          lastPosition = argFile.argPosition;
+          return argFile.read ();
+        }
 
-    /**
-     * <p>Fetch a buffered OutputStream to write to the specified file.
-     **/
-    public OutputStream getOutputStream (ParsedArgs parsedArgs)
-      throws FileNotFoundException
-    {return new BufferedOutputStream (new FileOutputStream (get(parsedArgs)));}
+      if (position >= args.length) return null;
+      lastPosition = position;
+      return args[position++];
+    }
 
     /**
-     * <p>Fetch a buffered Reader on the contents of the specified file.
-     *
-     * <p>Uses the default system character set.
+     * <p>Returns the index, in the argument array, of the last token
+     * read (or -1 if none has been).  Pushed-back tokens report the
+     * position of the token they were split from, and tokens read from
+     * an argument file report the position of its <tt>@FILE</tt>
+     * argument.
      **/
-    public Reader getReader (ParsedArgs parsedArgs)
-      throws FileNotFoundException
-    { return new InputStreamReader (getInputStream (parsedArgs)); }
+    public int getPosition () { return lastPosition; }
 
-    /**
-     * <p>Fetch a buffered Reader on the contents of the specified
-     * file, using the named character set.
-     **/
-    public Reader getReader (ParsedArgs parsedArgs, String charsetName)
-      throws FileNotFoundException, UnsupportedEncodingException
-    { return new InputStreamReader (getInputStream (parsedArgs),charsetName); }
+    public String peek ()
+    {
+      if (pushbackCount > 0) return pushback[pushbackCount-1];
 
-    /**
-     * <p>Fetch a buffered Writer to write to the specified file.
-     **/
-    public Writer getWriter (ParsedArgs parsedArgs)
-      throws FileNotFoundException
-    { return new OutputStreamWriter (getOutputStream (parsedArgs)); }
+      ArgFileTokenizer argFile = currentArgFile ();
+      if (argFile != null) return argFile.peek ();
+
+      if (position >= args.length) return null;
+      return args[position];
+    }
 
     /**
-     * <p>Fetch a buffered Writer to write to the specified file,
-     * using the named character set.
+     * <p>Pushes the given token back onto the front of the stream:
+     * it will be the next token read.
      **/
-    public Writer getWriter (ParsedArgs parsedArgs, String charsetName)
-      throws FileNotFoundException, UnsupportedEncodingException
-    {return new OutputStreamWriter (getOutputStream (parsedArgs),charsetName);}
+    public void prependArg (String arg)
+    {
+      if (pushbackCount == pushback.length)
+        {
+          pushback = Arrays.copyOf (pushback, pushback.length * 2);
+          pushbackPositions =
+            Arrays.copyOf (pushbackPositions, pushbackPositions.length * 2);
+        }
+      pushbackPositions[pushbackCount] = lastPosition;
+      pushback[pushbackCount++] = arg;
+    }
 
     /**
-     * <p>Fetch the raw contents of the specified file as an array of
-     * bytes.
+     * <p>Pushes the given tokens back onto the front of the stream,
+     * preserving their order: <tt>v[0]</tt> will be the next token
+     * read.
      **/
-    public byte[] getByteContent (ParsedArgs parsedArgs) throws IOException
-    { return IoLib.readFully (getInputStream (parsedArgs)); }
+    public void prependArgs (String[] v)
+    { for (int i=v.length-1; i>=0; i--) prependArg (v[i]); }
 
     /**
-     * <p>Fetch the text content of the specified file as a String.
+     * <p>Inserts the contents of the given argument file at the
+     * front of the stream.  The file is opened now, but its tokens
+     * are only read as they are needed.
      *
-     * <p>Uses the default system character set.
+     * @throws OptParseException if the file cannot be opened, or if
+     * it is already being read (i.e. - argument files include each
+     * other in a cycle).
      **/
-    public String getStringContent (ParsedArgs parsedArgs) throws IOException
-    { return IoLib.readFully (getReader (parsedArgs)); }
+    public void pushArgFile (File file)
+    {
+      File canonicalFile;
+      try {
+        canonicalFile = file.getCanonicalFile ();
+      } catch (IOException ex) {
+        throw new OptParseException
+          ("Cannot read argument file '"+file+"'", ex);
+      }
+
+      // --- cycle detection: is it already open?
+      for (ArgFileTokenizer argFile : argFiles)
+        if (argFile.file.equals (canonicalFile))
+          {
+            StringBuilder chain = new StringBuilder ();
+            for (ArgFileTokenizer a : argFiles)
+              chain.append (a.file).append (" -> ");
+            chain.append (canonicalFile);
+            throw new OptParseException
+              ("Argument file '"+file+"' includes itself: "+chain);
+          }
+
+      // --- already tokenized?  Then skip the I/O entirely.
+      long lastModified = 0, length = 0;
+      if (argFileCache != null)
+        {
+          lastModified = canonicalFile.lastModified ();
+          length = canonicalFile.length ();
+          String[] tokens =
+            argFileCache.get (canonicalFile, lastModified, length);
+          if (tokens != null)
+            {
+              ArgFileTokenizer argFile =
+                new ArgFileTokenizer (canonicalFile, tokens);
+              argFile.argPosition = lastPosition;
+              argFiles.add (argFile);
+              return;
+            }
+        }
+
+      try {
+        ArgFileTokenizer argFile = new ArgFileTokenizer (canonicalFile);
+        if (argFileCache != null)
+          argFile.recordInto (argFileCache, lastModified, length);
+        argFile.argPosition = lastPosition;
+        argFiles.add (argFile);
+      } catch (IOException ex) {
+        throw new OptParseException
+          ("Cannot read argument file '"+file+"'", ex);
+      }
+    }
 
     /**
-     * <p>Fetch the text content of the specified file as a String,
-     * using the named character set.
+     * <p>Closes (and forgets) any argument files still being read.
      **/
-    public String getStringContent (ParsedArgs parsedArgs, String charsetName)
-      throws IOException, UnsupportedEncodingException
-    { return IoLib.readFully (getReader (parsedArgs, charsetName)); }
+    public void closeArgFiles ()
+    {
+      for (int i=argFiles.size ()-1; i>=0; i--) argFiles.get (i).close ();
+      argFiles.clear ();
+    }
 
     /**
-     * <p>Parses the next token as an abstract filename.
-     *
-     * <p>Normalizes slashes to environment-standard slashes.
+     * <p>Returns the innermost argument file that still has tokens,
+     * closing any that have run out, or null.
      **/
-    protected File parseArg (OptReader in)
+    private ArgFileTokenizer currentArgFile ()
     {
-      String value = in.read ();
-
-      // --- normalize newlines.
-      value = value
-        .replace ('/', File.separatorChar)
-        .replace ('\\', File.separatorChar);;
+      while (!argFiles.isEmpty ())
+        {
+          ArgFileTokenizer top = argFiles.get (argFiles.size () - 1);
+          if (top.peek () != null) return top;
 
-      // --- make a java.io.File object
-      return new File (value);
+          top.close ();
+          argFiles.remove (argFiles.size () - 1);
+        }
+      return null;
     }
   }
 
   /**
-   * <p>An URI option: parses URIs.
+   * <p>Splits an argument file into tokens.
    *
-   * <p>An UriOpt expects a single argument that is interpreted as a
-   * Uniform Resource Identifier.  If the argument appears to be a
-   * filename, it is converted into the equivalent <tt>file:</tt> URI.
+   * <p>The file is memory-mapped (a window at a time, for very large
+   * files), and scanned a byte at a time: only one token is ever
+   * held in memory, never the whole file.  The file is read as UTF-8.
    *
-   * <p>Accepts URIs with either slash convention, and normalizes them
-   * into forward slashes (<tt>/</tt>).
+   * <p>The syntax is a simplified shell syntax:
    *
-   * <p>{@link #get(Cloptus.ParsedArgs)} returns objects of type
-   * java.net.URI
+   * <ul>
+   *   <li>tokens are separated by whitespace (including newlines).
    *
-   * <p>Provides a rich API to fetch the underlying resource as a
-   * String URI, URL, URLConnection, Reader, InputStream, byte[]
-   * content or String content.
+   *   <li>text in single quotes is taken literally.
    *
-   * <p>All Readers and Streams are buffered.
+   *   <li>text in double quotes is taken literally, except that
+   *   <tt>\"</tt> and <tt>\\</tt> stand for <tt>"</tt> and
+   *   <tt>\</tt>.
+   *
+   *   <li>outside of quotes, a backslash escapes a following
+   *   whitespace, quote, <tt>#</tt> or backslash character.  Any
+   *   other backslash is taken literally, so Windows file names work
+   *   unquoted.
+   *
+   *   <li>a <tt>#</tt> at the start of a token starts a comment,
+   *   which runs to the end of the line.
+   * </ul>
+   *
+   * <p>Tokens starting with <tt>@</tt> are themselves argument files:
+   * see {@link OptReader#pushArgFile(File)}.
+   *
+   * <p>A tokenizer can also replay tokens from an {@link
+   * ArgFileCache}, in which case the file is never opened; or record
+   * the tokens it scans, to add them to the cache once the whole file
+   * has been read.
    **/
-  public static class UriOpt extends Opt<URI> {
+  static class ArgFileTokenizer {
 
     /**
-     *
+     * <p>How much of the file to map at once.
      **/
-    public UriOpt (OptSet _opts, String _name)
-    { super (_opts, _name, URI.class); metavar ("URI"); }
+    static final int WindowSize = 64 * 1024 * 1024;
 
-    /* Covariant builder methods: for convenient building. */
-    public UriOpt defaultValue(URI v) {super.defaultValue(v);return this;}
-    public UriOpt name (String name) { super.name (name); return this; }
-    public UriOpt shortName (char name){super.shortName(name);return this;}
-    public UriOpt positional (boolean v){super.positional(v); return this;}
-    public UriOpt required (boolean v) { super.required (v); return this; }
-    public UriOpt list (boolean v) { super.list (v); return this; }
-    public UriOpt metavar (String v) { super.metavar (v); return this; }
-    public UriOpt description (String v){super.description(v);return this;}
+    static final Charset UTF8 = Charset.forName ("UTF-8");
 
-    /**
-     * <p>Returns the String representation of an URI.
-     *
-     * <p>This may contain unquoted characters making it unsuitable
-     * for using as a true URI, but is more pleasant to look at.
-     *
-     * @see URI#toString()
-     **/
-    public String getString (ParsedArgs parsedArgs)
-    { return get (parsedArgs).toString (); }
+    final File file;
 
     /**
-     * <p>Returns the String representation of an URI.
-     *
-     * <p>This String representation contains only ASCII characters
-     * (all non-ASCII characters are quoted).
-     *
-     * @see URI#toASCIIString()
+     * <p>The position, in the argument array, of the <tt>@FILE</tt>
+     * argument that this file was read for.
      **/
-    public String getASCIIString (ParsedArgs parsedArgs)
-    { return get (parsedArgs).toASCIIString (); }
+    int argPosition = -1;
+
+    private FileChannel channel;
+    private final long size;
+    private long windowEnd = 0;
+    private MappedByteBuffer window = null;
+
+    private byte[] buf = new byte[256];
+    private int bufLen = 0;
+
+    private String next = null;
+    private boolean done = false;
+
+    // --- replaying from the cache: the tokens, and the next to read.
+    private final String[] cachedTokens;
+    private int cachedPosition = 0;
+
+    // --- recording for the cache.
+    private ArgFileCache cache = null;
+    private long cacheLastModified, cacheLength;
+    private List<String> recorded = null;
+    private long recordedBytes = 0;
 
     /**
-     * <p>Returns this URI object as an URL.
-     *
-     * @throws MalformedURLException under various circumstances (see
-     * {@link URI#toURL()}), but mostly if the URI uses a scheme
-     * unsupported by the Java runtime.
+     * <p>Makes a tokenizer that reads the given file.
      **/
-    public URL getURL (ParsedArgs parsedArgs) throws MalformedURLException
+    ArgFileTokenizer (File _file) throws IOException
     {
-      // XXX resolve relative to CWD
-      return get (parsedArgs).toURL ();
+      file = _file;
+      FileInputStream in = new FileInputStream (file);
+      try {
+        channel = in.getChannel ();
+        size = channel.size ();
+      } catch (IOException ex) {
+        in.close ();
+        throw ex;
+      }
+      cachedTokens = null;
     }
 
     /**
-     * <p>Return a new URLConnection for this URL.
-     *
-     * @throws MalformedURLException under various circumstances (see
-     * {@link URI#toURL()}), but mostly if the URI uses a scheme
-     * unsupported by the Java runtime.
-     *
-     * @throws IOException if the URLConnection cannot be established.
-     **/
-    public URLConnection getURLConnection (ParsedArgs parsedArgs)
-      throws MalformedURLException, IOException
-    { return getURL (parsedArgs).openConnection (); }
-
-    /**
-     * <p>Return a new buffered Reader on the contents of the
-     * specified URI.
-     *
-     * <p>Uses the default system character set.
-     *
-     * @throws MalformedURLException under various circumstances (see
-     * {@link URI#toURL()}), but mostly if the URI uses a scheme
-     * unsupported by the Java runtime.
-     *
-     * @throws IOException if the Reader cannot be created
+     * <p>Makes a tokenizer that replays the given (cached) tokens of
+     * the given file.
      **/
-    public Reader getReader (ParsedArgs parsedArgs)
-      throws MalformedURLException, IOException
-    { return new InputStreamReader (getInputStream (parsedArgs)); }
+    ArgFileTokenizer (File _file, String[] tokens)
+    {
+      file = _file;
+      channel = null;
+      size = 0;
+      cachedTokens = tokens;
+    }
 
     /**
-     * <p>Return a new buffered Reader on the contents of the
-     * specified URI, using the named character set.
-     *
-     * @throws MalformedURLException under various circumstances (see
-     * {@link URI#toURL()}), but mostly if the URI uses a scheme
-     * unsupported by the Java runtime.
-     *
-     * @throws IOException if the Reader cannot be created
-     *
-     * @throws UnsupportedEncodingException if the named character set
-     * is not supported.
+     * <p>Records the tokens as they are scanned, and adds them to the
+     * given cache when the end of the file is reached.
      **/
-    public Reader getReader (ParsedArgs parsedArgs, String charsetName)
-      throws MalformedURLException, IOException, UnsupportedEncodingException
-    { return new InputStreamReader (getInputStream (parsedArgs), charsetName);}
+    void recordInto (ArgFileCache _cache, long lastModified, long length)
+    {
+      cache = _cache;
+      cacheLastModified = lastModified;
+      cacheLength = length;
+      recorded = new ArrayList<String> ();
+    }
 
     /**
-     * <p>Return a new buffered InputStream on the contents of the
-     * specified URI.
-     *
-     * @throws MalformedURLException under various circumstances (see
-     * {@link URI#toURL()}), but mostly if the URI uses a scheme
-     * unsupported by the Java runtime.
-     *
-     * @throws IOException if the InputStream cannot be created
+     * <p>Returns the next token without consuming it, or null at the
+     * end of the file.
      **/
-    public InputStream getInputStream (ParsedArgs parsedArgs)
-      throws MalformedURLException, IOException
-    { return new BufferedInputStream (getURL (parsedArgs).openStream ()); }
+    String peek ()
+    {
+      if (next == null && !done)
+        {
+          if (cachedTokens != null)
+            {
+              if (cachedPosition < cachedTokens.length)
+                next = cachedTokens[cachedPosition++];
+              else
+                done = true;
+            }
+          else
+            {
+              next = scan ();
+              if (recorded != null) record (next);
+            }
+        }
+      return next;
+    }
 
     /**
-     * <p>Fetch the raw contents of the specified URI as an array of
-     * bytes.
-     *
-     * @throws MalformedURLException under various circumstances (see
-     * {@link URI#toURL()}), but mostly if the URI uses a scheme
-     * unsupported by the Java runtime.
-     *
-     * @throws IOException if the the content of the resource cannot
-     * be read.
+     * <p>Records a scanned token (or the end of the file, if null).
      **/
-    public byte[] getByteContent (ParsedArgs parsedArgs)
-      throws MalformedURLException, IOException
-    { return IoLib.readFully (getInputStream (parsedArgs)); }
+    private void record (String token)
+    {
+      if (token == null)
+        {
+          cache.put (file, cacheLastModified, cacheLength,
+                     recorded.toArray (new String[recorded.size ()]),
+                     recordedBytes);
+          recorded = null;
+          return;
+        }
 
-    /**
-     * <p>Fetch the content of the specified URI as a String.
-     *
-     * <p>Uses the system default character set.
-     *
-     * @throws MalformedURLException under various circumstances (see
-     * {@link URI#toURL()}), but mostly if the URI uses a scheme
-     * unsupported by the Java runtime.
-     *
-     * @throws IOException if the the content of the resource cannot
-     * be read.
-     **/
-    public String getStringContent (ParsedArgs parsedArgs)
-      throws MalformedURLException, IOException
-    { return IoLib.readFully (getReader (parsedArgs)); }
+      recordedBytes += ArgFileCache.getByteCount (token);
 
-    /**
-     * <p>Fetch the content of the specified URI as a String, using
-     * the named character set.
-     *
-     * @throws MalformedURLException under various circumstances (see
-     * {@link URI#toURL()}), but mostly if the URI uses a scheme
-     * unsupported by the Java runtime.
-     *
-     * @throws IOException if the the content of the resource cannot
-     * be read.
-     *
-     * @throws UnsupportedEncodingException if the named character set
-     * is not supported.
-     **/
-    public String getStringContent (ParsedArgs parsedArgs, String charsetName)
-      throws MalformedURLException, IOException, UnsupportedEncodingException
-    { return IoLib.readFully (getReader (parsedArgs, charsetName)); }
+      // --- too big to ever fit: stop recording.
+      if (recordedBytes > cache.getMaxBytes ()) recorded = null;
+      else recorded.add (token);
+    }
 
     /**
-     * <p>Parses the next token as an URI
-     *
-     * <p>Deals with filenames, converts them into file: URIs.
+     * <p>Consumes and returns the next token, or null at the end of
+     * the file.
      **/
-    protected URI parseArg (OptReader in)
+    String read ()
     {
-      String value = in.read ();
+      String r = peek ();
+      next = null;
+      return r;
+    }
 
-      // --- this behavior matches what's found in Firefox/IE.
+    void close ()
+    {
+      done = true;
+      window = null;
+      if (channel == null) return;
+      try {
+        channel.close ();
+      } catch (IOException ex) {
+        // --- nothing useful to do: we're done with it anyway.
+      }
+      channel = null;
+    }
 
-      // --- Win32 drive letter specification.
-      if (value.matches ("[A-Za-z]:[\\\\/].*"))
-        {
-          // --- prepend 'file://' - for file: URI
-          // ---                /  - for absolute URI
-          value = "file:///" + value;
-        }
-      // --- Win32 UNC
-      else if (value.matches ("[\\\\/][\\\\/].*"))
+    private int nextByte () throws IOException
+    {
+      if (window == null || !window.hasRemaining ())
         {
-          // --- prepend 'file://' - for file: URI
-          // ---                /  - for absolute URI
-          value = "file:///" + value;
+          if (windowEnd >= size) return -1;
+
+          // --- map the next window of the file.
+          long length = Math.min (WindowSize, size - windowEnd);
+          window = channel.map (FileChannel.MapMode.READ_ONLY,
+                                windowEnd, length);
+          windowEnd += length;
         }
-      // --- assume it's normal.
-      else
-        {}
+      return window.get () & 0xff;
+    }
+
+    private static boolean isSpace (int c)
+    { return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f'; }
+
+    private void append (int c)
+    {
+      if (bufLen == buf.length) buf = Arrays.copyOf (buf, buf.length * 2);
+      buf[bufLen++] = (byte)c;
+    }
 
-      // --- convert all backslashes into forward slashes.
-      value = value.replace ('\\', '/');
+    private OptParseException unterminated (char quote)
+    {
+      return new OptParseException
+        ("Unterminated "+quote+" quote in argument file '"+file+"'");
+    }
 
-      // --- make a new URI object
+    /**
+     * <p>Scans the next token, or returns null (and closes the file)
+     * at the end of the file.
+     **/
+    private String scan ()
+    {
       try {
-        return new URI (value);
-      } catch (URISyntaxException ex) {
-        throw new OptParseException ("Bad value '"+value+"' for option "+this
-                                     +": expected URI", ex);
+        int c = nextByte ();
+
+        // --- skip whitespace and comments.
+        while (true)
+          {
+            while (c != -1 && isSpace (c)) c = nextByte ();
+            if (c != '#') break;
+            while (c != -1 && c != '\n' && c != '\r') c = nextByte ();
+          }
+
+        if (c == -1)
+          {
+            close ();
+            return null;
+          }
+
+        // --- accumulate the bytes of the token.
+        bufLen = 0;
+        while (c != -1 && !isSpace (c))
+          {
+            if (c == '\'')
+              {
+                while ((c = nextByte ()) != '\'')
+                  {
+                    if (c == -1) throw unterminated ('\'');
+                    append (c);
+                  }
+              }
+            else if (c == '"')
+              {
+                while ((c = nextByte ()) != '"')
+                  {
+                    if (c == -1) throw unterminated ('"');
+                    if (c == '\\')
+                      {
+                        c = nextByte ();
+                        if (c == -1) throw unterminated ('"');
+                        if (c != '"' && c != '\\') append ('\\');
+                      }
+                    append (c);
+                  }
+              }
+            else if (c == '\\')
+              {
+                c = nextByte ();
+                if (c == -1)
+                  {
+                    append ('\\');
+                    break;
+                  }
+                if (!(isSpace (c) || c == '\'' || c == '"' || c == '#'
+                      || c == '\\'))
+                  append ('\\');
+                append (c);
+              }
+            else
+              append (c);
+
+            c = nextByte ();
+          }
+
+        // --- UTF-8 never uses ASCII bytes inside multi-byte
+        // --- characters, so decoding a token at a time is safe.
+        return new String (buf, 0, bufLen, UTF8);
+      } catch (IOException ex) {
+        close ();
+        throw new OptParseException
+          ("Error reading argument file '"+file+"'", ex);
       }
     }
-
   }
 
-  // -------------------------------------------------------------------------
-  // ---- ParsedArgs ---------------------------------------------------------
-  // -------------------------------------------------------------------------
-
   /**
-   * <p>A list of parsed options.  This is the result of ramming a
-   * String[] of arguments into a call to {@link OptSet#run(String[])}
-   * or {@link OptSet#parse(String[])}.
+   * <p>A cache of parse results, keyed by the arguments parsed.
    *
-   * <p>Various APIs can be used to fetch the results of parsing the
-   * arguments.
+   * <p>Programs that parse the same few command lines over and over
+   * can give their OptSet a ParseCache: see {@link
+   * OptSet#parseCache(ParseCache)}.  The first time a command line
+   * parses successfully, its ParsedArgs is kept here, and parsing an
+   * equal command line later just returns it.
    *
-   * <p>{@link #getParsedArgs(Cloptus.Opt)} will fetch all of the
-   * parsed options in the order that they were specified.  This is
-   * handy for implementing complex programs like the UNIX command
-   * 'find'.
+   * <p>Entries are keyed by the CompiledOptSet and the argument
+   * array, which is copied, and compared in full on lookup (after
+   * comparing hashes), so a cache may be shared between OptSets.
+   * Command lines that failed to parse are not cached; nor are ones
+   * with an argument file (<tt>@FILE</tt>) in them, since the file
+   * may have changed since (see {@link ArgFileCache} for those).
    *
-   * <p>Mostly, however, the typed getters on {@link Cloptus.Opt}
-   * should be used.
+   * <p>The cache holds at most a given number of entries.  When it is
+   * full, the least recently used entry is evicted.
    *
-   * @see Cloptus.OptSet
-   * @see Cloptus.Opt
-   * @see Cloptus.OptSet#run(String[])
-   * @see Cloptus.OptSet#parse(String[])
+   * <p>A cached ParsedArgs, and the values it holds, are shared by
+   * every parse of its command line.  Values of mutable types must
+   * not be changed, unless their Opt makes a new one on each fetch
+   * (see {@link PrimitiveOpt#keepsBoxedValues}).
+   *
+   * <p>Thread-safe.
    **/
-  public static class ParsedArgs implements Iterable<ParsedArg> {
+  public static class ParseCache {
 
-    final OptSet opts;
-    final String[] args;
+    static final class Key {
+      final CompiledOptSet parser;
+      final String[] args;
+      final int hash;
 
-    List<ParsedArg> parsedArgs = new ArrayList<ParsedArg> ();
-    Map<Opt<?>,List<ParsedArg>> parsedArgsByOpt =
-      new LinkedHashMap<Opt<?>,List<ParsedArg>> ();
+      Key (CompiledOptSet _parser, String[] _args, int _hash)
+      { parser = _parser; args = _args; hash = _hash; }
 
-    public ParsedArgs (OptSet _opts, String[] _args)
-    { opts = _opts; args = _args; }
+      public int hashCode () { return hash; }
+
+      public boolean equals (Object o)
+      {
+        if (!(o instanceof Key)) return false;
+        Key k = (Key)o;
+        return k.hash == hash && k.parser == parser
+          && Arrays.equals (k.args, args);
+      }
+    }
+
+    final int maxEntries;
 
-    void addOpts (Collection<ParsedArg> v)
-    { for (ParsedArg pa : v) addOpt (pa); }
+    private final LinkedHashMap<Key,ParsedArgs> entries =
+      new LinkedHashMap<Key,ParsedArgs> (16, 0.75f, true);
 
-    void addOpt (ParsedArg v)
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * <p>Makes a new ParseCache holding at most <tt>_maxEntries</tt>
+     * parse results.
+     **/
+    public ParseCache (int _maxEntries)
     {
-      if (v == null) throw new NullPointerException ();
-      parsedArgs.add (v);
+      if (_maxEntries < 0)
+        throw new IllegalArgumentException ("_maxEntries cannot be negative");
+      maxEntries = _maxEntries;
+    }
 
-      List<ParsedArg> existingParsedArgs = parsedArgsByOpt.get (v.opt);
-      if (existingParsedArgs == null)
+    /**
+     * <p>Makes the key to look the given arguments up with, or null if
+     * they cannot be cached.  The key shares the array: {@link #put}
+     * copies it.
+     **/
+    static Key keyFor (CompiledOptSet parser, String[] args)
+    {
+      int hash = 1;
+      for (String arg : args)
         {
-          existingParsedArgs = new ArrayList<ParsedArg> ();
-          parsedArgsByOpt.put (v.opt, existingParsedArgs);
+          if (arg.startsWith ("@")) return null;
+          hash = 31 * hash + arg.hashCode ();
         }
-      existingParsedArgs.add (v);
+      return new Key (parser, args, hash);
     }
 
-    void validate ()
+    /**
+     * <p>Fetches the result of parsing the given key's arguments, or
+     * null if it is not cached.
+     **/
+    synchronized ParsedArgs get (Key key)
     {
-      if (DebugValidate)
-        System.err.println ("validate parsedArgs == "+parsedArgs);
+      ParsedArgs parsedArgs = entries.get (key);
+      if (parsedArgs != null) hitCount++;
+      else missCount++;
+      return parsedArgs;
+    }
 
-      // --- validate 'required' feature.
-      for (Opt<?> a : opts.getOpts ())
-        if (a.isRequired ())
-          if (parsedArgsByOpt.get (a) == null)
-            throw new OptParseException ("Missing required option "+a);
+    /**
+     * <p>Adds the result of parsing the given key's arguments,
+     * evicting the least recently used results to make room.
+     **/
+    void put (Key key, ParsedArgs parsedArgs)
+    {
+      if (maxEntries == 0) return;
 
-      // --- validate 'list' feature.
-      for (Opt<?> a : getInvolvedOpts ())
+      // --- copy outside the lock.
+      key = new Key (key.parser, key.args.clone (), key.hash);
+
+      synchronized (this)
         {
-          List<ParsedArg> parsedArgsForOpt = getParsedArgs (a);
+          entries.put (key, parsedArgs);
 
-          if (!a.isList ())
-            if (parsedArgsForOpt.size () > 1)
-              throw new OptParseException
-                (a+" can only be specified once, was specified "+
-                 parsedArgsForOpt.size ()+" times.");
+          Iterator<Key> it = entries.keySet ().iterator ();
+          while (entries.size () > maxEntries)
+            {
+              it.next ();
+              it.remove ();
+              evictionCount++;
+            }
         }
     }
 
-    // ----------------------------------------------------------------------
-
     /**
-     *
+     * <p>Discards all the cached results.  Does not reset the counters.
      **/
-    public void populateMembers (Object targetObj)
-    {for (Opt<?> opt : opts.getOpts ()) opt.populateMember (targetObj, this);}
-
-    // ----------------------------------------------------------------------
+    public synchronized void clear () { entries.clear (); }
 
     /**
-     * Iterate over the result of {@link #getParsedArgs()}.
+     * <p>Returns the maximum number of results to cache.
      **/
-    public Iterator<ParsedArg> iterator () { return parsedArgs.iterator (); }
+    public int getMaxEntries () { return maxEntries; }
 
     /**
-     * Retrieve the parsed args specified by the user.
+     * <p>Returns the number of results currently cached.
      **/
-    public List<ParsedArg> getParsedArgs () { return parsedArgs; }
-
-//     /**
-//      * Retrieve the parsed args specified by the user, followed by
-//      * synthesized parsed args for unspecified options with default
-//      * values.
-//      **/
-//     public List<ParsedArg> getParsedArgsWithDefaults ()
-//     {
-//       // XXX should we cache this??
-//       List<ParsedArg> r = new ArrayList<ParsedArg> ();
-
-//       // --- add all the regular parsed args.
-//       r.addAll (parsedArgs);
-
-//       // --- figure out the unspecified args with default values, add them too.
-//       for (Opt<?> opt : opts.getOpts ())
-//         if (getValues (opt, opt.getArgType (), null).size () == 0
-//             && opt.defaultValue != null)
-//           r.add (new ParsedArg (opt, opt.getName (), opt.defaultValue, true));
-
-//       return r;
-//     }
+    public synchronized int getEntryCount () { return entries.size (); }
 
     /**
-     * <p>Retrieve the set of Opts that have some arg specified in this
-     * ParsedArgs set.
+     * <p>Returns the number of times a result was found in the cache.
      **/
-    public Set<Opt<?>> getInvolvedOpts () { return parsedArgsByOpt.keySet (); }
+    public synchronized long getHitCount () { return hitCount; }
 
     /**
-     * <p>Retrieve the parsed args specified for the given Opt.
+     * <p>Returns the number of times the arguments had to be parsed.
+     * Arguments that cannot be cached are not counted.
      **/
-    public List<ParsedArg> getParsedArgs (Opt<?> opt)
-    {
-      List<ParsedArg> r = parsedArgsByOpt.get (opt);
-      if (r == null)
-        { r = new ArrayList<ParsedArg>(); parsedArgsByOpt.put (opt, r); }
-      return r;
-    }
+    public synchronized long getMissCount () { return missCount; }
 
     /**
-     * <p>Retrieve the value for the given Opt instance contained in
-     * these ParsedArgs.
-     *
-     * <p>If the option was not specified, return the given default
-     * value.
-     *
-     * @throws OptUseException if the given Opt is a list, and was
-     * specified more than once,
+     * <p>Returns the number of results evicted to make room for others.
      **/
-    public <T> T getValue (Opt<T> opt, Class<T> type, T defaultValue)
+    public synchronized long getEvictionCount () { return evictionCount; }
+
+    public synchronized String toString ()
     {
-      List<T> r = getValues (opt, type, defaultValue);
-      switch (r.size ())
-        {
-        case 0: return null;
-        case 1: return r.get (0);
-        default:
-          throw new OptUseException
-            ("Asked for singleton value of opt "+opt+", got list");
-        }
+      return "ParseCache(entries="+entries.size ()+"/"+maxEntries
+        +", hits="+hitCount+", misses="+missCount
+        +", evictions="+evictionCount+")";
     }
+  }
+
+  /**
+   * <p>A cache of tokenized argument files, shared between parses.
+   *
+   * <p>Programs that parse the same (large) argument files over and
+   * over can give their OptSet an ArgFileCache: see {@link
+   * OptSet#argFileCache(ArgFileCache)}.  The first time a file is
+   * read, its tokens are kept here, and later parses replay them
+   * without doing any I/O or tokenizing at all.
+   *
+   * <p>Files are identified by canonical path, and an entry is only
+   * used if the file's modification time and size are the same as
+   * when it was read; otherwise, the file is read again.
+   *
+   * <p>The cache is bounded by the total size of the tokens it holds,
+   * counted as two bytes per character.  When it is full, the least
+   * recently used files are evicted.  A file whose tokens are bigger
+   * than the whole cache is never cached.
+   *
+   * <p>Thread-safe.
+   **/
+  public static class ArgFileCache {
+
+    static class Entry {
+      final long lastModified;
+      final long length;
+      final String[] tokens;
+      final long bytes;
+
+      Entry (long _lastModified, long _length, String[] _tokens, long _bytes)
+      {
+        lastModified = _lastModified; length = _length;
+        tokens = _tokens; bytes = _bytes;
+      }
+    }
+
+    final long maxBytes;
+
+    private final LinkedHashMap<File,Entry> entries =
+      new LinkedHashMap<File,Entry> (16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
 
     /**
-     * <p>Retrieve the values for the given Opt instance contained in
-     * these ParsedArgs.
-     *
-     * <p>If the option was not specified, return a list containing
-     * the given default value.
+     * <p>Makes a new ArgFileCache holding at most <tt>_maxBytes</tt>
+     * bytes of tokens.
      **/
-    public <T> List<T> getValues (Opt<T> opt, Class<T> type, T defaultValue)
+    public ArgFileCache (long _maxBytes)
     {
-      List<ParsedArg> parsedArgs = getParsedArgs (opt);
-      List<T> r = new ArrayList<T> ();
-      for (ParsedArg pa : parsedArgs) r.add (pa.getValue (type));
-
-      // --- default value handling.
-      if (r.size () == 0 && defaultValue != null) r.add (defaultValue);
-
-      return r;
+      if (_maxBytes < 0)
+        throw new IllegalArgumentException ("_maxBytes cannot be negative");
+      maxBytes = _maxBytes;
     }
 
     /**
-     * <p>Return true if the magic --help option was specified.
+     * <p>The number of bytes a token takes up in the cache.
      **/
-    public boolean isHelpRequested ()
-    { return opts.getHelpOpt ().getBoolean (this); }
+    static long getByteCount (String token) { return 2L * token.length (); }
 
     /**
-     * <p>Make a nice string rendering of this ParsedArgs set.
+     * <p>Fetches the tokens of the given file, or null if they are
+     * not cached (or are out of date).
      **/
-    public String toString ()
+    synchronized String[] get (File canonicalFile, long lastModified,
+                               long length)
     {
-      StringBuilder out = new StringBuilder ();
-      boolean first = true;
-      for (ParsedArg opt : parsedArgs)
+      Entry e = entries.get (canonicalFile);
+      if (e != null
+          && e.lastModified == lastModified && e.length == length)
         {
-          if (first) first = false;
-          else       out.append (" ");
-          out.append (opt);
+          hitCount++;
+          return e.tokens;
         }
-      return out.toString ();
-    }
-  }
 
-  /**
-   * <p>A single ParsedArg.  This represents a user-specified argument.
-   *
-   * <p>Contains the Opt matched against, the name specified by the
-   * user (null for a positional argument), and the Object value that
-   * was derived.
-   **/
-  public static class ParsedArg {
-    final Opt<?> opt;
-    final String nameSeen;
-    final Object value;
-    final boolean synthesized;
+      missCount++;
+      return null;
+    }
 
-    public ParsedArg (Opt<?> _opt, String _nameSeen, Object _value,
-                      boolean _synthesized)
+    /**
+     * <p>Adds the tokens of the given file, evicting least recently
+     * used files to make room.
+     **/
+    synchronized void put (File canonicalFile, long lastModified,
+                           long length, String[] tokens, long bytes)
     {
-      opt = _opt; nameSeen = _nameSeen; value = _value;
-      synthesized = _synthesized;
-    }
+      if (bytes > maxBytes) return;
 
-    public Opt<?> getOpt () { return opt; }
+      Entry old = entries.remove (canonicalFile);
+      if (old != null) totalBytes -= old.bytes;
 
-    public String getNameSeen () { return nameSeen; }
+      Iterator<Entry> it = entries.values ().iterator ();
+      while (totalBytes + bytes > maxBytes && it.hasNext ())
+        {
+          totalBytes -= it.next ().bytes;
+          it.remove ();
+          evictionCount++;
+        }
 
-    public <T> T getValue (Class<T> type) { return type.cast (value); }
+      entries.put (canonicalFile,
+                   new Entry (lastModified, length, tokens, bytes));
+      totalBytes += bytes;
+    }
 
-    public String toString () { return "--" + opt.getName () + "=" + value; }
-  }
+    /**
+     * <p>Discards all the cached files.  Does not reset the counters.
+     **/
+    public synchronized void clear ()
+    {
+      entries.clear ();
+      totalBytes = 0;
+    }
 
-  // -------------------------------------------------------------------------
-  // ---- Exceptions ---------------------------------------------------------
-  // -------------------------------------------------------------------------
+    /**
+     * <p>Returns the maximum number of bytes of tokens to cache.
+     **/
+    public long getMaxBytes () { return maxBytes; }
 
-  /**
-   * <p>Base type for option exceptions.
-   **/
-  public abstract static class OptException extends RuntimeException {
-    private static final long serialVersionUID = 1L;
-    public OptException () { super (); }
-    public OptException (String msg) { super (msg); }
-    public OptException (String msg, Throwable ex)
-    { super (msg); initCause (ex); }
-  }
+    /**
+     * <p>Returns the number of bytes of tokens currently cached.
+     **/
+    public synchronized long getByteCount () { return totalBytes; }
 
-  /**
-   * <p>Thrown if there's a problem with the specification of an option.
-   **/
-  public static class OptCompileException extends RuntimeException {
-    private static final long serialVersionUID = 1L;
-    public OptCompileException () { super (); }
-    public OptCompileException (String msg) { super (msg); }
-    public OptCompileException (String msg, Throwable ex) { super (msg, ex); }
-  }
+    /**
+     * <p>Returns the number of files currently cached.
+     **/
+    public synchronized int getFileCount () { return entries.size (); }
 
-  /**
-   * <p>Thrown if there's a problem during the parsing of an option.
-   **/
-  public static class OptParseException extends RuntimeException {
-    private static final long serialVersionUID = 1L;
-    public OptParseException () { super (); }
-    public OptParseException (String msg) { super (msg); }
-    public OptParseException (String msg, Throwable ex) { super (msg, ex); }
-  }
+    /**
+     * <p>Returns the number of times a file was found in the cache.
+     **/
+    public synchronized long getHitCount () { return hitCount; }
 
-  /**
-   * <p>Thrown if there's a problem using a ParsedArgs set.
-   **/
-  public static class OptUseException extends RuntimeException {
-    private static final long serialVersionUID = 1L;
-    public OptUseException () { super (); }
-    public OptUseException (String msg) { super (msg); }
-    public OptUseException (String msg, Throwable ex) { super (msg, ex); }
-  }
+    /**
+     * <p>Returns the number of times a file had to be read.
+     **/
+    public synchronized long getMissCount () { return missCount; }
 
-  // -------------------------------------------------------------------------
-  // ---- Utility Classes ----------------------------------------------------
-  // -------------------------------------------------------------------------
+    /**
+     * <p>Returns the number of files evicted to make room for others.
+     **/
+    public synchronized long getEvictionCount () { return evictionCount; }
+
+    public synchronized String toString ()
+    {
+      return "ArgFileCache(files="+entries.size ()+", bytes="+totalBytes
+        +"/"+maxBytes+", hits="+hitCount+", misses="+missCount
+        +", evictions="+evictionCount+")";
+    }
+  }
 
   /**
-   * <p>Reads args.
+   * <p>A case-insensitive trie of names, used to look up long option
+   * names.
+   *
+   * <p>Lookups walk the characters of a region of a String directly,
+   * folding case a character at a time, so they never allocate.  The
+   * cost of a lookup depends only on the length of the name, not on
+   * the number of names in the trie.
+   *
+   * <p>Every node knows whether exactly one value lives underneath
+   * it, which means that unique-prefix abbreviations (<tt>verb</tt>
+   * for <tt>verbose</tt>) are resolved in the same single pass.  Many
+   * names may map to the same value: a prefix is still unique if all
+   * the names under it map to the same value.
+   *
+   * <p>Built once, then read-only: safe to share between threads
+   * once safely published.
    **/
-  static class OptReader {
-    private String[] args;
-    private int position = 0;
+  static class NameTrie<V> {
 
-    public OptReader (String[] _args) { args = _args; }
+    /**
+     * <p>Returned by {@link #lookup} if a prefix matches more than
+     * one value.
+     **/
+    static final Object Ambiguous = new Object ();
 
-    public String read ()
+    static class Node {
+      char[] chars = new char[0];
+      Node[] children = new Node[0];
+
+      /** the value whose name ends exactly here, or null. */
+      Object value = null;
+
+      /** the name (as added) that ends exactly here, or null. */
+      String name = null;
+
+      /** the only value in this subtree, or Ambiguous. */
+      Object unique = null;
+
+      Node child (char c)
+      {
+        // --- binary search the (sorted) edges.
+        int lo = 0, hi = chars.length - 1;
+        while (lo <= hi)
+          {
+            int mid = (lo + hi) >>> 1;
+            char midChar = chars[mid];
+            if (midChar < c) lo = mid + 1;
+            else if (midChar > c) hi = mid - 1;
+            else return children[mid];
+          }
+        return null;
+      }
+
+      Node addChild (char c)
+      {
+        Node r = child (c);
+        if (r != null) return r;
+
+        // --- insert a new edge, keeping the edges sorted.
+        int idx = 0;
+        while (idx < chars.length && chars[idx] < c) idx++;
+
+        char[] newChars = new char[chars.length+1];
+        Node[] newChildren = new Node[children.length+1];
+        System.arraycopy (chars, 0, newChars, 0, idx);
+        System.arraycopy (children, 0, newChildren, 0, idx);
+        System.arraycopy (chars, idx, newChars, idx+1, chars.length-idx);
+        System.arraycopy (children, idx, newChildren, idx+1,
+                          children.length-idx);
+        r = new Node ();
+        newChars[idx] = c;
+        newChildren[idx] = r;
+        chars = newChars;
+        children = newChildren;
+        return r;
+      }
+    }
+
+    final Node root = new Node ();
+
+    static char fold (char c) { return Character.toLowerCase (c); }
+
+    /**
+     * <p>Adds the given name.  If the (case-folded) name is already
+     * present, nothing is changed, and the existing value is
+     * returned.  Otherwise, returns null.
+     **/
+    @SuppressWarnings(value={"unchecked"})
+    V put (String name, V value)
     {
-      if (position >= args.length) return null;
-      return args[position++];
+      if (value == null) throw new NullPointerException ("value");
+
+      Object existing = lookup (name, 0, name.length (), false);
+      if (existing != null) return (V)existing;
+
+      Node n = root;
+      n.unique = merge (n.unique, value);
+      for (int i=0; i<name.length (); i++)
+        {
+          n = n.addChild (fold (name.charAt (i)));
+          n.unique = merge (n.unique, value);
+        }
+      n.value = value;
+      n.name = name;
+      return null;
     }
 
-    public String peek ()
+    private static Object merge (Object unique, Object value)
     {
-      if (position >= args.length) return null;
-      return args[position];
+      if (unique == null || unique == value) return value;
+      return Ambiguous;
     }
 
-    public void prependArg (String arg)
-    { prependArgs (new String[] { arg }); }
+    /**
+     * <p>Fetches the value for the given complete name
+     * (case-insensitively), or null.
+     **/
+    @SuppressWarnings(value={"unchecked"})
+    V get (String s, int start, int end)
+    { return (V)lookup (s, start, end, false); }
 
-    public void prependArgs (String[] v)
+    /**
+     * <p>Looks up the name in <tt>s</tt> between <tt>start</tt>
+     * (inclusive) and <tt>end</tt> (exclusive).
+     *
+     * <p>An exact (case-insensitive) match always wins.  Otherwise,
+     * if <tt>allowPrefix</tt> is set, the region may be a prefix of
+     * the names of exactly one value.
+     *
+     * @return the value, null if there is no match, or {@link
+     * #Ambiguous} if the region is a prefix of the names of more
+     * than one value.
+     **/
+    Object lookup (String s, int start, int end, boolean allowPrefix)
     {
-      // --- try to stick the new args into our current array
-      // XXX disabled for debugging of the more complex second part.
-//      if (v.length < position)
-//        {
-//          System.arraycopy (v, 0,
-//                            args, position-v.length,
-//                            v.length);
-//          position -= args.length;
-//        }
-
-      // --- elsewise, make a new array.
-//      else
+      Node n = root;
+      for (int i=start; i<end; i++)
         {
-          String[] newArgs = new String[v.length + (args.length - position)];
+          n = n.child (fold (s.charAt (i)));
+          if (n == null) return null;
+        }
 
-          System.arraycopy (v, 0,
-                            newArgs, 0,
-                            v.length);
-          System.arraycopy (args, position,
-                            newArgs, v.length,
-                            (args.length - position));
+      if (n.value != null) return n.value;
+      if (!allowPrefix || start == end) return null;
+      return n.unique;
+    }
 
-          args = newArgs;
-          position = 0;
-        }
+    /**
+     * <p>Returns all the names starting with the given prefix, for
+     * use in error messages.
+     **/
+    List<String> getCandidates (String s, int start, int end)
+    {
+      List<String> r = new ArrayList<String> ();
+      Node n = root;
+      for (int i=start; i<end && n != null; i++)
+        n = n.child (fold (s.charAt (i)));
+      if (n != null) collectNames (n, r);
+      return r;
+    }
+
+    private static void collectNames (Node n, List<String> r)
+    {
+      if (n.name != null) r.add (n.name);
+      for (Node child : n.children) collectNames (child, r);
     }
   }
 
@@ -3208,10 +8410,39 @@ public static void main (String... args)
   }
 
   /**
+   * <p>Numeric utilities: SI multipliers, and scanners that parse
+   * numbers straight out of argument tokens.
+   *
+   * <p>The scanners never throw: they store the value into a slot of
+   * a caller's array, and return an error code ({@link #Ok} on
+   * success).  On their common path, plain decimal numbers, they do
+   * not allocate either.  That lets the numeric Opts convert a long
+   * list of values in one tight loop.  The exceptions, all rare:
    *
+   * <ul>
+   *    <li>{@link #scanDouble} leaves <tt>NaN</tt>, <tt>Infinity</tt>,
+   *    hexadecimal numbers, numbers of more than 19 significant
+   *    digits and subnormals to {@link Double#parseDouble}, which
+   *    allocates, and throws (caught here) on bad syntax.
+   *
+   *    <li>{@link #scanByteSize} and {@link #scanDuration} use
+   *    BigDecimals for fractions with nonzero digits past the
+   *    {@value #MaxFractionDigits}th; scanDuration also for
+   *    fractions of a nanosecond, and totals of more nanoseconds than
+   *    a long holds.
+   * </ul>
    **/
   public static class NumericUtil {
 
+    /** The token was scanned, and its value stored. **/
+    public static final int Ok = 0;
+
+    /** The token is not a number. **/
+    public static final int BadSyntax = 1;
+
+    /** The token is a number, but outside the range asked for. **/
+    public static final int OutOfRange = 2;
+
     static Map<String,Long> ComputerMultipliers = new HashMap<String,Long> ();
     static Map<String,Long> StandardMultipliers = new HashMap<String,Long> ();
 
@@ -3263,9 +8494,657 @@ public static void main (String... args)
     }
 
     /**
+     * <p>Returns the multiplier for the given suffix (as returned by
+     * {@link #getSuffix}): 1 for no suffix, or -1 for an unknown one.
+     * <tt>K</tt>, <tt>M</tt>, ... are decimal (SI) multipliers.
+     **/
+    public static long getMultiplier (String suffix)
+    { return getMultiplier (suffix, false); }
+
+    /**
+     * <p>Returns the multiplier for the given suffix (as returned by
+     * {@link #getSuffix}): 1 for no suffix, or -1 for an unknown one.
+     * If <tt>computer</tt> is true, <tt>K</tt>, <tt>M</tt>, ... are
+     * binary multipliers, like <tt>Ki</tt>, <tt>Mi</tt>, ....
+     **/
+    public static long getMultiplier (String suffix, boolean computer)
+    {
+      if (suffix == null || suffix.length () == 0) return 1;
+      Long multiplier = computer ? ComputerMultipliers.get (suffix)
+        : StandardMultipliers.get (suffix);
+      return (multiplier == null) ? -1 : multiplier;
+    }
+
+    // --- the multipliers by prefix letter (see UnitPrefixes), for
+    // --- scanning: [0] is for no prefix.  Without and with an 'i'.
+    static final String UnitPrefixes = "KMGTPE";
+    static final long[] StandardUnits = unitMultipliers (false, "");
+    static final long[] ComputerUnits = unitMultipliers (true, "");
+    static final long[] BinaryUnits = unitMultipliers (false, "i");
+
+    private static long[] unitMultipliers (boolean computer, String suffix)
+    {
+      long[] r = new long[UnitPrefixes.length () + 1];
+      r[0] = 1;
+      for (int i=0; i<UnitPrefixes.length (); i++)
+        r[i+1] = getMultiplier (UnitPrefixes.charAt (i)+suffix, computer);
+      return r;
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * <p>Scans the given token as an integer between <tt>min</tt> and
+     * <tt>max</tt>, storing it into <tt>out[index]</tt>.
+     *
+     * <p>Accepts an optional sign, then a decimal number; or a
+     * hexadecimal (<tt>0x...</tt>), binary (<tt>0b...</tt>) or octal
+     * (<tt>0...</tt>) one.
+     *
+     * @return {@link #Ok}, or an error code: on error, nothing is
+     * stored.
+     **/
+    public static int scanInteger (String token, long min, long max,
+                                   long[] out, int index)
+    {
+      int len = token.length ();
+      int p = 0;
+
+      boolean negative = false;
+      if (p < len && (token.charAt (p) == '-' || token.charAt (p) == '+'))
+        negative = token.charAt (p++) == '-';
+
+      // --- the radix prefix.  A lone "0" is just zero.
+      int radix = 10;
+      if (p+1 < len && token.charAt (p) == '0')
+        {
+          char c = token.charAt (p+1);
+          if (c == 'x' || c == 'X') { radix = 16; p += 2; }
+          else if (c == 'b' || c == 'B') { radix = 2; p += 2; }
+          else { radix = 8; p += 1; }
+        }
+      if (p == len) return BadSyntax;
+
+      // --- accumulate negatively, so that Long.MIN_VALUE fits.
+      long limit = Long.MIN_VALUE / radix;
+      long result = 0;
+      for (; p<len; p++)
+        {
+          int d = digit (token.charAt (p));
+          if (d >= radix) return BadSyntax;
+          if (result < limit) return OutOfRange;
+          result *= radix;
+          if (result < Long.MIN_VALUE + d) return OutOfRange;
+          result -= d;
+        }
+
+      if (!negative)
+        {
+          if (result == Long.MIN_VALUE) return OutOfRange;
+          result = -result;
+        }
+      if (result < min || result > max) return OutOfRange;
+
+      out[index] = result;
+      return Ok;
+    }
+
+    /**
+     * <p>Returns the value of the given digit (in any radix up to 36),
+     * or a value no radix accepts.
+     **/
+    private static int digit (char c)
+    {
+      if (c >= '0' && c <= '9') return c - '0';
+      c |= 0x20;
+      if (c >= 'a' && c <= 'z') return c - 'a' + 10;
+      return Character.MAX_RADIX;
+    }
+
+    // --- the largest number of fraction digits kept, by the
+    // --- scanners of decimal quantities: numbers with more nonzero
+    // --- ones are converted exactly, on a slower path.
+    static final int MaxFractionDigits = 18;
+
+    static final long[] LongPowersOfTen = {
+      1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+      100000000L, 1000000000L, 10000000000L, 100000000000L,
+      1000000000000L, 10000000000000L, 100000000000000L,
+      1000000000000000L, 10000000000000000L, 100000000000000000L,
+      1000000000000000000L
+    };
+
+    /**
+     * <p>Scans the given token as a number of bytes, storing it into
+     * <tt>out[index]</tt>.
+     *
+     * <p>Accepts a non-negative decimal number, possibly with a
+     * fraction, and an optional multiplier suffix: <tt>K</tt> (or
+     * <tt>k</tt>), <tt>M</tt>, <tt>G</tt>, <tt>T</tt>, <tt>P</tt> or
+     * <tt>E</tt>, optionally followed by <tt>i</tt> for the binary
+     * (1024-based) ones; then an optional <tt>B</tt>.  For example,
+     * <tt>512Mi</tt>, <tt>1.5G</tt> or <tt>64KiB</tt>.  The result is
+     * rounded to the nearest byte.
+     *
+     * @param computer if true, <tt>K</tt>, <tt>M</tt>, ... are binary
+     * multipliers too.
+     *
+     * @return {@link #Ok}, or an error code: on error, nothing is
+     * stored.
+     **/
+    public static int scanByteSize (String token, boolean computer,
+                                    long[] out, int index)
+    {
+      int len = token.length ();
+      int p = 0;
+
+      // --- the number, as whole + fraction / 10^scale.
+      long whole = 0, fraction = 0;
+      int scale = 0, digits = 0;
+      boolean inexact = false;
+      for (; p<len; p++)
+        {
+          int d = token.charAt (p) - '0';
+          if (d < 0 || d > 9) break;
+          if (whole > (Long.MAX_VALUE - d) / 10) return OutOfRange;
+          whole = whole * 10 + d;
+          digits++;
+        }
+      if (p < len && token.charAt (p) == '.')
+        for (p++; p<len; p++)
+          {
+            int d = token.charAt (p) - '0';
+            if (d < 0 || d > 9) break;
+            if (scale < MaxFractionDigits)
+              { fraction = fraction * 10 + d; scale++; }
+            else if (d != 0)
+              inexact = true;
+            digits++;
+          }
+      if (digits == 0) return BadSyntax;
+      int numberEnd = p;
+
+      // --- the multiplier.
+      long multiplier = 1;
+      if (p < len)
+        {
+          int prefix = UnitPrefixes.indexOf (token.charAt (p)) + 1;
+          if (prefix == 0 && token.charAt (p) == 'k') prefix = 1;
+          if (prefix != 0)
+            {
+              p++;
+              if (p < len && token.charAt (p) == 'i')
+                { multiplier = BinaryUnits[prefix]; p++; }
+              else
+                multiplier = computer ? ComputerUnits[prefix]
+                  : StandardUnits[prefix];
+            }
+          if (p < len && token.charAt (p) == 'B') p++;
+        }
+      if (p != len) return BadSyntax;
+
+      long value = inexact
+        ? scaleExactly (token, 0, numberEnd, multiplier)
+        : scale (whole, fraction, scale, multiplier);
+      if (value < 0) return OutOfRange;
+
+      out[index] = value;
+      return Ok;
+    }
+
+    /**
+     * <p>Scans the given token as a duration, in the given unit,
+     * storing it into <tt>out[index]</tt>.
+     *
+     * <p>Accepts a sequence of non-negative decimal numbers, possibly
+     * with fractions, each followed by a unit: <tt>ns</tt>,
+     * <tt>us</tt> (or <tt>&micro;s</tt>), <tt>ms</tt>, <tt>s</tt>,
+     * <tt>m</tt>, <tt>h</tt> or <tt>d</tt>; for example,
+     * <tt>250ms</tt>, <tt>1.5s</tt> or <tt>2h30m</tt>.  A lone number,
+     * without a unit, is in the given unit.  The numbers are summed
+     * exactly, and only the total is rounded to the nearest unit.
+     *
+     * @return {@link #Ok}, or an error code: on error, nothing is
+     * stored.
+     **/
+    public static int scanDuration (String token, TimeUnit unit,
+                                    long[] out, int index)
+    {
+      int len = token.length ();
+      int p = 0;
+      long unitNanos = unit.toNanos (1);
+
+      // --- the total in nanoseconds: exact, once it is not a long.
+      long total = 0;
+      BigDecimal exact = null;
+      do
+        {
+          int start = p;
+
+          // --- the number, as whole + fraction / 10^scale.
+          long whole = 0, fraction = 0;
+          int scale = 0, digits = 0;
+          boolean inexact = false;
+          for (; p<len; p++)
+            {
+              int d = token.charAt (p) - '0';
+              if (d < 0 || d > 9) break;
+              if (whole > (Long.MAX_VALUE - d) / 10) return OutOfRange;
+              whole = whole * 10 + d;
+              digits++;
+            }
+          if (p < len && token.charAt (p) == '.')
+            for (p++; p<len; p++)
+              {
+                int d = token.charAt (p) - '0';
+                if (d < 0 || d > 9) break;
+                if (scale < MaxFractionDigits)
+                  { fraction = fraction * 10 + d; scale++; }
+                else if (d != 0)
+                  inexact = true;
+                digits++;
+              }
+          if (digits == 0) return BadSyntax;
+          int numberEnd = p;
+
+          // --- the unit: a lone number is in the default one.
+          long nanos;
+          if (start == 0 && p == len)
+            nanos = unitNanos;
+          else
+            {
+              int unitStart = p;
+              while (p < len && Character.isLetter (token.charAt (p))) p++;
+              nanos = getUnitNanos (token, unitStart, p);
+              if (nanos == -1) return BadSyntax;
+            }
+
+          long value = inexact ? -1 : wholeProduct (whole, fraction, scale,
+                                                    nanos);
+          if (exact == null && value >= 0 && total <= Long.MAX_VALUE - value)
+            total += value;
+          else
+            {
+              BigDecimal number =
+                new BigDecimal (token.substring (start, numberEnd));
+              if (exact == null) exact = BigDecimal.valueOf (total);
+              exact = exact.add (number.multiply (BigDecimal.valueOf (nanos)));
+            }
+        }
+      while (p < len);
+
+      // --- all TimeUnits are whole (and but for nanoseconds, even)
+      // --- numbers of nanoseconds.
+      if (exact != null)
+        {
+          BigInteger value = exact
+            .divide (BigDecimal.valueOf (unitNanos), 0, RoundingMode.HALF_UP)
+            .toBigInteger ();
+          if (value.bitLength () >= 64) return OutOfRange;
+          out[index] = value.longValue ();
+        }
+      else
+        {
+          long q = total / unitNanos, r = total % unitNanos;
+          out[index] = (r >= unitNanos - r) ? q + 1 : q;
+        }
+      return Ok;
+    }
+
+    /**
+     * <p>Returns the length in nanoseconds of the duration unit
+     * named by <tt>token[start..end)</tt>, or -1 if there is none.
+     **/
+    private static long getUnitNanos (String token, int start, int end)
+    {
+      switch (end - start)
+        {
+        case 1:
+          switch (token.charAt (start))
+            {
+            case 's': return TimeUnit.SECONDS.toNanos (1);
+            case 'm': return TimeUnit.MINUTES.toNanos (1);
+            case 'h': return TimeUnit.HOURS.toNanos (1);
+            case 'd': return TimeUnit.DAYS.toNanos (1);
+            }
+          return -1;
+        case 2:
+          if (token.charAt (start+1) != 's') return -1;
+          switch (token.charAt (start))
+            {
+            case 'n': return 1;
+            case 'u': case '\u00b5': return TimeUnit.MICROSECONDS.toNanos (1);
+            case 'm': return TimeUnit.MILLISECONDS.toNanos (1);
+            }
+          return -1;
+        }
+      return -1;
+    }
+
+    /**
+     * <p>Returns <tt>(whole + fraction / 10^scale) * num</tt>, rounded
+     * to the nearest integer (halves up), or -1 if it does not fit in
+     * a long.
+     **/
+    static long scale (long whole, long fraction, int scale, long num)
+    {
+      if (whole > Long.MAX_VALUE / num) return -1;
+      long value = whole * num;
+      if (fraction == 0) return value;
+
+      long part = mulDiv (fraction, num, LongPowersOfTen[scale]);
+      if (part < 0 || value > Long.MAX_VALUE - part) return -1;
+      return value + part;
+    }
+
+    /**
+     * <p>Returns <tt>token[start..end) * num</tt>, like {@link
+     * #scale}, for a decimal number with more than {@link
+     * #MaxFractionDigits} fraction digits: the digits past those
+     * can still tip the rounding once multiplied, so this works on
+     * all of them.
+     **/
+    static long scaleExactly (String token, int start, int end, long num)
+    {
+      BigInteger value = new BigDecimal (token.substring (start, end))
+        .multiply (BigDecimal.valueOf (num))
+        .setScale (0, RoundingMode.HALF_UP).toBigInteger ();
+      return (value.bitLength () < 64) ? value.longValue () : -1;
+    }
+
+    /**
+     * <p>Returns <tt>(whole + fraction / 10^scale) * num</tt> if it
+     * is a whole number that fits in a long, else -1.
+     **/
+    static long wholeProduct (long whole, long fraction, int scale,
+                              long num)
+    {
+      if (whole > Long.MAX_VALUE / num) return -1;
+      long value = whole * num;
+      if (fraction == 0) return value;
+
+      if (multiplyHigh (fraction, num) != 0) return -1;
+      long part = fraction * num;
+      if (part < 0 || part % LongPowersOfTen[scale] != 0) return -1;
+      part /= LongPowersOfTen[scale];
+      return (value > Long.MAX_VALUE - part) ? -1 : value + part;
+    }
+
+    /**
+     * <p>Returns <tt>a * b / c</tt> for non-negative <tt>a</tt> and
+     * <tt>b</tt> and positive <tt>c</tt>, rounded to the nearest
+     * integer (halves up), or -1 if it does not fit in a long.  The
+     * product is not limited to a long.
+     **/
+    static long mulDiv (long a, long b, long c)
+    {
+      long hi = multiplyHigh (a, b), lo = a * b;
+      if (hi == 0 && lo >= 0)
+        {
+          long q = lo / c, r = lo % c;
+          return (r >= c - r) ? q + 1 : q;
+        }
+      if (Long.compareUnsigned (hi, c) >= 0) return -1;
+
+      // --- divide the 128 bit product by c, a bit at a time.
+      long q = 0, r = hi;
+      for (int i=63; i>=0; i--)
+        {
+          r = (r << 1) | ((lo >>> i) & 1);
+          q <<= 1;
+          if (Long.compareUnsigned (r, c) >= 0) { r -= c; q |= 1; }
+        }
+      if (Long.compareUnsigned (r, c - r) >= 0) q++;
+      return (q < 0) ? -1 : q;
+    }
+
+    /**
+     * <p>Scans the given token as a double, storing its raw bits (see
+     * {@link Double#doubleToRawLongBits}) into <tt>out[index]</tt>.
+     *
+     * <p>Accepts exactly what {@link Double#parseDouble} does, and
+     * gives the same (correctly rounded) values.  Plain decimal
+     * numbers of up to 19 significant digits are converted directly,
+     * with the Eisel-Lemire algorithm; any other forms (<tt>NaN</tt>,
+     * hexadecimal, longer numbers, subnormals, ...) are left to
+     * Double.parseDouble.
+     *
+     * @return {@link #Ok}, or {@link #BadSyntax}: on error, nothing is
+     * stored.
+     **/
+    public static int scanDouble (String token, long[] out, int index)
+    {
+      int len = token.length ();
+      int p = 0;
+
+      boolean negative = false;
+      if (p < len && (token.charAt (p) == '-' || token.charAt (p) == '+'))
+        negative = token.charAt (p++) == '-';
+
+      // --- the significant digits, as w * 10^q.
+      long w = 0;
+      int q = 0;
+      int digits = 0, significant = 0;
+      for (; p<len; p++)
+        {
+          int d = token.charAt (p) - '0';
+          if (d < 0 || d > 9) break;
+          digits++;
+          if (w == 0 && d == 0) continue;
+          if (++significant <= 19) w = w * 10 + d;
+          else q++;
+        }
+      if (p < len && token.charAt (p) == '.')
+        for (p++; p<len; p++)
+          {
+            int d = token.charAt (p) - '0';
+            if (d < 0 || d > 9) break;
+            digits++;
+            if (w == 0 && d == 0) { q--; continue; }
+            if (++significant <= 19) { w = w * 10 + d; q--; }
+          }
+      if (digits == 0) return scanOtherDouble (token, out, index);
+
+      // --- the exponent: saturates, far beyond the range of a double.
+      if (p < len && (token.charAt (p) == 'e' || token.charAt (p) == 'E'))
+        {
+          p++;
+          boolean negativeExp = false;
+          if (p < len && (token.charAt (p) == '-' || token.charAt (p) == '+'))
+            negativeExp = token.charAt (p++) == '-';
+          int start = p;
+          int e = 0;
+          for (; p<len; p++)
+            {
+              int d = token.charAt (p) - '0';
+              if (d < 0 || d > 9) break;
+              if (e < 100000) e = e * 10 + d;
+            }
+          if (p == start) return BadSyntax;
+          q += negativeExp ? -e : e;
+        }
+
+      // --- an optional type suffix, as in Java source.
+      if (p < len && "fFdD".indexOf (token.charAt (p)) != -1) p++;
+      if (p != len) return scanOtherDouble (token, out, index);
+
+      long bits = (significant > 19) ? -1 : toDoubleBits (w, q);
+      if (bits == -1) return parseDouble (token, out, index);
+
+      out[index] = negative ? bits | Long.MIN_VALUE : bits;
+      return Ok;
+    }
+
+    /**
+     * <p>Scans a token that is not a plain decimal number.
+     **/
+    private static int scanOtherDouble (String token, long[] out, int index)
+    {
+      // --- quickly reject tokens that cannot be numbers at all.
+      if (!mayBeOtherDouble (token)) return BadSyntax;
+      return parseDouble (token, out, index);
+    }
+
+    /**
+     * <p>Scans a token with Double.parseDouble.
+     **/
+    private static int parseDouble (String token, long[] out, int index)
+    {
+      try {
+        out[index] = Double.doubleToRawLongBits (Double.parseDouble (token));
+      } catch (NumberFormatException ex) {
+        return BadSyntax;
+      }
+      return Ok;
+    }
+
+    /**
+     * <p>Returns false if the given token, which is not a plain
+     * decimal number, is certainly not accepted by Double.parseDouble
+     * either: true if it has surrounding whitespace, or is
+     * <tt>NaN</tt>, <tt>Infinity</tt> or hexadecimal.
+     **/
+    private static boolean mayBeOtherDouble (String token)
+    {
+      int len = token.length ();
+      if (len == 0) return false;
+
+      // --- parseDouble ignores leading and trailing whitespace.
+      if (token.charAt (0) <= ' ' || token.charAt (len-1) <= ' ')
+        return true;
+
+      int p = (token.charAt (0) == '-' || token.charAt (0) == '+') ? 1 : 0;
+      if (p == len) return false;
+      char c = token.charAt (p);
+      return c == 'N' || c == 'I' ||
+        (c == '0' && p+1 < len && (token.charAt (p+1) | 0x20) == 'x');
+    }
+
+    // --- the range of the powers of ten Eisel-Lemire handles.
+    static final int SmallestPowerOfTen = -342;
+    static final int LargestPowerOfTen = 308;
+
+    /**
+     * <p>Converts <tt>w * 10^q</tt> (for <tt>w &lt; 10^19</tt>) to the
+     * nearest positive double, returning its raw bits; or -1 if it
+     * cannot be done quickly.
+     *
+     * <p>This is the Eisel-Lemire algorithm: see Daniel Lemire,
+     * <i>Number Parsing at a Gigabyte per Second</i> (2021).  Small
+     * exact cases are done with a single floating point operation
+     * instead (Clinger's fast path).  Subnormal results are given up
+     * on.
+     **/
+    static long toDoubleBits (long w, int q)
+    {
+      if (w == 0 || q < SmallestPowerOfTen) return 0;
+      if (q > LargestPowerOfTen)
+        return Double.doubleToRawLongBits (Double.POSITIVE_INFINITY);
+
+      // --- Clinger: both w and 10^|q| are exact doubles.  (w may
+      // --- have 19 digits: it is unsigned.)
+      if (q >= -22 && q <= 22 && w >= 0 && w <= (1L << 53))
+        return Double.doubleToRawLongBits
+          ((q < 0) ? (double)w / ExactPowersOfTen[-q]
+           : (double)w * ExactPowersOfTen[q]);
+
+      // --- multiply by the (truncated, 128 bit) 5^q.
+      int lz = Long.numberOfLeadingZeros (w);
+      w <<= lz;
+      long[] powers = PowersOfFive.Table;
+      int idx = 2 * (q - SmallestPowerOfTen);
+      long hi = multiplyHigh (w, powers[idx]);
+      long lo = w * powers[idx];
+      if ((hi & 0x1FF) == 0x1FF)
+        {
+          // --- the low bits might carry into the mantissa: refine.
+          long hi2 = multiplyHigh (w, powers[idx+1]);
+          lo += hi2;
+          if (Long.compareUnsigned (hi2, lo) > 0) hi++;
+        }
+
+      int upperBit = (int)(hi >>> 63);
+      long mantissa = hi >>> (upperBit + 9);
+      int power2 = (((152170 + 65536) * q) >> 16) + 63
+        + upperBit - lz + 1023;
+      if (power2 <= 0) return -1;
+
+      // --- exactly halfway between two doubles: round to even.
+      if ((lo == 0 || lo == 1) && q >= -4 && q <= 23
+          && (mantissa & 3) == 1
+          && (mantissa << (upperBit + 9)) == hi)
+        mantissa &= ~1L;
+
+      mantissa += mantissa & 1;
+      mantissa >>>= 1;
+      if (mantissa >= (2L << 52))
+        {
+          mantissa = 1L << 52;
+          power2++;
+        }
+      mantissa &= ~(1L << 52);
+      if (power2 >= 0x7FF)
+        return Double.doubleToRawLongBits (Double.POSITIVE_INFINITY);
+
+      return mantissa | ((long)power2 << 52);
+    }
+
+    /**
+     * <p>Returns the high 64 bits of the unsigned 128 bit product of
+     * <tt>a</tt> and <tt>b</tt>.
+     **/
+    static long multiplyHigh (long a, long b)
+    {
+      long aLo = a & 0xFFFFFFFFL, aHi = a >>> 32;
+      long bLo = b & 0xFFFFFFFFL, bHi = b >>> 32;
+      long lh = aLo * bHi, hl = aHi * bLo;
+      long mid = ((aLo * bLo) >>> 32) + (lh & 0xFFFFFFFFL) + (hl & 0xFFFFFFFFL);
+      return aHi * bHi + (lh >>> 32) + (hl >>> 32) + (mid >>> 32);
+    }
+
+    static final double[] ExactPowersOfTen = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * <p>The 128 bit approximations of 5^q used by Eisel-Lemire, for
+     * each q in the range handled, as pairs of longs (high word
+     * first).  Each is normalized to have its top bit set: positive
+     * powers are truncated, and negative ones rounded up.
      *
+     * <p>Computed on first use, so that programs parsing no doubles
+     * never pay for them.
      **/
-    public static long getMultiplier (String suffix) { return 1; }
+    static final class PowersOfFive {
+      static final long[] Table = makeTable ();
+
+      private static long[] makeTable ()
+      {
+        BigInteger five = BigInteger.valueOf (5);
+        long[] t = new long[2 * (LargestPowerOfTen - SmallestPowerOfTen + 1)];
+        for (int q=SmallestPowerOfTen; q<=LargestPowerOfTen; q++)
+          {
+            BigInteger c;
+            if (q < 0)
+              {
+                BigInteger power = five.pow (-q);
+                int z = power.bitLength ();
+                int b = (q >= -27) ? z + 127 : 2 * z + 128;
+                c = BigInteger.ONE.shiftLeft (b).divide (power)
+                  .add (BigInteger.ONE);
+              }
+            else
+              c = five.pow (q);
+            c = c.shiftLeft (128 - c.bitLength ());
+
+            int idx = 2 * (q - SmallestPowerOfTen);
+            t[idx] = c.shiftRight (64).longValue ();
+            t[idx+1] = c.longValue ();
+          }
+        return t;
+      }
+    }
   }
 
   /**
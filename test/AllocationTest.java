@@ -0,0 +1,95 @@
+/*
+ * AllocationTest.java
+ *
+ * Hereby donated to the public domain.
+ *
+ * Checks that parsing into a reused ParseContext does not allocate.
+ * Run with:
+ *
+ *   javac -d out Cloptus.java test/*.java
+ *   java -cp out com.svincent.util.AllocationTest
+ */
+package com.svincent.util;
+
+import com.svincent.util.Cloptus.*;
+
+import java.lang.management.*;
+
+/**
+ * <p>Parses typical command lines into one ParseContext, again and
+ * again, and fails if the steady state allocates anything, as
+ * counted by the JVM's per-thread allocation counter.
+ **/
+public class AllocationTest {
+
+  static final int Warmup = 200000;
+  static final int Parses = 100000;
+
+  public static void main (String[] args)
+  {
+    ThreadMXBean mx = ManagementFactory.getThreadMXBean ();
+    if (!(mx instanceof com.sun.management.ThreadMXBean)
+        || !((com.sun.management.ThreadMXBean)mx)
+             .isThreadAllocatedMemorySupported ())
+      {
+        System.out.println ("SKIPPED: no per-thread allocation counter");
+        return;
+      }
+    com.sun.management.ThreadMXBean allocations =
+      (com.sun.management.ThreadMXBean)mx;
+
+    String[][] argvs = {
+      { "--num", "5", "--name", "bob", "--verbose" },
+      { "--num=5", "--name=bob", "--verbose", "--ratio", "0.5" },
+      { "-n", "5", "-v", "--nam", "bob", "--tag", "a", "--tag=b" },
+      { "--ratio=2.5", "--tag", "a", "--tag", "b", "--tag", "c", "rest" },
+    };
+
+    boolean failed = false;
+    for (boolean lazy : new boolean[] { false, true })
+      {
+        OptSet opts = new OptSet ().lazyConversion (lazy);
+        IntegerOpt num = new IntegerOpt (opts, "num").shortName ('n');
+        StringOpt name = new StringOpt (opts, "name");
+        FlagOpt verbose = new FlagOpt (opts, "verbose").shortName ('v');
+        DoubleOpt ratio = new DoubleOpt (opts, "ratio");
+        StringOpt tags = new StringOpt (opts, "tag").list (true);
+        StringOpt rest = new StringOpt (opts, "rest").positional (true);
+        CompiledOptSet parser = opts.freeze ();
+        ParseContext ctx = new ParseContext (parser);
+
+        for (String[] argv : argvs)
+          {
+            long sink = 0;
+            for (int i=0; i<Warmup; i++)
+              sink += read (parser.parse (ctx, argv), num, verbose, ratio);
+
+            long thread = Thread.currentThread ().getId ();
+            long before = allocations.getThreadAllocatedBytes (thread);
+            for (int i=0; i<Parses; i++)
+              sink += read (parser.parse (ctx, argv), num, verbose, ratio);
+            long after = allocations.getThreadAllocatedBytes (thread);
+
+            double perParse = (double)(after - before) / Parses;
+            System.out.printf ("%s%-50s %8.2f B/parse (%d)%n",
+                               lazy ? "lazy:  " : "eager: ",
+                               String.join (" ", argv), perParse, sink);
+            // --- a few bytes in all, for the counter reads themselves.
+            if (perParse >= 1.0) failed = true;
+          }
+      }
+
+    if (failed) throw new AssertionError ("parsing allocated");
+    System.out.println ("OK");
+  }
+
+  /**
+   * <p>Reads the values, converting them if they are lazy.
+   **/
+  static long read (ParsedArgs parsed, IntegerOpt num, FlagOpt verbose,
+                    DoubleOpt ratio)
+  {
+    return num.getInt (parsed) + (verbose.getBoolean (parsed) ? 1 : 0)
+      + (long)ratio.getDouble (parsed);
+  }
+}
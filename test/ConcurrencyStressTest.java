@@ -0,0 +1,169 @@
+/*
+ * ConcurrencyStressTest.java
+ *
+ * Hereby donated to the public domain.
+ *
+ * Checks that many threads can parse with one OptSet at once.  Run
+ * with:
+ *
+ *   javac -d out Cloptus.java test/*.java
+ *   java -cp out com.svincent.util.ConcurrencyStressTest
+ */
+package com.svincent.util;
+
+import com.svincent.util.Cloptus.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>Hammers a shared OptSet from many threads, checking every
+ * result.
+ *
+ * <p>First, threads race to make the first parse of fresh OptSets,
+ * which freezes them: they must all end up with the same
+ * CompiledOptSet.  Then they all parse different command lines
+ * through one frozen parser, each checking its own results.
+ **/
+public class ConcurrencyStressTest {
+
+  static final int Threads = Math.max (8, 2 * Runtime.getRuntime ()
+                                       .availableProcessors ());
+  static final int FreezeRounds = 2000;
+  static final int ParsesPerThread = 50000;
+
+  // --- the options: a mix of kinds, names and conversions.
+  static class Spec {
+    final OptSet opts = new OptSet ();
+    final IntegerOpt num = new IntegerOpt (opts, "num").shortName ('n');
+    final StringOpt name = new StringOpt (opts, "name");
+    final StringOpt tags = new StringOpt (opts, "tag").list (true);
+    final DoubleOpt ratio = new DoubleOpt (opts, "ratio").defaultValue (0.5);
+    final FlagOpt verbose = new FlagOpt (opts, "verbose").shortName ('v');
+    final StringOpt rest = new StringOpt (opts, "rest").positional (true);
+  }
+
+  public static void main (String[] args) throws Exception
+  {
+    checkFreezeRace ();
+    checkSharedParser ();
+    System.out.println ("OK");
+  }
+
+  /**
+   * <p>Threads all make the first parse of a fresh OptSet at once.
+   **/
+  static void checkFreezeRace () throws Exception
+  {
+    ExecutorService pool = Executors.newFixedThreadPool (Threads);
+    try {
+      for (int round=0; round<FreezeRounds; round++)
+        {
+          final int r = round;
+          final Spec spec = new Spec ();
+          final CountDownLatch go = new CountDownLatch (1);
+          List<Future<CompiledOptSet>> results =
+            new ArrayList<Future<CompiledOptSet>> ();
+          for (int t=0; t<Threads; t++)
+            {
+              final int id = t;
+              results.add (pool.submit (new Callable<CompiledOptSet> () {
+                public CompiledOptSet call () throws Exception
+                {
+                  go.await ();
+                  checkParse (spec, spec.opts.parse (argv (id, r)), id, r);
+                  return spec.opts.freeze ();
+                }
+              }));
+            }
+          go.countDown ();
+          CompiledOptSet first = null;
+          for (Future<CompiledOptSet> f : results)
+            {
+              CompiledOptSet c = f.get ();
+              if (first == null) first = c;
+              check (c == first, "threads froze different parsers");
+            }
+        }
+    } finally {
+      pool.shutdown ();
+    }
+    System.out.println (FreezeRounds+" freeze races, "+Threads+" threads");
+  }
+
+  /**
+   * <p>Threads all parse their own command lines through one frozen
+   * parser.
+   **/
+  static void checkSharedParser () throws Exception
+  {
+    final Spec spec = new Spec ();
+    final CompiledOptSet parser = spec.opts.freeze ();
+    final CyclicBarrier go = new CyclicBarrier (Threads);
+    final AtomicLong parses = new AtomicLong ();
+    ExecutorService pool = Executors.newFixedThreadPool (Threads);
+    List<Future<?>> results = new ArrayList<Future<?>> ();
+    long start = System.nanoTime ();
+    try {
+      for (int t=0; t<Threads; t++)
+        {
+          final int id = t;
+          results.add (pool.submit (new Callable<Void> () {
+            public Void call () throws Exception
+            {
+              go.await ();
+              for (int i=0; i<ParsesPerThread; i++)
+                {
+                  checkParse (spec, parser.parse (argv (id, i)), id, i);
+                  parses.incrementAndGet ();
+                }
+              return null;
+            }
+          }));
+        }
+      for (Future<?> f : results) f.get ();
+    } finally {
+      pool.shutdown ();
+    }
+    long ms = (System.nanoTime () - start) / 1000000;
+    check (parses.get () == (long)Threads * ParsesPerThread,
+           "lost parses");
+    System.out.println (parses.get ()+" parses on a shared parser, "
+                        +Threads+" threads, "+ms+" ms");
+  }
+
+  /**
+   * <p>Makes a command line unique to the given thread and
+   * iteration.  Odd iterations use other spellings of the same
+   * options.
+   **/
+  static String[] argv (int id, int i)
+  {
+    if ((i & 1) == 0)
+      return new String[] {
+        "--num", String.valueOf (id * 1000003 + i), "--name=t"+id,
+        "--tag", "a"+i, "--tag", "b"+id, "-v", "rest"+id+"."+i };
+    return new String[] {
+      "-n", String.valueOf (id * 1000003 + i), "--NAME", "t"+id,
+      "--ratio="+id+".25", "--ta=a"+i, "--tag=b"+id, "rest"+id+"."+i };
+  }
+
+  /**
+   * <p>Checks a parse of <tt>argv (id, i)</tt>.
+   **/
+  static void checkParse (Spec spec, ParsedArgs p, int id, int i)
+  {
+    boolean even = (i & 1) == 0;
+    check (spec.num.getInt (p) == id * 1000003 + i, "num");
+    check (spec.name.get (p).equals ("t"+id), "name");
+    check (spec.tags.getList (p).equals
+           (Arrays.asList ("a"+i, "b"+id)), "tags");
+    check (spec.ratio.getDouble (p) == (even ? 0.5 : id + 0.25), "ratio");
+    check (spec.verbose.getBoolean (p) == even, "verbose");
+    check (spec.rest.get (p).equals ("rest"+id+"."+i), "rest");
+  }
+
+  static void check (boolean ok, String message)
+  { if (!ok) throw new AssertionError (message); }
+}
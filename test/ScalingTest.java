@@ -0,0 +1,79 @@
+/*
+ * ScalingTest.java
+ *
+ * Hereby donated to the public domain.
+ *
+ * Checks that parse time grows linearly with the number of
+ * --key=value tokens.  Run with:
+ *
+ *   javac -d out Cloptus.java test/*.java
+ *   java -cp out com.svincent.util.ScalingTest
+ */
+package com.svincent.util;
+
+import com.svincent.util.Cloptus.*;
+
+/**
+ * <p>Parses 50k..400k <tt>--k=v</tt> tokens, and fails if the time per
+ * token grows with the length of the command line.
+ *
+ * <p>Each <tt>--k=v</tt> token pushes its value back onto the
+ * OptReader: when that used to copy the unread arguments, parse time
+ * was quadratic, and the time per token at 400k was about 8 times the
+ * time per token at 50k.
+ **/
+public class ScalingTest {
+
+  static final int[] Sizes = { 50000, 100000, 200000, 400000 };
+
+  // --- how much worse than the smallest size the time per token may
+  // --- get, to allow for cache and GC effects: quadratic parsing
+  // --- would make it 8.
+  static final double MaxGrowth = 4.0;
+
+  public static void main (String[] args)
+  {
+    OptSet opts = new OptSet ();
+    StringOpt k = new StringOpt (opts, "k").list (true);
+    CompiledOptSet parser = opts.freeze ();
+
+    double[] nsPerToken = new double[Sizes.length];
+    for (int round=0; round<3; round++)  // --- the first rounds warm up.
+      for (int s=0; s<Sizes.length; s++)
+        {
+          String[] argv = makeArgs (Sizes[s]);
+          long best = Long.MAX_VALUE;
+          System.gc ();  // --- don't time the last size's garbage.
+          for (int i=0; i<5; i++)
+            {
+              long start = System.nanoTime ();
+              ParsedArgs parsed = parser.parse (argv);
+              long time = System.nanoTime () - start;
+              check (k.getList (parsed).size () == argv.length,
+                     "expected "+argv.length+" values");
+              best = Math.min (best, time);
+            }
+          nsPerToken[s] = (double)best / Sizes[s];
+        }
+
+    for (int s=0; s<Sizes.length; s++)
+      System.out.printf ("%7d tokens: %6.1f ns/token%n",
+                         Sizes[s], nsPerToken[s]);
+
+    double growth = nsPerToken[Sizes.length-1] / nsPerToken[0];
+    check (growth <= MaxGrowth,
+           "time per token grew "+growth+"x from "+Sizes[0]+" to "
+           +Sizes[Sizes.length-1]+" tokens: parsing is not linear");
+    System.out.println ("OK");
+  }
+
+  static String[] makeArgs (int count)
+  {
+    String[] r = new String[count];
+    for (int i=0; i<count; i++) r[i] = "--k=value"+i;
+    return r;
+  }
+
+  static void check (boolean ok, String message)
+  { if (!ok) throw new AssertionError (message); }
+}